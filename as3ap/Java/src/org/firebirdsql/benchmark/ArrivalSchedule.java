@@ -0,0 +1,230 @@
+/*
+ * Firebird Open Source AS3AP Benchmark suite
+ *
+ * Distributable under LGPL license.
+ * You may obtain a copy of the License at http://www.gnu.org/copyleft/lgpl.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * LGPL License for more details.
+ *
+ * This file was created by members of the firebird development team.
+ * All individual contributions remain the Copyright (C) of those
+ * individuals.  Contributors to this file are either listed here or
+ * can be obtained from a CVS history command.
+ *
+ * All rights reserved.
+ */
+package org.firebirdsql.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Start times of the operations of the open-loop background test. Operations
+ * arrive at the configured rate, either in constant intervals or as a
+ * Poisson process, independent of how fast the database executes them.
+ * Users form a pool of workers: a free user takes the next scheduled
+ * operation and executes it at its scheduled time or immediately when that
+ * time has passed. When the database cannot keep up, operations wait for a
+ * free user and this waiting is included in their latency, which is measured
+ * from the scheduled start.
+ * <p>
+ * Operation is late when it is dispatched more than
+ * {@link #LATE_THRESHOLD_MILLIS} after its scheduled time, operation is
+ * missed when it was scheduled before the schedule was stopped, but no user
+ * took it.
+ */
+public class ArrivalSchedule {
+
+    public static final int LATE_THRESHOLD_MILLIS = 5;
+
+    private static final long LATE_THRESHOLD =
+        LATE_THRESHOLD_MILLIS * 1000L * 1000L;
+
+    private double rate;
+    private boolean poisson;
+
+    private Random rnd = new Random();
+
+    private long nextStart;
+    private boolean started;
+    private boolean stopped;
+
+    private long dispatchedCount;
+    private long lateCount;
+    private long missedCount;
+
+    private long completedCount;
+    private long latencySum;
+    private long latencyMax;
+
+    /**
+     * Create schedule.
+     *
+     * @param rate number of operations per second.
+     * @param poisson <code>true</code> if operations arrive as a Poisson
+     * process, <code>false</code> if in constant intervals.
+     */
+    public ArrivalSchedule(double rate, boolean poisson) {
+        if (rate <= 0)
+            throw new IllegalArgumentException("Rate must be positive: " + rate);
+
+        this.rate = rate;
+        this.poisson = poisson;
+    }
+
+    /**
+     * Create schedule with the rate and arrivals from the configuration.
+     *
+     * @param config configuration of the benchmark.
+     */
+    public ArrivalSchedule(BenchmarkConfiguration config) {
+        this(config.getOpenLoopRate(),
+            config.getOpenLoopArrival() == BenchmarkConfiguration.POISSON_ARRIVAL);
+    }
+
+    /**
+     * Get interval to the next operation.
+     *
+     * @return interval in nanoseconds.
+     */
+    private long nextInterval() {
+        double seconds;
+
+        if (poisson)
+            seconds = -Math.log(1.0 - rnd.nextDouble()) / rate;
+        else
+            seconds = 1.0 / rate;
+
+        return (long)(seconds * 1000 * 1000 * 1000);
+    }
+
+    /**
+     * Take the next operation. First call starts the schedule.
+     *
+     * @return scheduled start of the operation, value of
+     * {@link System#nanoTime()}.
+     */
+    public synchronized long next() {
+        if (!started) {
+            nextStart = System.nanoTime();
+            started = true;
+        }
+
+        long start = nextStart;
+        nextStart += nextInterval();
+
+        return start;
+    }
+
+    /**
+     * Wait until the scheduled start of the operation.
+     *
+     * @param scheduled scheduled start from {@link #next()}.
+     * @param stopSignal signal that stops the waiting user.
+     *
+     * @return <code>true</code> if operation should be executed,
+     * <code>false</code> if user was stopped.
+     *
+     * @throws InterruptedException if user was interrupted.
+     */
+    public boolean dispatch(long scheduled, CountDownLatch stopSignal)
+        throws InterruptedException
+    {
+        long delay = scheduled - System.nanoTime();
+
+        if (delay > 0 && stopSignal.await(delay, TimeUnit.NANOSECONDS))
+            return false;
+
+        boolean late = System.nanoTime() - scheduled > LATE_THRESHOLD;
+
+        synchronized(this) {
+            dispatchedCount++;
+
+            if (late)
+                lateCount++;
+        }
+
+        return true;
+    }
+
+    /**
+     * Record completion of the operation.
+     *
+     * @param scheduled scheduled start of the operation.
+     */
+    public synchronized void completed(long scheduled) {
+        long latency = System.nanoTime() - scheduled;
+
+        completedCount++;
+        latencySum += latency;
+
+        if (latency > latencyMax)
+            latencyMax = latency;
+    }
+
+    /**
+     * Stop the schedule. Operations scheduled before now that were not
+     * taken by any user are counted as missed.
+     */
+    public synchronized void stop() {
+        if (stopped || !started)
+            return;
+
+        stopped = true;
+
+        long now = System.nanoTime();
+        while (nextStart <= now) {
+            missedCount++;
+            nextStart += nextInterval();
+        }
+    }
+
+    public synchronized long getDispatchedCount() {
+        return dispatchedCount;
+    }
+
+    public synchronized long getLateCount() {
+        return lateCount;
+    }
+
+    public synchronized long getMissedCount() {
+        return missedCount;
+    }
+
+    public synchronized long getCompletedCount() {
+        return completedCount;
+    }
+
+    /**
+     * Get average latency from the scheduled start to the completion.
+     *
+     * @return latency in milliseconds.
+     */
+    public synchronized double getAverageLatency() {
+        if (completedCount == 0)
+            return 0;
+
+        return (double)latencySum / completedCount / 1000 / 1000;
+    }
+
+    /**
+     * Get maximum latency from the scheduled start to the completion.
+     *
+     * @return latency in milliseconds.
+     */
+    public synchronized double getMaxLatency() {
+        return (double)latencyMax / 1000 / 1000;
+    }
+
+    public synchronized String toString() {
+        return "open loop " + rate + " ops/s" + (poisson ? " (Poisson)" : "") +
+            ": " + completedCount + " operations, " + lateCount + " late, " +
+            missedCount + " missed, latency avg " +
+            Math.round(getAverageLatency() * 10) / 10.0 + " ms, max " +
+            Math.round(getMaxLatency() * 10) / 10.0 + " ms";
+    }
+}
@@ -0,0 +1,432 @@
+/*
+ * Firebird Open Source AS3AP Benchmark suite
+ *
+ * Distributable under LGPL license.
+ * You may obtain a copy of the License at http://www.gnu.org/copyleft/lgpl.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * LGPL License for more details.
+ *
+ * This file was created by members of the firebird development team.
+ * All individual contributions remain the Copyright (C) of those
+ * individuals.  Contributors to this file are either listed here or
+ * can be obtained from a CVS history command.
+ *
+ * All rights reserved.
+ */
+package org.firebirdsql.benchmark;
+
+import java.math.BigDecimal;
+
+/**
+ * Generator of the AS3AP data. Produces the same value distributions as the
+ * <code>as3apgen</code> data file generator (which is based on the OSDB
+ * project), but rows are generated on the fly instead of being written into
+ * the files, see {@link #open(String)}.
+ * <p>
+ * Random values of each row are computed from the seed and the row number,
+ * so the data are the same for the same seed regardless of the order in
+ * which the tables or rows are generated. Instances of this class are
+ * immutable and can be shared between threads, each {@link RowSource} must
+ * be used by one thread only.
+ */
+public class AsapDataGenerator {
+
+    /**
+     * Minimum number of rows, <code>hundred</code> table needs 100 distinct
+     * rows and its signed column references <code>updates</code> keys 100
+     * to 199.
+     */
+    public static final int MIN_ROW_COUNT = 200;
+
+    private static final int HUNDRED_MILLION = 100 * 1000 * 1000;
+    private static final int THOUSAND_MILLION = 10 * HUNDRED_MILLION;
+
+    private static final int RANDOM_MIN_VALUE = -5 * HUNDRED_MILLION;
+    private static final int RANDOM_MAX_VALUE = 5 * HUNDRED_MILLION;
+
+    private static final char[] CSV_SAFE_CHARS = (
+        "#%&()[]{};:/~@ABCDEFGHIJKLMNOPQRSTUVWXYZ" +
+        "abcdefghijklmnopqrstuvwxyz0123456789.-=").toCharArray();
+
+    private static final int[] DAYS_IN_MONTH = new int[] {
+        31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31
+    };
+
+    private static final String SILICON_VALLEY = "SILICON VALLEY";
+    private static final String BENCHMARKS = "BENCHMARKS";
+    private static final String TEN_PCT_NAME = "THE+ASAP+BENCHMARKS+";
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private int rowCount;
+    private long seed;
+
+    private int tenPct;
+    private long sparseSignedSpread;
+
+    private float[] zipf10 = new float[10];
+    private float[] zipf100 = new float[100];
+
+    private int siliconValleyRow;
+    private int benchmarksRow;
+
+    private float[] hundredFloat = new float[100];
+    private double[] hundredDouble = new double[100];
+    private String[] hundredName = new String[100];
+    private String[] hundredAddress = new String[100];
+
+    /**
+     * Create generator of the data.
+     *
+     * @param rowCount number of rows in <code>uniques</code>,
+     * <code>hundred</code>, <code>tenpct</code> and <code>updates</code>
+     * tables.
+     * @param seed seed of the random values.
+     *
+     * @throws IllegalArgumentException if <code>rowCount</code> is less than
+     * {@link #MIN_ROW_COUNT}.
+     */
+    public AsapDataGenerator(int rowCount, long seed) {
+        if (rowCount < MIN_ROW_COUNT)
+            throw new IllegalArgumentException("At least " + MIN_ROW_COUNT +
+                " rows must be generated.");
+
+        this.rowCount = rowCount;
+        this.seed = seed;
+
+        this.tenPct = rowCount / 10;
+        this.sparseSignedSpread = Math.max(1, THOUSAND_MILLION / rowCount);
+
+        // values that do not belong to any row use negative row numbers
+        RowRandom random = new RowRandom();
+
+        random.reset(-1);
+        for (int i = 0; i < zipf10.length; i++) {
+            zipf10[i] = random.nextInt(RANDOM_MIN_VALUE, RANDOM_MAX_VALUE);
+        }
+
+        random.reset(-2);
+        for (int i = 0; i < zipf100.length; i++) {
+            zipf100[i] = random.nextInt(RANDOM_MIN_VALUE, RANDOM_MAX_VALUE);
+        }
+
+        random.reset(-3);
+        siliconValleyRow = random.nextInt(1, rowCount + 1);
+        benchmarksRow = random.nextInt(1, 11);
+        int hundredSiliconValley = random.nextInt(0, 100);
+
+        // hundred table repeats values of the first 100 rows
+        Row row = new Row();
+        for (int i = 0; i < 100; i++) {
+            row.generate(i + 1);
+
+            hundredFloat[i] = (float)(row.doubleNormal / 2);
+            hundredDouble[i] = row.doubleNormal;
+            hundredName[i] = row.name;
+            hundredAddress[i] = row.address;
+        }
+
+        hundredAddress[hundredSiliconValley] = SILICON_VALLEY;
+    }
+
+    /**
+     * Get number of rows in the data tables.
+     *
+     * @return number of rows.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Get number of rows generated for the specified data file.
+     *
+     * @param fileName name of the AS3AP data file, for example
+     * {@link LoadTest#UPDATES_FILE}.
+     *
+     * @return number of rows.
+     */
+    public int getRowCount(String fileName) {
+        return LoadTest.TINY_FILE.equals(fileName) ? 1 : rowCount;
+    }
+
+    /**
+     * Open source of the rows that would be stored in the specified data
+     * file. Columns of the rows correspond to the insert statements in
+     * {@link BenchmarkInsertSQL}.
+     *
+     * @param fileName name of the AS3AP data file, for example
+     * {@link LoadTest#UPDATES_FILE}.
+     *
+     * @return instance of {@link RowSource}.
+     *
+     * @throws IllegalArgumentException if file name is not known.
+     */
+    public RowSource open(String fileName) {
+        int table;
+
+        if (LoadTest.UPDATES_FILE.equals(fileName))
+            table = GeneratedRows.UPDATES;
+        else
+        if (LoadTest.HUNDRED_FILE.equals(fileName))
+            table = GeneratedRows.HUNDRED;
+        else
+        if (LoadTest.TEN_PCS_FILE.equals(fileName))
+            table = GeneratedRows.TEN_PCT;
+        else
+        if (LoadTest.UNIQUES_FILE.equals(fileName))
+            table = GeneratedRows.UNIQUES;
+        else
+        if (LoadTest.TINY_FILE.equals(fileName))
+            table = GeneratedRows.TINY;
+        else
+            throw new IllegalArgumentException("Unknown data file " +
+                fileName + ".");
+
+        return new GeneratedRows(table);
+    }
+
+    /**
+     * Random number generator for one row. Sequence depends only on the
+     * generator seed and the row number.
+     */
+    private class RowRandom {
+        private long state;
+
+        private void reset(long rowNumber) {
+            state = mix(seed + rowNumber * GOLDEN_GAMMA);
+        }
+
+        private long nextLong() {
+            state += GOLDEN_GAMMA;
+            return mix(state);
+        }
+
+        /**
+         * Get random number in the range [min, max), or <code>min</code>
+         * if range is empty.
+         */
+        private int nextInt(int min, int max) {
+            if (max <= min)
+                return min;
+
+            return min + (int)((nextLong() >>> 1) % ((long)max - min));
+        }
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Values of one row of the random data, from which rows of all tables
+     * are built.
+     */
+    private class Row {
+        private RowRandom random = new RowRandom();
+
+        private char[] chars = new char[80];
+
+        private int rowNumber;
+        private long sparseSigned;
+        private double doubleNormal;
+        private float zipf10Float;
+        private float zipf100Float;
+        private long date;
+        private String code;
+        private String name;
+        private String address;
+
+        /**
+         * Generate values of the row, row numbers start with 1.
+         */
+        private void generate(int rowNumber) {
+            generateNumbers(rowNumber);
+
+            // make code unique by starting with the row number written
+            // backwards in base of the safe characters
+            int length = 0;
+            for (int n = rowNumber; n > 0; n /= CSV_SAFE_CHARS.length) {
+                chars[length++] = CSV_SAFE_CHARS[n % CSV_SAFE_CHARS.length];
+            }
+            chars[length++] = '_';
+
+            for (; length < 10; length++)
+                chars[length] = nextChar();
+
+            code = rowNumber == benchmarksRow ?
+                BENCHMARKS : new String(chars, 0, length);
+
+            for (; length < 20; length++)
+                chars[length] = nextChar();
+
+            name = new String(chars, 0, length);
+
+            // address starts with the code too
+            int addressLength = random.nextInt(2, 6 + 25 * (rowNumber & 3));
+
+            for (length = 10; length < addressLength; length++)
+                chars[length] = nextChar();
+
+            address = rowNumber == siliconValleyRow ?
+                SILICON_VALLEY : new String(chars, 0, length);
+
+            date = generateDate(rowNumber);
+        }
+
+        /**
+         * Generate numeric values only, used when values of another row
+         * are needed.
+         */
+        private void generateNumbers(int rowNumber) {
+            this.rowNumber = rowNumber;
+
+            random.reset(rowNumber);
+
+            long denseKey = rowNumber == 1 ? 0 : rowNumber;
+
+            sparseSigned = RANDOM_MIN_VALUE + denseKey * sparseSignedSpread;
+            doubleNormal = random.nextInt(-THOUSAND_MILLION, THOUSAND_MILLION);
+            zipf10Float = zipf10[random.nextInt(0, rowNumber % 10)];
+            zipf100Float = zipf100[random.nextInt(0, rowNumber % 100)];
+        }
+
+        private char nextChar() {
+            return CSV_SAFE_CHARS[random.nextInt(0, CSV_SAFE_CHARS.length)];
+        }
+
+        /**
+         * Dates are spread over 1900-2000 as <code>as3apgen</code> does.
+         */
+        private long generateDate(int rowNumber) {
+            long denseKey = rowNumber == 1 ? 0 : rowNumber;
+
+            int dateRandom = (int)(denseKey % 36835);
+            int year = 1900 + dateRandom / 365;
+            int day = dateRandom % 365 + 1;
+
+            int month = 0;
+            while (month < 11 && day > DAYS_IN_MONTH[month]) {
+                day -= DAYS_IN_MONTH[month];
+                month++;
+            }
+
+            // as3apgen adds the day number to the first day of the month
+            return AsapDateParser.toMillis(year, month + 1, day + 1);
+        }
+    }
+
+    /**
+     * Rows of one table.
+     */
+    private class GeneratedRows implements RowSource {
+
+        private static final int UPDATES = 1;
+        private static final int HUNDRED = 2;
+        private static final int TEN_PCT = 3;
+        private static final int UNIQUES = 4;
+        private static final int TINY = 5;
+
+        private int table;
+        private int current;
+
+        private Row row = new Row();
+        private Row tenPctRow = new Row();
+
+        private GeneratedRows(int table) {
+            this.table = table;
+        }
+
+        public boolean next() {
+            int count = table == TINY ? 1 : rowCount;
+
+            if (current >= count)
+                return false;
+
+            current++;
+
+            if (table != TINY)
+                row.generate(current);
+
+            return true;
+        }
+
+        public long getBytesRead() {
+            return 0;
+        }
+
+        public void read(LoadRow target) {
+            int rowNumber = row.rowNumber;
+
+            switch(table) {
+                case TINY :
+                    target.setLong(0, 0);
+                    return;
+
+                case UPDATES :
+                    fill(target, rowNumber, row.sparseSigned, row.zipf10Float,
+                        row.doubleNormal, row.name, row.address);
+                    return;
+
+                case UNIQUES :
+                    fill(target, rowNumber, row.sparseSigned, row.zipf100Float,
+                        row.doubleNormal, row.name, row.address);
+                    return;
+
+                case HUNDRED :
+                    int index = rowNumber % 100;
+
+                    fill(target, rowNumber, 100 + rowNumber % 100,
+                        hundredFloat[index], hundredDouble[index],
+                        hundredName[index], hundredAddress[index]);
+                    return;
+
+                case TEN_PCT :
+                    tenPctRow.generateNumbers(getTenPctRowNumber(rowNumber));
+
+                    String name = (rowNumber - 1) % 10 == 0 ?
+                        TEN_PCT_NAME : row.name;
+
+                    fill(target, rowNumber, tenPctRow.sparseSigned,
+                        (float)(tenPctRow.doubleNormal / 2),
+                        tenPctRow.doubleNormal, name, row.address);
+                    return;
+            }
+        }
+
+        /**
+         * Find row from which <code>tenpct</code> table takes the numeric
+         * values. <code>as3apgen</code> cycles through the first 10% of the
+         * rows, skipping the second row.
+         */
+        private int getTenPctRowNumber(int rowNumber) {
+            int position = (rowNumber - 1) % tenPct;
+
+            return position == tenPct - 1 ? 1 : position + 2;
+        }
+
+        private void fill(LoadRow target, int rowNumber, long signed,
+            float floatValue, double doubleValue, String name, String address)
+        {
+            target.setLong(0, rowNumber);
+            target.setLong(1, rowNumber);
+            target.setLong(2, signed);
+            target.setDouble(3, floatValue);
+            target.setDouble(4, doubleValue);
+            target.setObject(5, BigDecimal.valueOf((long)doubleValue));
+            target.setTimestamp(6, row.date);
+            target.setObject(7, row.code);
+            target.setObject(8, name);
+            target.setObject(9, address);
+        }
+
+        public void close() {
+            current = rowCount;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Firebird Open Source AS3AP Benchmark suite
+ *
+ * Distributable under LGPL license.
+ * You may obtain a copy of the License at http://www.gnu.org/copyleft/lgpl.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * LGPL License for more details.
+ *
+ * This file was created by members of the firebird development team.
+ * All individual contributions remain the Copyright (C) of those
+ * individuals.  Contributors to this file are either listed here or
+ * can be obtained from a CVS history command.
+ *
+ * All rights reserved.
+ */
+package org.firebirdsql.benchmark;
+
+import java.sql.Types;
+import java.util.HashSet;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that generated data satisfy the constraints of the AS3AP tables.
+ */
+public class AsapDataGeneratorTest extends TestCase {
+
+    private static final int KEY_COLUMN = 0;
+    private static final int SIGNED_COLUMN = 2;
+
+    public AsapDataGeneratorTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Row that remembers integer values set by the generator.
+     */
+    private static class RecordingRow extends LoadRow {
+
+        private long[] values = new long[10];
+
+        RecordingRow() {
+            super(new int[] {
+                Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.FLOAT,
+                Types.DOUBLE, Types.NUMERIC, Types.TIMESTAMP, Types.CHAR,
+                Types.CHAR, Types.VARCHAR
+            }, true);
+        }
+
+        public void setLong(int column, long value) {
+            super.setLong(column, value);
+            values[column] = value;
+        }
+
+        long getLong(int column) {
+            return values[column];
+        }
+    }
+
+    public void testHundredReferencesUpdates() throws Exception {
+        AsapDataGenerator generator = new AsapDataGenerator(
+            AsapDataGenerator.MIN_ROW_COUNT, 1);
+
+        RecordingRow row = new RecordingRow();
+
+        HashSet keys = new HashSet();
+        RowSource updates = generator.open(LoadTest.UPDATES_FILE);
+        while (updates.next()) {
+            updates.read(row);
+            keys.add(Long.valueOf(row.getLong(KEY_COLUMN)));
+        }
+        updates.close();
+
+        assertEquals(AsapDataGenerator.MIN_ROW_COUNT, keys.size());
+
+        int count = 0;
+        RowSource hundred = generator.open(LoadTest.HUNDRED_FILE);
+        while (hundred.next()) {
+            hundred.read(row);
+            count++;
+
+            long signed = row.getLong(SIGNED_COLUMN);
+            assertTrue("Row " + row.getLong(KEY_COLUMN) + " references " +
+                "missing key " + signed, keys.contains(Long.valueOf(signed)));
+        }
+        hundred.close();
+
+        assertEquals(AsapDataGenerator.MIN_ROW_COUNT, count);
+    }
+
+    public void testRejectsTooFewRows() {
+        try {
+            new AsapDataGenerator(AsapDataGenerator.MIN_ROW_COUNT - 1, 1);
+            fail("Generator must reject less than minimum rows.");
+        } catch(IllegalArgumentException ex) {
+            // ok
+        }
+    }
+}
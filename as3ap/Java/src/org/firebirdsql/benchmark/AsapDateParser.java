@@ -0,0 +1,254 @@
+/*
+ * Firebird Open Source AS3AP Benchmark suite
+ *
+ * Distributable under LGPL license.
+ * You may obtain a copy of the License at http://www.gnu.org/copyleft/lgpl.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * LGPL License for more details.
+ *
+ * This file was created by members of the firebird development team.
+ * All individual contributions remain the Copyright (C) of those
+ * individuals.  Contributors to this file are either listed here or
+ * can be obtained from a CVS history command.
+ *
+ * All rights reserved.
+ */
+package org.firebirdsql.benchmark;
+
+import java.util.TimeZone;
+
+/**
+ * Parser for the dates used in the AS3AP data files and statements. Dates
+ * are written in day-month-year order separated by <code>'-'</code>,
+ * <code>'/'</code> or <code>'.'</code>, month is either a number or an
+ * English month name or its abbreviation, for example
+ * <code>10-nov-1985</code>, <code>1-01-1988</code> or
+ * <code>13/02/1988</code> as written by the data generator. Two-digit years
+ * belong to the 20th century.
+ * <p>
+ * Result is the number of milliseconds of the local midnight, the same value
+ * that deprecated {@link java.util.Date#Date(String)} constructor returns for
+ * the dates it can parse. Default time zone is read once when this class is
+ * loaded. Parser keeps no state and is thread-safe, no objects are created
+ * unless the date is malformed.
+ */
+public class AsapDateParser {
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private static final int[] DAYS_BEFORE_MONTH = new int[] {
+        0, 31, 59, 90, 120, 151, 181, 212, 243, 273, 304, 334
+    };
+
+    private static final String[] MONTH_NAMES = new String[] {
+        "jan", "feb", "mar", "apr", "may", "jun",
+        "jul", "aug", "sep", "oct", "nov", "dec"
+    };
+
+    private static final TimeZone ZONE = TimeZone.getDefault();
+
+    private AsapDateParser() {
+        // utility class
+    }
+
+    /**
+     * Parse date from the string.
+     *
+     * @param value string to parse.
+     *
+     * @return milliseconds of the local midnight of the date.
+     *
+     * @throws IllegalArgumentException if value is not a valid date.
+     */
+    public static long parse(String value) {
+        int length = value.length();
+
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+            bytes[i] = (byte)value.charAt(i);
+
+        return parse(bytes, 0, length);
+    }
+
+    /**
+     * Parse date from the ASCII characters in the array.
+     *
+     * @param bytes array containing the date.
+     * @param offset offset of the first character.
+     * @param length number of characters.
+     *
+     * @return milliseconds of the local midnight of the date.
+     *
+     * @throws IllegalArgumentException if value is not a valid date.
+     */
+    public static long parse(byte[] bytes, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+
+        // day
+        int day = 0;
+        int start = i;
+        for (; i < end && isDigit(bytes[i]); i++)
+            day = day * 10 + (bytes[i] - '0');
+
+        if (i == start || i - start > 2 || i == end || !isSeparator(bytes[i]))
+            throw malformed(bytes, offset, length);
+
+        byte separator = bytes[i++];
+
+        // month, number or name
+        int month = 0;
+        start = i;
+        if (i < end && isDigit(bytes[i])) {
+            for (; i < end && isDigit(bytes[i]); i++)
+                month = month * 10 + (bytes[i] - '0');
+
+            if (i - start > 2)
+                throw malformed(bytes, offset, length);
+        } else {
+            for (; i < end && isLetter(bytes[i]); i++)
+                ;
+
+            month = monthByName(bytes, start, i - start);
+        }
+
+        if (i == start || i == end || bytes[i] != separator)
+            throw malformed(bytes, offset, length);
+
+        i++;
+
+        // year
+        int year = 0;
+        start = i;
+        for (; i < end && isDigit(bytes[i]); i++)
+            year = year * 10 + (bytes[i] - '0');
+
+        int yearDigits = i - start;
+        if (i != end || (yearDigits != 2 && yearDigits != 4))
+            throw malformed(bytes, offset, length);
+
+        if (yearDigits == 2)
+            year += 1900;
+
+        if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month))
+            throw malformed(bytes, offset, length);
+
+        return toLocalMillis(daysSinceEpoch(year, month, day));
+    }
+
+    /**
+     * Get local midnight of the specified date. Day may exceed number of 
+     * days in the month, then date is moved forward into the next months.
+     *
+     * @param year year of the date.
+     * @param month month of the date starting with 1.
+     * @param day day of the month starting with 1.
+     *
+     * @return milliseconds of the local midnight of the date.
+     */
+    public static long toMillis(int year, int month, int day) {
+        return toLocalMillis(daysSinceEpoch(year, month, day));
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isLetter(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+    }
+
+    private static boolean isSeparator(byte b) {
+        return b == '-' || b == '/' || b == '.';
+    }
+
+    /**
+     * Find month by its name, the first three letters are significant.
+     *
+     * @return month number starting with 1 or 0 if name is not known.
+     */
+    private static int monthByName(byte[] bytes, int offset, int length) {
+        if (length < 3)
+            return 0;
+
+        for (int m = 0; m < MONTH_NAMES.length; m++) {
+            String name = MONTH_NAMES[m];
+
+            boolean match = true;
+            for (int j = 0; j < 3 && match; j++)
+                match = (bytes[offset + j] | 0x20) == name.charAt(j);
+
+            if (match)
+                return m + 1;
+        }
+
+        return 0;
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2)
+            return isLeapYear(year) ? 29 : 28;
+
+        if (month == 12)
+            return 31;
+
+        return DAYS_BEFORE_MONTH[month] - DAYS_BEFORE_MONTH[month - 1];
+    }
+
+    /**
+     * Number of days since 1 January 1970 in the Gregorian calendar.
+     */
+    private static long daysSinceEpoch(int year, int month, int day) {
+        long y = year - 1;
+        long days = y * 365 + y / 4 - y / 100 + y / 400;
+
+        days += DAYS_BEFORE_MONTH[month - 1] + day - 1;
+
+        if (month > 2 && isLeapYear(year))
+            days++;
+
+        // days from 1 January 0001 till 1 January 1970
+        return days - 719162;
+    }
+
+    /**
+     * Convert midnight of the day into milliseconds in the default time zone.
+     * When midnight falls into a daylight saving gap, first valid time after
+     * it is returned, like {@link java.util.Date#Date(String)} does.
+     */
+    private static long toLocalMillis(long days) {
+        long localMillis = days * MILLIS_PER_DAY;
+
+        // raw offset is only a guess, zones changed their offsets in the past
+        long utcMillis = localMillis - ZONE.getOffset(localMillis - ZONE.getRawOffset());
+
+        int offset = ZONE.getOffset(utcMillis);
+        if (localMillis - offset == utcMillis)
+            return utcMillis;
+
+        long adjustedMillis = localMillis - offset;
+        if (ZONE.getOffset(adjustedMillis) == offset)
+            return adjustedMillis;
+
+        // midnight does not exist, offset changes between the two values
+        return Math.max(utcMillis, adjustedMillis);
+    }
+
+    private static IllegalArgumentException malformed(
+        byte[] bytes, int offset, int length)
+    {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++)
+            chars[i] = (char)(bytes[offset + i] & 0xff);
+
+        return new IllegalArgumentException("Malformed date " +
+            new String(chars) + ".");
+    }
+}
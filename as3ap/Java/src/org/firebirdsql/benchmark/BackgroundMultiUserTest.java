@@ -19,11 +19,18 @@
 
 package org.firebirdsql.benchmark;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Background test cases. Each tests executes corresponding statement in an
  * endless loop until it is stopped. There's small delay between subsequent
- * test executions to allow better scheduling.
+ * test executions to allow better scheduling. The delay does not hold a
+ * monitor, so that a user running on a virtual thread does not pin its
+ * carrier thread while waiting.
+ * <p>
+ * When {@link ArrivalSchedule} is set, test is a worker of the open-loop
+ * test and executes operations at their scheduled times instead.
  * 
  * @author <a href="mailto:rrokytskyy@users.sourceforge.net">Roman Rokytskyy</a>
  */
@@ -35,27 +42,89 @@ public class BackgroundMultiUserTest extends MultiUserTest {
 
     protected void setUp() throws Exception {
         super.setUp();
-        
-        stopped = false;
     }
 
     protected void tearDown() throws Exception {
         super.tearDown();
     }
     
-    private boolean stopped;
+    private volatile boolean stopped;
+    private CountDownLatch stopSignal = new CountDownLatch(1);
+    
+    /**
+     * Schedule of the open-loop test or <code>null</code> if next operation
+     * is executed right after the previous one.
+     */
+    private ArrivalSchedule schedule;
+    private long scheduledStart;
     
-    public synchronized void stop() {
+    public void stop() {
         stopped = true;
-        notifyAll();
+        stopSignal.countDown();
+    }
+    
+    /**
+     * Make this test a worker of the open-loop test. Operations are
+     * executed at the times from the schedule shared by all workers, no
+     * sleep is made between them.
+     * 
+     * @param schedule schedule of the operations.
+     */
+    public void setArrivalSchedule(ArrivalSchedule schedule) {
+        this.schedule = schedule;
+    }
+    
+    protected String getLatencyName(String operation) {
+        return "background " + operation;
+    }
+    
+    /**
+     * Wait until the next operation should be executed.
+     * 
+     * @return <code>false</code> if test was stopped while waiting.
+     */
+    private boolean waitForOperation() throws InterruptedException {
+        if (schedule == null)
+            return true;
+        
+        scheduledStart = schedule.next();
+        
+        if (!schedule.dispatch(scheduledStart, stopSignal))
+            return false;
+        
+        setIntendedStart(scheduledStart);
+        
+        return true;
+    }
+    
+    private void operationCompleted() {
+        if (schedule != null)
+            schedule.completed(scheduledStart);
+    }
+    
+    /**
+     * Sleep between the operations of the closed-loop test.
+     */
+    private void thinkTime() throws InterruptedException {
+        if (schedule != null)
+            return;
+        
+        int sleepDuration = getDatabaseManager().getConfig().getSleepDuration();
+        if (sleepDuration > 0)
+            stopSignal.await(sleepDuration, TimeUnit.MILLISECONDS);
     }
         
     public void testOltpUpdate() throws Exception {
         long counter = 0;
         
         while(!stopped) {
+            if (!waitForOperation())
+                break;
+            
             doOltpUpdate();
             
+            operationCompleted();
+            
             counter++;
             
             if (counter % getDatabaseManager().getConfig().getOltpCommitPeriod() == 0) {
@@ -63,11 +132,7 @@ public class BackgroundMultiUserTest extends MultiUserTest {
                     getConnection().commit();
             }
             
-            int sleepDuration = getDatabaseManager().getConfig().getSleepDuration();
-            if (sleepDuration > 0)
-                synchronized(this) {
-                    wait(sleepDuration);
-                }
+            thinkTime();
         }
         
         System.out.println("[" + Thread.currentThread().getName() + "] stopped.");
@@ -77,8 +142,13 @@ public class BackgroundMultiUserTest extends MultiUserTest {
         long counter = 0;
         
         while(!stopped) {
+            if (!waitForOperation())
+                break;
+            
             doIrSelect();
             
+            operationCompleted();
+            
             counter++;
             
             if (counter % getDatabaseManager().getConfig().getIrCommitPeriod() == 0) {
@@ -86,11 +156,7 @@ public class BackgroundMultiUserTest extends MultiUserTest {
                     getConnection().commit();
             }
             
-            int sleepDuration = getDatabaseManager().getConfig().getSleepDuration();
-            if (sleepDuration > 0)
-                synchronized(this) {
-                    wait(sleepDuration);
-                }
+            thinkTime();
         }
         
         System.out.println("[" + Thread.currentThread().getName() + "] stopped.");
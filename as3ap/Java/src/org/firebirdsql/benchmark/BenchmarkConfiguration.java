@@ -47,7 +47,36 @@ public class BenchmarkConfiguration {
     public static final String STATEMENT_POOLING_STR = "statement";
     
     public static final String MAX_CONNECTIONS = "maxConnections";
+    public static final String STATEMENT_CACHE_SIZE = "statementCacheSize";
     public static final String USER_COUNT = "userCount";
+    public static final String USER_RAMP_UP = "userRampUp";
+    public static final String USER_DRAIN_TIMEOUT = "userDrainTimeout";
+    public static final String USER_STACK_SIZE = "userStackSize";
+    public static final String USER_THREAD_PRIORITY = "userThreadPriority";
+    
+    public static final String USER_THREADS_PROPERTY = "userThreads";
+    public static final String PLATFORM_USER_THREADS_STR = "platform";
+    public static final String VIRTUAL_USER_THREADS_STR = "virtual";
+    
+    public static final int PLATFORM_USER_THREADS = 1;
+    public static final int VIRTUAL_USER_THREADS = 2;
+    
+    public static final String LATENCY_EXPECTED_INTERVAL = "latencyExpectedInterval";
+    public static final String SAMPLE_INTERVAL = "sampleInterval";
+    public static final String SAMPLE_PATH = "samplePath";
+    
+    public static final String STEADY_STATE_VARIATION = "steadyStateVariation";
+    public static final String STEADY_STATE_INTERVAL = "steadyStateInterval";
+    public static final String STEADY_STATE_WINDOW = "steadyStateWindow";
+    public static final String BACKGROUND_MIN_DURATION = "bgMinDuration";
+    
+    public static final String OPEN_LOOP_RATE = "openLoopRate";
+    public static final String OPEN_LOOP_ARRIVAL = "openLoopArrival";
+    public static final String CONSTANT_ARRIVAL_STR = "constant";
+    public static final String POISSON_ARRIVAL_STR = "poisson";
+    
+    public static final int CONSTANT_ARRIVAL = 1;
+    public static final int POISSON_ARRIVAL = 2;
     
     public static final int UNKNOWN_POOLING = 0;
     public static final int NO_POOLING = 1;
@@ -60,6 +89,17 @@ public class BenchmarkConfiguration {
     
     public static final String RECREATE_TABLE_AS_CLEANUP = "recreateTable";
     
+    public static final String RESTORE_MODE_PROPERTY = "restoreMode";
+    public static final String DELETE_RESTORE_MODE_STR = "delete";
+    public static final String DROP_RESTORE_MODE_STR = "drop";
+    public static final String SNAPSHOT_RESTORE_MODE_STR = "snapshot";
+    public static final String DELTA_RESTORE_MODE_STR = "delta";
+    
+    public static final int DELETE_RESTORE_MODE = 1;
+    public static final int DROP_RESTORE_MODE = 2;
+    public static final int SNAPSHOT_RESTORE_MODE = 3;
+    public static final int DELTA_RESTORE_MODE = 4;
+    
     public static final String JDBC_DRIVER_CLASS_NAME = "jdbcDriver";
     public static final String JDBC_DRIVER_URL = "jdbcUrl";
     
@@ -68,6 +108,33 @@ public class BenchmarkConfiguration {
     public static final String OLTP_COMMIT_PERIOD = "oltpCommitPeriod";
     public static final String IR_COMMIT_PERIOD = "irCommitPeriod";
     
+    public static final String LOAD_MODE_PROPERTY = "loadMode";
+    public static final String ROW_LOAD_MODE_STR = "row";
+    public static final String BATCH_LOAD_MODE_STR = "batch";
+    public static final String COMPARE_LOAD_MODE_STR = "compare";
+    public static final String MULTI_ROW_LOAD_MODE_STR = "multiRow";
+    
+    public static final int ROW_LOAD_MODE = 1;
+    public static final int BATCH_LOAD_MODE = 2;
+    public static final int COMPARE_LOAD_MODE = 3;
+    public static final int MULTI_ROW_LOAD_MODE = 4;
+    
+    public static final String LOAD_BATCH_SIZE = "loadBatchSize";
+    public static final String LOAD_MULTI_ROW_SIZE = "loadMultiRowSize";
+    public static final String PARALLEL_LOAD = "parallelLoad";
+    public static final String LOAD_PARTITIONS = "loadPartitions";
+    public static final String LOAD_COMMIT_INTERVAL = "loadCommitInterval";
+    public static final String TYPED_BINDING = "typedBinding";
+    public static final String DEFER_CONSTRAINTS = "deferConstraints";
+    public static final String GENERATE_DATA = "generateData";
+    public static final String SCALE_FACTOR = "scaleFactor";
+    public static final String GENERATOR_SEED = "generatorSeed";
+    public static final String LOAD_REPORT_INTERVAL = "loadReportInterval";
+    public static final String LOAD_METRICS_FILE = "loadMetricsFile";
+    public static final String PIPELINED_LOAD = "pipelinedLoad";
+    public static final String LOAD_CHECKPOINT_FILE = "loadCheckpointFile";
+    public static final String BINARY_CACHE = "binaryCache";
+    
     public static final String CUSTOM_PROPERTY = "custom";
     
     private static final Properties RES = new Properties();
@@ -163,6 +230,17 @@ public class BenchmarkConfiguration {
             return UNKNOWN_POOLING;
     }
     
+    /**
+     * Get number of prepared statements each user of the multi-user test
+     * keeps open, see {@link StatementCache}.
+     * 
+     * @return maximum number of cached statements, <code>0</code> if 
+     * statements are closed after each operation.
+     */
+    public int getStatementCacheSize() {
+        return getIntProperty(STATEMENT_CACHE_SIZE, 0);
+    }
+    
     private int getIntProperty(String key, int defaultValue) {
         String strValue = getProperty(key);
         
@@ -179,6 +257,19 @@ public class BenchmarkConfiguration {
 
     }
     
+    private double getDoubleProperty(String key, double defaultValue) {
+        String strValue = getProperty(key);
+        
+        if (strValue == null)
+            return defaultValue;
+            
+        try {
+            return Double.parseDouble(strValue);
+        } catch(NumberFormatException ex) {
+            return defaultValue;
+        }
+    }
+    
     private boolean getBooleanProperty(String key, boolean defaultValue) {
         String strValue = getProperty(key);
         
@@ -207,10 +298,183 @@ public class BenchmarkConfiguration {
         return getBooleanProperty(RECREATE_TABLE_AS_CLEANUP, false);
     }
     
+    /**
+     * Get the way <code>updates</code> and <code>hundred</code> tables are
+     * restored after the multi-user test.
+     * 
+     * @return one of {@link #DELETE_RESTORE_MODE}, {@link #DROP_RESTORE_MODE},
+     * {@link #SNAPSHOT_RESTORE_MODE} or {@link #DELTA_RESTORE_MODE}, when 
+     * property is not specified, mode is chosen by 
+     * {@link #isRecreateTableAsCleanup()}.
+     */
+    public int getRestoreMode() {
+        String restoreMode = getProperty(RESTORE_MODE_PROPERTY, null);
+        
+        if (DELTA_RESTORE_MODE_STR.equals(restoreMode))
+            return DELTA_RESTORE_MODE;
+        else
+        if (SNAPSHOT_RESTORE_MODE_STR.equals(restoreMode))
+            return SNAPSHOT_RESTORE_MODE;
+        else
+        if (DROP_RESTORE_MODE_STR.equals(restoreMode))
+            return DROP_RESTORE_MODE;
+        else
+        if (DELETE_RESTORE_MODE_STR.equals(restoreMode))
+            return DELETE_RESTORE_MODE;
+        else
+            return isRecreateTableAsCleanup() ? 
+                DROP_RESTORE_MODE : DELETE_RESTORE_MODE;
+    }
+    
     public int getUserCount() {
         return getIntProperty(USER_COUNT, 1);
     }
     
+    /**
+     * Get delay between the starts of two subsequent users.
+     * 
+     * @return delay in milliseconds, <code>0</code> if all users start at
+     * once.
+     */
+    public int getUserRampUpInterval() {
+        return getIntProperty(USER_RAMP_UP, 0);
+    }
+    
+    /**
+     * Get time the stopped users have to finish before they are
+     * interrupted.
+     * 
+     * @return timeout in milliseconds.
+     */
+    public int getUserDrainTimeout() {
+        return getIntProperty(USER_DRAIN_TIMEOUT, 60) * 1000;
+    }
+    
+    /**
+     * Get stack size of the user threads.
+     * 
+     * @return stack size in bytes, <code>0</code> for the default size.
+     */
+    public long getUserStackSize() {
+        return getIntProperty(USER_STACK_SIZE, 0) * 1024L;
+    }
+    
+    public int getUserThreadPriority() {
+        return getIntProperty(USER_THREAD_PRIORITY, Thread.NORM_PRIORITY);
+    }
+    
+    /**
+     * Get kind of threads running the users of the multi-user test.
+     * 
+     * @return {@link #PLATFORM_USER_THREADS} or 
+     * {@link #VIRTUAL_USER_THREADS}.
+     */
+    public int getUserThreadMode() {
+        String mode = getProperty(USER_THREADS_PROPERTY);
+        
+        if (VIRTUAL_USER_THREADS_STR.equals(mode))
+            return VIRTUAL_USER_THREADS;
+        else
+            return PLATFORM_USER_THREADS;
+    }
+    
+    /**
+     * Get expected interval between the operations of one user, used to
+     * correct the latencies for the coordinated omission.
+     * 
+     * @return interval in microseconds, <code>0</code> if latencies are
+     * not corrected.
+     */
+    public long getLatencyExpectedInterval() {
+        return getIntProperty(LATENCY_EXPECTED_INTERVAL, 0) * 1000L;
+    }
+    
+    /**
+     * Get interval in which throughput and latency of the multi-user test
+     * are written into the time series file.
+     * 
+     * @return interval in milliseconds, <code>0</code> if no time series 
+     * is written.
+     */
+    public int getSampleInterval() {
+        return getIntProperty(SAMPLE_INTERVAL, 0);
+    }
+    
+    public String getSamplePath() {
+        return getProperty(SAMPLE_PATH, ".");
+    }
+    
+    /**
+     * Get highest coefficient of variation of throughput and latency at 
+     * which the multi-user workload is in steady state.
+     * 
+     * @return coefficient, <code>0</code> if background phases run for 
+     * their full duration.
+     */
+    public double getSteadyStateVariation() {
+        return getDoubleProperty(STEADY_STATE_VARIATION, 0);
+    }
+    
+    public boolean isSteadyStateDetection() {
+        return getSteadyStateVariation() > 0;
+    }
+    
+    /**
+     * Get interval in which workload is sampled for the steady state.
+     * 
+     * @return interval in milliseconds.
+     */
+    public int getSteadyStateInterval() {
+        return getIntProperty(STEADY_STATE_INTERVAL, 1000);
+    }
+    
+    /**
+     * Get number of the last samples that must be steady.
+     * 
+     * @return number of samples.
+     */
+    public int getSteadyStateWindow() {
+        return getIntProperty(STEADY_STATE_WINDOW, 30);
+    }
+    
+    /**
+     * Get minimum duration of the background test when it ends on steady
+     * state, {@link #getBackgroundTestDuration()} is the maximum.
+     * 
+     * @return duration in milliseconds.
+     */
+    public int getBackgroundMinDuration() {
+        return getIntProperty(BACKGROUND_MIN_DURATION, 60) * 1000;
+    }
+    
+    /**
+     * Get rate of the operations of the open-loop background tests.
+     * 
+     * @return operations per second, <code>0</code> if background users
+     * run in closed loop.
+     */
+    public double getOpenLoopRate() {
+        return getDoubleProperty(OPEN_LOOP_RATE, 0);
+    }
+    
+    public boolean isOpenLoop() {
+        return getOpenLoopRate() > 0;
+    }
+    
+    /**
+     * Get how operations of the open-loop test arrive.
+     * 
+     * @return {@link #CONSTANT_ARRIVAL} or {@link #POISSON_ARRIVAL}.
+     */
+    public int getOpenLoopArrival() {
+        String arrival = getProperty(OPEN_LOOP_ARRIVAL);
+        
+        if (POISSON_ARRIVAL_STR.equals(arrival))
+            return POISSON_ARRIVAL;
+        else
+            return CONSTANT_ARRIVAL;
+    }
+    
     public String getDriverClassName() {
         return getProperty(JDBC_DRIVER_CLASS_NAME);
     }
@@ -231,6 +495,154 @@ public class BenchmarkConfiguration {
         return getIntProperty(IR_COMMIT_PERIOD, 1000);
     }
     
+    /**
+     * Get the way data files are loaded into the database.
+     * 
+     * @return one of {@link #ROW_LOAD_MODE}, {@link #BATCH_LOAD_MODE},
+     * {@link #MULTI_ROW_LOAD_MODE} or {@link #COMPARE_LOAD_MODE}, row-by-row 
+     * load is used when property is not specified.
+     */
+    public int getLoadMode() {
+        String loadMode = getProperty(LOAD_MODE_PROPERTY, null);
+        
+        if (BATCH_LOAD_MODE_STR.equals(loadMode))
+            return BATCH_LOAD_MODE;
+        else
+        if (MULTI_ROW_LOAD_MODE_STR.equals(loadMode))
+            return MULTI_ROW_LOAD_MODE;
+        else
+        if (COMPARE_LOAD_MODE_STR.equals(loadMode))
+            return COMPARE_LOAD_MODE;
+        else
+            return ROW_LOAD_MODE;
+    }
+    
+    public int getLoadBatchSize() {
+        return getIntProperty(LOAD_BATCH_SIZE, 500);
+    }
+    
+    /**
+     * Get number of rows inserted by one statement in the multi-row load 
+     * mode.
+     * 
+     * @return number of rows.
+     */
+    public int getLoadMultiRowSize() {
+        return getIntProperty(LOAD_MULTI_ROW_SIZE, 20);
+    }
+    
+    public boolean isParallelLoad() {
+        return getBooleanProperty(PARALLEL_LOAD, false);
+    }
+    
+    public int getLoadPartitions() {
+        return getIntProperty(LOAD_PARTITIONS, 1);
+    }
+    
+    public int getLoadCommitInterval() {
+        return getIntProperty(LOAD_COMMIT_INTERVAL, 10000);
+    }
+    
+    public boolean isTypedBinding() {
+        return getBooleanProperty(TYPED_BINDING, true);
+    }
+    
+    public boolean isDeferConstraints() {
+        return getBooleanProperty(DEFER_CONSTRAINTS, false);
+    }
+    
+    public boolean isGenerateData() {
+        return getBooleanProperty(GENERATE_DATA, false);
+    }
+    
+    /**
+     * Get size of the generated data relative to the 40 MB data set.
+     * 
+     * @return scale factor, <code>1</code> if not specified.
+     */
+    public double getScaleFactor() {
+        return getDoubleProperty(SCALE_FACTOR, 1);
+    }
+    
+    /**
+     * Get number of rows generated for the data tables.
+     * 
+     * @return {@link DataScale#BASE_ROW_COUNT} multiplied by the scale 
+     * factor, but not less than {@link AsapDataGenerator#MIN_ROW_COUNT}.
+     */
+    public int getGeneratorRowCount() {
+        long rowCount = Math.round(DataScale.BASE_ROW_COUNT * getScaleFactor());
+        
+        if (rowCount < AsapDataGenerator.MIN_ROW_COUNT)
+            return AsapDataGenerator.MIN_ROW_COUNT;
+        
+        return rowCount > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int)rowCount;
+    }
+    
+    public int getGeneratorSeed() {
+        return getIntProperty(GENERATOR_SEED, 1);
+    }
+    
+    /**
+     * Get interval between the progress reports of the data load.
+     * 
+     * @return interval in milliseconds, <code>0</code> if progress should
+     * not be reported.
+     */
+    public int getLoadReportInterval() {
+        return getIntProperty(LOAD_REPORT_INTERVAL, 10) * 1000;
+    }
+    
+    /**
+     * Get file to which load statistics are written.
+     * 
+     * @return name of the file or <code>null</code> if statistics should
+     * not be written.
+     */
+    public String getLoadMetricsFile() {
+        String fileName = getProperty(LOAD_METRICS_FILE, null);
+        
+        if (fileName == null || fileName.trim().length() == 0)
+            return null;
+        
+        return fileName.trim();
+    }
+    
+    /**
+     * Check if data files are read, parsed and inserted by separate threads
+     * connected with bounded queues, see {@link PipelinedRowSource}.
+     * 
+     * @return <code>true</code> if load is pipelined.
+     */
+    public boolean isPipelinedLoad() {
+        return getBooleanProperty(PIPELINED_LOAD, false);
+    }
+    
+    /**
+     * Get file in which progress of the resumable data load is recorded.
+     * 
+     * @return name of the file or <code>null</code> if load is not 
+     * resumable.
+     */
+    public String getLoadCheckpointFile() {
+        String fileName = getProperty(LOAD_CHECKPOINT_FILE, null);
+        
+        if (fileName == null || fileName.trim().length() == 0)
+            return null;
+        
+        return fileName.trim();
+    }
+    
+    /**
+     * Check if data files are converted once into the binary form and 
+     * loaded from it, see {@link BinaryRowCache}.
+     * 
+     * @return <code>true</code> if binary cache is used.
+     */
+    public boolean isBinaryCache() {
+        return getBooleanProperty(BINARY_CACHE, false);
+    }
+    
     public String getFixtureClassName() {
         return getProperty(FIXTURE_CLASS_NAME, JdbcFixture.class.getName());
     }
@@ -19,6 +19,8 @@
 
 package org.firebirdsql.benchmark;
 
+import java.sql.Types;
+
 import junit.framework.TestCase;
 
 /**
@@ -58,6 +60,10 @@ public abstract class BenchmarkDDL extends TestCase {
     public static final String SEL_100_SEQ_TABLE = "sel100seq";
     public static final String SEL_100_RND_TABLE = "sel100rnd";
     
+    public static final String SNAPSHOT_UPDATES_TABLE = "snapshot_updates";
+    public static final String SNAPSHOT_HUNDRED_TABLE = "snapshot_hundred";
+    public static final String SNAPSHOT_STATE_TABLE = "snapshot_state";
+    
     public static final String UNIQUES_TABLE_OUTPUT = "uniques_output";
     public static final String HUNDRED_TABLE_OUTPUT = "hundred_output";
     public static final String TEN_PCT_TABLE_OUTPUT = "tenpct_output";
@@ -75,31 +81,67 @@ public abstract class BenchmarkDDL extends TestCase {
     public static final String NAME_COL = "\"name\"";
     public static final String ADDRESS_COL = "\"address\"";
     
-    public static final String COLUMNS_DEF = ""
-        + KEY_COL + " INTEGER NOT NULL, "
-        + INT_COL + " INTEGER NOT NULL, "
-        + SIGNED_COL + " INTEGER, "
-        + FLOAT_COL + " FLOAT NOT NULL, "
-        + DOUBLE_COL + " DOUBLE PRECISION NOT NULL, "
-        + DECIM_COL + " NUMERIC(18,2) NOT NULL, "
-        + DATE_COL + " TIMESTAMP NOT NULL, "
-        + CODE_COL + " CHAR(10) NOT NULL, "
-        + NAME_COL + " CHAR(20) NOT NULL, "
-        + ADDRESS_COL + " VARCHAR(80) NOT NULL "
-        ;
-        
-    public static final String COLUMNS_LIST = ""
-        + KEY_COL + ", " + INT_COL + ", " + SIGNED_COL + ", "
-        + FLOAT_COL + ", " + DOUBLE_COL + ", " + DECIM_COL + ", "
-        + DATE_COL + ", " + CODE_COL + ", " + NAME_COL + ", "
-        + ADDRESS_COL
-        ;
-        
+    /**
+     * Columns of the data tables, {@link #COLUMNS_SQL_TYPES} and 
+     * {@link #COLUMNS_TYPES} contain their types at the same positions.
+     */
     public static final String[] COLUMNS_ARRAY = new String[] {
-        KEY_COL, INT_COL, SIGNED_COL, FLOAT_COL, DOUBLE_COL,
+        KEY_COL, INT_COL, SIGNED_COL, FLOAT_COL, DOUBLE_COL, 
         DECIM_COL, DATE_COL, CODE_COL, NAME_COL, ADDRESS_COL
     };
     
+    private static final String[] COLUMNS_SQL_TYPES = new String[] {
+        "INTEGER NOT NULL",
+        "INTEGER NOT NULL",
+        "INTEGER",
+        "FLOAT NOT NULL",
+        "DOUBLE PRECISION NOT NULL",
+        "NUMERIC(18,2) NOT NULL",
+        "TIMESTAMP NOT NULL",
+        "CHAR(10) NOT NULL",
+        "CHAR(20) NOT NULL",
+        "VARCHAR(80) NOT NULL"
+    };
+    
+    /**
+     * JDBC types of the columns from {@link #COLUMNS_ARRAY}.
+     */
+    public static final int[] COLUMNS_TYPES = new int[] {
+        Types.INTEGER,
+        Types.INTEGER,
+        Types.INTEGER,
+        Types.FLOAT,
+        Types.DOUBLE,
+        Types.NUMERIC,
+        Types.TIMESTAMP,
+        Types.CHAR,
+        Types.CHAR,
+        Types.VARCHAR
+    };
+    
+    public static final int[] TINY_COLUMNS_TYPES = new int[] {
+        Types.INTEGER
+    };
+    
+    public static final String COLUMNS_DEF = 
+        getColumnsDef(COLUMNS_ARRAY, COLUMNS_SQL_TYPES);
+        
+    public static final String COLUMNS_LIST = 
+        BenchmarkFixture.toCSVString(COLUMNS_ARRAY);
+        
+    private static String getColumnsDef(String[] columns, String[] types) {
+        StringBuffer sb = new StringBuffer();
+
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0)
+                sb.append(", ");
+            
+            sb.append(columns[i]).append(' ').append(types[i]);
+        }
+
+        return sb.toString();
+    }
+    
     public static final String CREATE_UNIQUES_TABLE = ""
         + "CREATE TABLE " + UNIQUES_TABLE + "("
         + COLUMNS_DEF + ", "
@@ -143,6 +185,67 @@ public abstract class BenchmarkDDL extends TestCase {
         ;
         
         
+    /*
+     * Data tables without primary keys, used when constraints are created
+     * after the data are loaded. Keys are added with the statements below,
+     * so the resulting schema is the same as one created by the CREATE_*
+     * statements above.
+     */
+    public static final String CREATE_UNIQUES_TABLE_WITHOUT_KEY = ""
+        + "CREATE TABLE " + UNIQUES_TABLE + "("
+        + COLUMNS_DEF
+        + ")"
+        ;
+        
+    public static final String CREATE_HUNDRED_TABLE_WITHOUT_KEY = ""
+        + "CREATE TABLE " + HUNDRED_TABLE + "("
+        + COLUMNS_DEF
+        + ")"
+        ;
+        
+    public static final String CREATE_TEN_PCT_TABLE_WITHOUT_KEY = ""
+        + "CREATE TABLE " + TEN_PCT_TABLE + "("
+        + COLUMNS_DEF
+        + ")"
+        ;
+        
+    public static final String CREATE_UPDATES_TABLE_WITHOUT_KEY = ""
+        + "CREATE TABLE " + UPDATES_TABLE + "("
+        + COLUMNS_DEF
+        + ")"
+        ;
+        
+    public static final String CREATE_TINY_TABLE_WITHOUT_KEY = ""
+        + "CREATE TABLE " + TINY_TABLE + "("
+        + KEY_COL + " INTEGER NOT NULL"
+        + ")"
+        ;
+        
+    public static final String ADD_UNIQUES_PRIMARY_KEY = ""
+        + "ALTER TABLE " + UNIQUES_TABLE + " "
+        + "ADD PRIMARY KEY (" + KEY_COL + ")"
+        ;
+        
+    public static final String ADD_HUNDRED_PRIMARY_KEY = ""
+        + "ALTER TABLE " + HUNDRED_TABLE + " "
+        + "ADD PRIMARY KEY (" + KEY_COL + ")"
+        ;
+        
+    public static final String ADD_TEN_PCT_PRIMARY_KEY = ""
+        + "ALTER TABLE " + TEN_PCT_TABLE + " "
+        + "ADD PRIMARY KEY (" + KEY_COL + ", " + CODE_COL + ")"
+        ;
+        
+    public static final String ADD_UPDATES_PRIMARY_KEY = ""
+        + "ALTER TABLE " + UPDATES_TABLE + " "
+        + "ADD PRIMARY KEY (" + KEY_COL + ")"
+        ;
+        
+    public static final String ADD_TINY_PRIMARY_KEY = ""
+        + "ALTER TABLE " + TINY_TABLE + " "
+        + "ADD PRIMARY KEY (" + KEY_COL + ")"
+        ;
+        
     public static final String CREATE_TINY_OUTPUT = ""
         + "CREATE TABLE " + TINY_TABLE_OUTPUT + "("
         + KEY_COL + " INTEGER NOT NULL"
@@ -167,6 +270,29 @@ public abstract class BenchmarkDDL extends TestCase {
         + ")"
         ;
         
+    public static final String CREATE_SNAPSHOT_UPDATES_TABLE = ""
+        + "CREATE TABLE " + SNAPSHOT_UPDATES_TABLE + "("
+        + COLUMNS_DEF + ", "
+        + "PRIMARY KEY (" + KEY_COL + ")"
+        + ")"
+        ;
+        
+    public static final String CREATE_SNAPSHOT_HUNDRED_TABLE = ""
+        + "CREATE TABLE " + SNAPSHOT_HUNDRED_TABLE + "("
+        + COLUMNS_DEF
+        + ")"
+        ;
+        
+    /**
+     * Table with a row when <code>updates</code> table is known to match
+     * the snapshot, see {@link BenchmarkFixture#startUpdatesTracking()}.
+     */
+    public static final String CREATE_SNAPSHOT_STATE_TABLE = ""
+        + "CREATE TABLE " + SNAPSHOT_STATE_TABLE + "("
+        + "restored INTEGER NOT NULL"
+        + ")"
+        ;
+        
     public static final String CREATE_SEL_100_SEQ_TABLE = ""
         + "CREATE TABLE " + SEL_100_SEQ_TABLE + "("
         + COLUMNS_DEF + ", "
@@ -20,9 +20,7 @@
 package org.firebirdsql.benchmark;
 
 import java.io.*;
-import java.util.StringTokenizer;
 import java.sql.*;
-import java.util.Date;
 
 import junit.framework.Test;
 
@@ -31,9 +29,28 @@ import junit.framework.Test;
  */
 public abstract class BenchmarkFixture {
     
+    /**
+     * Batch size value that tells loader to use the configured batch size.
+     */
+    public static final int CONFIGURED_BATCH_SIZE = 0;
+    
+    /**
+     * Batch size that makes loader insert several rows with one statement, 
+     * see {@link #getMultiRowInsert(String, int)}.
+     */
+    public static final int MULTI_ROW_BATCH_SIZE = -1;
+    
     private BenchmarkDatabaseManager manager;
     private File dataPath;
     
+    private boolean constraintsDeferred;
+    
+    private AsapDataGenerator dataGenerator;
+    private DataScale dataScale;
+    private UpdatesTracker updatesTracker;
+    private LatencyStatistics latencyStatistics;
+    private LoadMetrics loadMetrics = new LoadMetrics();
+    
     public BenchmarkFixture(File dataPath) throws SQLException {
         this.manager = createDatabaseManager();
         this.dataPath = dataPath;
@@ -143,6 +160,9 @@ public abstract class BenchmarkFixture {
         manager.dropTable(BenchmarkDDL.SEL_100_RND_TABLE);
         manager.dropTable(BenchmarkDDL.SEL_100_SEQ_TABLE);
         manager.dropTable(BenchmarkDDL.SAVE_UPDATES_TABLE);
+        manager.dropTable(BenchmarkDDL.SNAPSHOT_HUNDRED_TABLE);
+        manager.dropTable(BenchmarkDDL.SNAPSHOT_UPDATES_TABLE);
+        manager.dropTable(BenchmarkDDL.SNAPSHOT_STATE_TABLE);
         
         manager.dropTable(BenchmarkDDL.HUNDRED_TABLE_OUTPUT);
         manager.dropTable(BenchmarkDDL.UPDATES_TABLE_OUTPUT);
@@ -154,12 +174,7 @@ public abstract class BenchmarkFixture {
         manager.dropTable(BenchmarkDDL.HUNDRED_TABLE);
         manager.dropTable(BenchmarkDDL.UPDATES_TABLE);
         
-        manager.executeDDL(BenchmarkDDL.CREATE_UPDATES_TABLE);
-        manager.executeDDL(BenchmarkDDL.CREATE_HUNDRED_TABLE);
-        manager.executeDDL(BenchmarkDDL.CREATE_HUNDRED_FOREIGN_KEY);
-        manager.executeDDL(BenchmarkDDL.CREATE_TEN_PCT_TABLE);
-        manager.executeDDL(BenchmarkDDL.CREATE_UNIQUES_TABLE);
-        manager.executeDDL(BenchmarkDDL.CREATE_TINY_TABLE);
+        createDataTables(getConfig().isDeferConstraints());
         
         manager.executeDDL(BenchmarkDDL.CREATE_TINY_OUTPUT);
         manager.executeDDL(BenchmarkDDL.CREATE_UPDATES_OUTPUT);
@@ -167,10 +182,214 @@ public abstract class BenchmarkFixture {
         
         manager.executeDDL(BenchmarkDDL.CREATE_SAVE_UPDATES_TABLE);
         
+        manager.executeDDL(BenchmarkDDL.CREATE_SNAPSHOT_UPDATES_TABLE);
+        manager.executeDDL(BenchmarkDDL.CREATE_SNAPSHOT_HUNDRED_TABLE);
+        manager.executeDDL(BenchmarkDDL.CREATE_SNAPSHOT_STATE_TABLE);
+        
         manager.executeDDL(BenchmarkDDL.CREATE_SEL_100_SEQ_TABLE);
         manager.executeDDL(BenchmarkDDL.CREATE_SEL_100_RND_TABLE);
     }
     
+    /**
+     * Create tables that are filled by the data load. When constraints are
+     * deferred, tables are created without primary and foreign keys and 
+     * {@link #createConstraints()} must be called after the data are loaded.
+     * 
+     * @param deferConstraints <code>true</code> if constraints should be
+     * created after the load.
+     * 
+     * @throws SQLException if something went wrong.
+     */
+    protected void createDataTables(boolean deferConstraints) 
+        throws SQLException 
+    {
+        if (deferConstraints) {
+            executeDDL(BenchmarkDDL.CREATE_UPDATES_TABLE_WITHOUT_KEY);
+            executeDDL(BenchmarkDDL.CREATE_HUNDRED_TABLE_WITHOUT_KEY);
+            executeDDL(BenchmarkDDL.CREATE_TEN_PCT_TABLE_WITHOUT_KEY);
+            executeDDL(BenchmarkDDL.CREATE_UNIQUES_TABLE_WITHOUT_KEY);
+            executeDDL(BenchmarkDDL.CREATE_TINY_TABLE_WITHOUT_KEY);
+        } else {
+            executeDDL(BenchmarkDDL.CREATE_UPDATES_TABLE);
+            executeDDL(BenchmarkDDL.CREATE_HUNDRED_TABLE);
+            executeDDL(BenchmarkDDL.CREATE_HUNDRED_FOREIGN_KEY);
+            executeDDL(BenchmarkDDL.CREATE_TEN_PCT_TABLE);
+            executeDDL(BenchmarkDDL.CREATE_UNIQUES_TABLE);
+            executeDDL(BenchmarkDDL.CREATE_TINY_TABLE);
+        }
+        
+        constraintsDeferred = deferConstraints;
+    }
+    
+    /**
+     * Execute DDL statement in a separate transaction. Subclasses can 
+     * override this method to adapt statements to the database.
+     * 
+     * @param sql statement to execute.
+     * 
+     * @throws SQLException if statement could not be executed.
+     */
+    protected void executeDDL(String sql) throws SQLException {
+        manager.executeDDL(sql);
+    }
+    
+    /**
+     * Check if data tables were created without constraints and
+     * {@link #createConstraints()} has not been called yet.
+     * 
+     * @return <code>true</code> if constraints are missing.
+     */
+    public boolean isConstraintsDeferred() {
+        return constraintsDeferred;
+    }
+    
+    /**
+     * Set whether data tables were created without constraints. Used when 
+     * the load continues in the database created by the previous run.
+     * 
+     * @param constraintsDeferred <code>true</code> if constraints must be
+     * created after the load.
+     */
+    public void setConstraintsDeferred(boolean constraintsDeferred) {
+        this.constraintsDeferred = constraintsDeferred;
+    }
+    
+    /**
+     * Create primary keys of the data tables and foreign key of the 
+     * <code>hundred</code> table after the data were loaded.
+     * 
+     * @return time spent building the indices in milliseconds.
+     * 
+     * @throws SQLException if constraint cannot be created, for example
+     * loaded data violate it.
+     */
+    public long createConstraints() throws SQLException {
+        long start = System.currentTimeMillis();
+        
+        executeDDL(BenchmarkDDL.ADD_UPDATES_PRIMARY_KEY);
+        executeDDL(BenchmarkDDL.ADD_HUNDRED_PRIMARY_KEY);
+        executeDDL(BenchmarkDDL.CREATE_HUNDRED_FOREIGN_KEY);
+        executeDDL(BenchmarkDDL.ADD_TEN_PCT_PRIMARY_KEY);
+        executeDDL(BenchmarkDDL.ADD_UNIQUES_PRIMARY_KEY);
+        executeDDL(BenchmarkDDL.ADD_TINY_PRIMARY_KEY);
+        
+        constraintsDeferred = false;
+        
+        return System.currentTimeMillis() - start;
+    }
+    
+    /**
+     * Check that data tables have the same primary and foreign keys as 
+     * tables created by {@link #createDatabase()}.
+     * 
+     * @throws SQLException if some constraint is missing or has different
+     * columns.
+     */
+    public void validateConstraints() throws SQLException {
+        Connection connection = manager.getConnection();
+        try {
+            DatabaseMetaData metaData = connection.getMetaData();
+            
+            checkPrimaryKey(metaData, BenchmarkDDL.UPDATES_TABLE, 
+                new String[] {BenchmarkDDL.KEY_COL});
+            
+            checkPrimaryKey(metaData, BenchmarkDDL.HUNDRED_TABLE, 
+                new String[] {BenchmarkDDL.KEY_COL});
+            
+            checkPrimaryKey(metaData, BenchmarkDDL.TEN_PCT_TABLE, 
+                new String[] {BenchmarkDDL.KEY_COL, BenchmarkDDL.CODE_COL});
+            
+            checkPrimaryKey(metaData, BenchmarkDDL.UNIQUES_TABLE, 
+                new String[] {BenchmarkDDL.KEY_COL});
+            
+            checkPrimaryKey(metaData, BenchmarkDDL.TINY_TABLE, 
+                new String[] {BenchmarkDDL.KEY_COL});
+            
+            checkForeignKey(metaData, BenchmarkDDL.HUNDRED_TABLE, 
+                BenchmarkDDL.SIGNED_COL, BenchmarkDDL.UPDATES_TABLE);
+            
+        } finally {
+            manager.releaseConnection(connection);
+        }
+    }
+    
+    private void checkPrimaryKey(DatabaseMetaData metaData, String table, 
+        String[] columns) throws SQLException 
+    {
+        int count = 0;
+        
+        ResultSet rs = metaData.getPrimaryKeys(null, null, 
+            toMetaDataName(metaData, table));
+        try {
+            while(rs.next()) {
+                int seq = rs.getInt("KEY_SEQ");
+                String column = rs.getString("COLUMN_NAME").trim();
+                
+                if (seq < 1 || seq > columns.length || 
+                    !unquote(columns[seq - 1]).equals(column))
+                {
+                    throw new SQLException("Primary key of " + table + 
+                        " contains unexpected column " + column + ".");
+                }
+                
+                count++;
+            }
+        } finally {
+            rs.close();
+        }
+        
+        if (count != columns.length)
+            throw new SQLException("Primary key of " + table + 
+                " is missing or incomplete.");
+    }
+    
+    private void checkForeignKey(DatabaseMetaData metaData, String table, 
+        String column, String referencedTable) throws SQLException 
+    {
+        ResultSet rs = metaData.getImportedKeys(null, null, 
+            toMetaDataName(metaData, table));
+        try {
+            while(rs.next()) {
+                String fkColumn = rs.getString("FKCOLUMN_NAME").trim();
+                String pkTable = rs.getString("PKTABLE_NAME").trim();
+                
+                if (unquote(column).equals(fkColumn) && 
+                    referencedTable.equalsIgnoreCase(pkTable))
+                    return;
+            }
+        } finally {
+            rs.close();
+        }
+        
+        throw new SQLException("Foreign key of " + table + " referencing " + 
+            referencedTable + " is missing.");
+    }
+    
+    /**
+     * Convert unquoted identifier into the case in which database stores it.
+     */
+    private static String toMetaDataName(DatabaseMetaData metaData, 
+        String name) throws SQLException 
+    {
+        if (name.startsWith("\""))
+            return unquote(name);
+        else
+        if (metaData.storesUpperCaseIdentifiers())
+            return name.toUpperCase();
+        else
+        if (metaData.storesLowerCaseIdentifiers())
+            return name.toLowerCase();
+        else
+            return name;
+    }
+    
+    private static String unquote(String name) {
+        if (name.startsWith("\"") && name.endsWith("\""))
+            return name.substring(1, name.length() - 1);
+        else
+            return name;
+    }
+
     /**
      * Recreate updates table. This method is used to restore updates relation,
      * and drop/create sequence works better than deleting a content from the
@@ -208,92 +427,1408 @@ public abstract class BenchmarkFixture {
     }
 
     /**
-     * Load data in CSV format from the specified file using the specified
-     * insert statement.
-     * 
-     * @param file file from which data should be loaded.
-     * @param insertSql SQL statement that will be used to insert data.
-     * 
+     * Copy content of the <code>updates</code> and <code>hundred</code>
+     * tables into the snapshot tables, so that {@link #restoreSnapshot}
+     * can restore them without reading the data files. Previous snapshot is
+     * replaced.
+     *
+     * @return time spent copying the data in milliseconds.
+     *
      * @throws SQLException if something went wrong.
      */
-    public void loadFile(File file, String insertSql) 
-        throws SQLException, IOException 
-    {
+    public long createSnapshot() throws SQLException {
+        long start = System.currentTimeMillis();
+
         Connection connection = manager.getConnection();
-        connection.setAutoCommit(false);
-        
         try {
-            loadFile(file, connection, insertSql);
+            connection.setAutoCommit(false);
+
+            Statement stmt = connection.createStatement();
+            try {
+                stmt.executeUpdate(
+                    "DELETE FROM " + BenchmarkDDL.SNAPSHOT_HUNDRED_TABLE);
+                stmt.executeUpdate(
+                    "DELETE FROM " + BenchmarkDDL.SNAPSHOT_UPDATES_TABLE);
+
+                stmt.executeUpdate(""
+                    + "INSERT INTO " + BenchmarkDDL.SNAPSHOT_UPDATES_TABLE + " "
+                    + "SELECT * FROM " + BenchmarkDDL.UPDATES_TABLE);
+                stmt.executeUpdate(""
+                    + "INSERT INTO " + BenchmarkDDL.SNAPSHOT_HUNDRED_TABLE + " "
+                    + "SELECT * FROM " + BenchmarkDDL.HUNDRED_TABLE);
+            } finally {
+                stmt.close();
+            }
+
+            setRestored(connection, true);
+
             connection.commit();
+
         } catch(SQLException ex) {
             connection.rollback();
+
+            throw ex;
         } finally {
-            connection.close();
+            manager.releaseConnection(connection);
         }
+
+        return System.currentTimeMillis() - start;
     }
-        
-    public void loadFile(File file, Connection connection, String insertSql)
-        throws SQLException, IOException 
+
+    /**
+     * Check if snapshot of the <code>updates</code> table was created.
+     * Databases created before the snapshot tables were introduced have no
+     * snapshot.
+     *
+     * @return <code>true</code> if snapshot tables exist and are not empty.
+     *
+     * @throws SQLException if something went wrong.
+     */
+    public boolean hasSnapshot() throws SQLException {
+        Connection connection = manager.getConnection();
+        try {
+            if (!tableExists(connection, BenchmarkDDL.SNAPSHOT_UPDATES_TABLE))
+                return false;
+
+            Statement stmt = connection.createStatement();
+            try {
+                ResultSet rs = stmt.executeQuery(""
+                    + "SELECT COUNT(*) FROM "
+                    + BenchmarkDDL.SNAPSHOT_UPDATES_TABLE);
+
+                rs.next();
+                boolean result = rs.getInt(1) > 0;
+                rs.close();
+
+                return result;
+            } finally {
+                stmt.close();
+            }
+        } finally {
+            manager.releaseConnection(connection);
+        }
+    }
+
+    private static boolean tableExists(Connection connection, String table)
+        throws SQLException
+    {
+        DatabaseMetaData metaData = connection.getMetaData();
+
+        ResultSet tables = metaData.getTables(null, null,
+            toMetaDataName(metaData, table), null);
+        try {
+            return tables.next();
+        } finally {
+            tables.close();
+        }
+    }
+
+    /**
+     * Check if <code>updates</code> table was left matching the snapshot,
+     * that is it was restored after the last tracked multi-user test.
+     *
+     * @return <code>true</code> if table is marked as restored,
+     * <code>false</code> if not or if database has no marker table.
+     */
+    private static boolean isRestored(Connection connection)
+        throws SQLException
     {
-        System.out.println("Loading file " + file.getName());
+        if (!tableExists(connection, BenchmarkDDL.SNAPSHOT_STATE_TABLE))
+            return false;
 
-        LineNumberReader in = new LineNumberReader(
-            new InputStreamReader(new FileInputStream(file)));
+        Statement stmt = connection.createStatement();
+        try {
+            ResultSet rs = stmt.executeQuery(
+                "SELECT COUNT(*) FROM " + BenchmarkDDL.SNAPSHOT_STATE_TABLE);
 
+            rs.next();
+            boolean result = rs.getInt(1) > 0;
+            rs.close();
 
-        PreparedStatement stmt = null;
+            return result;
+        } finally {
+            stmt.close();
+        }
+    }
+
+    /**
+     * Mark or unmark <code>updates</code> table as matching the snapshot.
+     * Nothing is done if database has no marker table. Transaction is
+     * controlled by the caller.
+     */
+    private static void setRestored(Connection connection, boolean restored)
+        throws SQLException
+    {
+        if (!tableExists(connection, BenchmarkDDL.SNAPSHOT_STATE_TABLE))
+            return;
 
+        Statement stmt = connection.createStatement();
         try {
-            stmt = connection.prepareStatement(insertSql);
+            stmt.executeUpdate(
+                "DELETE FROM " + BenchmarkDDL.SNAPSHOT_STATE_TABLE);
 
-            int rowCount = 0;
-            String line = null;
-            while((line = in.readLine()) != null) {
-
-                StringTokenizer st = new StringTokenizer(line, ",");
-
-                int counter = 1;
-                while(st.hasMoreTokens()) {
-                    if (counter != 7)
-                        stmt.setString(counter++, st.nextToken());
-                    else {
-                        Date date = new Date(st.nextToken());
-                        Timestamp timestamp = new Timestamp(date.getTime());
-                        stmt.setTimestamp(counter++, timestamp);
-                    }
-                }
-                
-                if (rowCount != 0 && rowCount % 1000 == 0)
-                    System.out.println("Inserted " + rowCount + " rows");
+            if (restored)
+                stmt.executeUpdate("INSERT INTO " +
+                    BenchmarkDDL.SNAPSHOT_STATE_TABLE + " VALUES (1)");
+        } finally {
+            stmt.close();
+        }
+    }
 
-                stmt.execute();
-                rowCount++;
+    /**
+     * Replace content of the <code>updates</code> and <code>hundred</code>
+     * tables with the rows saved by {@link #createSnapshot()}. Transaction
+     * is controlled by the caller.
+     *
+     * @param connection connection in which tables are restored.
+     *
+     * @throws SQLException if something went wrong.
+     */
+    public void restoreSnapshot(Connection connection) throws SQLException {
+        Statement stmt = connection.createStatement();
+        try {
+            // hundred references updates
+            stmt.executeUpdate("DELETE FROM " + BenchmarkDDL.HUNDRED_TABLE);
+            stmt.executeUpdate("DELETE FROM " + BenchmarkDDL.UPDATES_TABLE);
+
+            stmt.executeUpdate(""
+                + "INSERT INTO " + BenchmarkDDL.UPDATES_TABLE + " "
+                + "SELECT * FROM " + BenchmarkDDL.SNAPSHOT_UPDATES_TABLE);
+            stmt.executeUpdate(""
+                + "INSERT INTO " + BenchmarkDDL.HUNDRED_TABLE + " "
+                + "SELECT * FROM " + BenchmarkDDL.SNAPSHOT_HUNDRED_TABLE);
+        } finally {
+            stmt.close();
+        }
+
+        setRestored(connection, true);
+    }
+
+    /**
+     * Get tracker of the modified <code>updates</code> rows.
+     *
+     * @return instance of {@link UpdatesTracker} or <code>null</code> if
+     * {@link #startUpdatesTracking()} was not called.
+     */
+    public synchronized UpdatesTracker getUpdatesTracker() {
+        return updatesTracker;
+    }
+
+    /**
+     * Get latency statistics of the current phase of the multi-user test.
+     *
+     * @return instance of {@link LatencyStatistics} or <code>null</code> if
+     * latencies are not recorded.
+     */
+    public synchronized LatencyStatistics getLatencyStatistics() {
+        return latencyStatistics;
+    }
+
+    /**
+     * Set latency statistics into which tests created from now on record.
+     *
+     * @param latencyStatistics statistics or <code>null</code> to stop
+     * recording.
+     */
+    public synchronized void setLatencyStatistics(
+        LatencyStatistics latencyStatistics)
+    {
+        this.latencyStatistics = latencyStatistics;
+    }
+
+    /**
+     * Start tracking rows of the <code>updates</code> table modified by the
+     * tests. Tracking needs the table to match the snapshot. Snapshot and
+     * delta restores mark the table as restored, the mark is removed here,
+     * so it is missing only when previous run was interrupted before the
+     * restore. Only then both tables are compared and table is restored
+     * from the snapshot if they differ.
+     *
+     * @return tracker shared by all tests.
+     *
+     * @throws SQLException if something went wrong.
+     */
+    public synchronized UpdatesTracker startUpdatesTracking()
+        throws SQLException
+    {
+        Connection connection = manager.getConnection();
+        try {
+            connection.setAutoCommit(false);
+
+            int changedRows = 0;
+            if (!isRestored(connection)) {
+                System.out.println(BenchmarkDDL.UPDATES_TABLE + " was not " +
+                    "restored after the last run, comparing it with the snapshot.");
 
+                changedRows = countChangedRows(connection);
             }
+
+            if (changedRows != 0) {
+                System.out.println(BenchmarkDDL.UPDATES_TABLE + " differs " +
+                    "from the snapshot in " + (changedRows < 0 ?
+                        "added or removed rows" : changedRows + " row(s)") +
+                    ", restoring it from the snapshot.");
+
+                restoreSnapshot(connection);
+            }
+
+            // modifications from now on are restored by the tracker only
+            setRestored(connection, false);
+
+            connection.commit();
+
+        } catch(SQLException ex) {
+            connection.rollback();
+
+            throw ex;
         } finally {
-            if (stmt != null)
-                stmt.close();
+            manager.releaseConnection(connection);
+        }
+
+        if (updatesTracker == null)
+            updatesTracker = new UpdatesTracker();
+        else
+            updatesTracker.clear();
+
+        return updatesTracker;
+    }
+
+    /**
+     * Count rows of the <code>updates</code> table that differ from the
+     * snapshot. Rows are matched by key, missing or extra rows are detected
+     * by the row counts and by the rows whose key is not in the snapshot,
+     * so that deleted row replaced by a row with a new key is found too.
+     * Columns differ also when only one of the values is <code>null</code>.
+     *
+     * @return number of changed rows, or <code>-1</code> if rows were
+     * added or removed.
+     */
+    private int countChangedRows(Connection connection) throws SQLException {
+        StringBuffer changed = new StringBuffer();
+        for (int i = 0; i < BenchmarkDDL.COLUMNS_ARRAY.length; i++) {
+            String column = BenchmarkDDL.COLUMNS_ARRAY[i];
+
+            if (BenchmarkDDL.KEY_COL.equals(column))
+                continue;
+
+            if (changed.length() > 0)
+                changed.append(" OR ");
+
+            String u = "u." + column;
+            String s = "s." + column;
+
+            // portable IS DISTINCT FROM
+            changed.append(u).append(" <> ").append(s)
+                .append(" OR (").append(u).append(" IS NULL AND ")
+                .append(s).append(" IS NOT NULL)")
+                .append(" OR (").append(u).append(" IS NOT NULL AND ")
+                .append(s).append(" IS NULL)");
+        }
+
+        Statement stmt = connection.createStatement();
+        try {
+            ResultSet rs = stmt.executeQuery(
+                "SELECT COUNT(*) FROM " + BenchmarkDDL.UPDATES_TABLE);
+            rs.next();
+            int rowCount = rs.getInt(1);
+            rs.close();
+
+            rs = stmt.executeQuery(
+                "SELECT COUNT(*) FROM " + BenchmarkDDL.SNAPSHOT_UPDATES_TABLE);
+            rs.next();
+            int snapshotRowCount = rs.getInt(1);
+            rs.close();
+
+            if (rowCount != snapshotRowCount)
+                return -1;
+
+            rs = stmt.executeQuery(""
+                + "SELECT COUNT(*) "
+                + "FROM " + BenchmarkDDL.UPDATES_TABLE + " u "
+                + "WHERE NOT EXISTS (SELECT 1 FROM "
+                + BenchmarkDDL.SNAPSHOT_UPDATES_TABLE + " s "
+                + "WHERE s." + BenchmarkDDL.KEY_COL + " = u." + BenchmarkDDL.KEY_COL + ")");
+            rs.next();
+            int newRowCount = rs.getInt(1);
+            rs.close();
+
+            if (newRowCount != 0)
+                return -1;
+
+            rs = stmt.executeQuery(""
+                + "SELECT COUNT(*) "
+                + "FROM " + BenchmarkDDL.UPDATES_TABLE + " u, "
+                + BenchmarkDDL.SNAPSHOT_UPDATES_TABLE + " s "
+                + "WHERE u." + BenchmarkDDL.KEY_COL + " = s." + BenchmarkDDL.KEY_COL + " "
+                + "AND (" + changed + ")");
+
+            rs.next();
+            int result = rs.getInt(1);
+            rs.close();
+
+            return result;
+        } finally {
+            stmt.close();
         }
     }
-    
+
     /**
-     * Convert array of strings into comma-separated string.
-     * 
-     * @param strings strings to convert.
-     * 
-     * @return instance of {@link String} where strings are comma-separated.
+     * Restore rows of the <code>updates</code> table remembered by the
+     * tracker from the snapshot. All columns except the key are copied.
+     * Transaction is controlled by the caller.
+     *
+     * @param connection connection in which rows are restored.
+     * @param tracker tracker of the modified rows.
+     *
+     * @return number of restored rows.
+     *
+     * @throws SQLException if something went wrong.
      */
-    public static String toCSVString(String[] strings) {
-        StringBuffer sb = new StringBuffer();
+    public int restoreDelta(Connection connection, UpdatesTracker tracker)
+        throws SQLException
+    {
+        StringBuffer sql = new StringBuffer();
+        sql.append("UPDATE ").append(BenchmarkDDL.UPDATES_TABLE).append(" SET ");
 
-        for (int i = 0; i < strings.length; i++) {
-            sb.append(strings[i]);
-            if (i < strings.length - 1)
-                sb.append(", ");
+        boolean first = true;
+        for (int i = 0; i < BenchmarkDDL.COLUMNS_ARRAY.length; i++) {
+            String column = BenchmarkDDL.COLUMNS_ARRAY[i];
+
+            if (BenchmarkDDL.KEY_COL.equals(column))
+                continue;
+
+            if (!first)
+                sql.append(", ");
+
+            sql.append(column).append(" = (SELECT s.").append(column)
+                .append(" FROM ").append(BenchmarkDDL.SNAPSHOT_UPDATES_TABLE)
+                .append(" s WHERE s.").append(BenchmarkDDL.KEY_COL)
+                .append(" = ").append(BenchmarkDDL.UPDATES_TABLE).append('.')
+                .append(BenchmarkDDL.KEY_COL).append(')');
+
+            first = false;
         }
 
-        return sb.toString();
+        sql.append(" WHERE ");
+
+        int restoredRows = 0;
+
+        PreparedStatement stmt = connection.prepareStatement(
+            sql + BenchmarkDDL.KEY_COL + " BETWEEN ? AND ?");
+        try {
+            int[][] keyRanges = tracker.getKeyRanges();
+
+            for (int i = 0; i < keyRanges.length; i++) {
+                stmt.setInt(1, keyRanges[i][0]);
+                stmt.setInt(2, keyRanges[i][1]);
+
+                restoredRows += stmt.executeUpdate();
+            }
+        } finally {
+            stmt.close();
+        }
+
+        stmt = connection.prepareStatement(
+            sql + BenchmarkDDL.INT_COL + " BETWEEN ? AND ?");
+        try {
+            int[][] intRanges = tracker.getIntRanges();
+
+            for (int i = 0; i < intRanges.length; i++) {
+                stmt.setInt(1, intRanges[i][0]);
+                stmt.setInt(2, intRanges[i][1]);
+
+                restoredRows += stmt.executeUpdate();
+            }
+        } finally {
+            stmt.close();
+        }
+
+        setRestored(connection, true);
+
+        return restoredRows;
+    }
+
+    /**
+     * Load data in CSV format from the specified file using the specified
+     * insert statement.
+     * 
+     * @param file file from which data should be loaded.
+     * @param insertSql SQL statement that will be used to insert data.
+     * 
+     * @throws SQLException if something went wrong.
+     */
+    public void loadFile(File file, String insertSql) 
+        throws SQLException, IOException 
+    {
+        loadFile(file, insertSql, CONFIGURED_BATCH_SIZE);
+    }
+    
+    /**
+     * Load data in CSV format from the specified file using the specified
+     * insert statement and batch size.
+     * 
+     * @param file file from which data should be loaded.
+     * @param insertSql SQL statement that will be used to insert data.
+     * @param batchSize number of rows sent to the server in one batch, 
+     * <code>1</code> to execute statement for each row or 
+     * {@link #CONFIGURED_BATCH_SIZE} to use configured value.
+     * 
+     * @throws SQLException if something went wrong.
+     */
+    public void loadFile(File file, String insertSql, int batchSize) 
+        throws SQLException, IOException 
+    {
+        Connection connection = manager.getConnection();
+        connection.setAutoCommit(false);
+        
+        try {
+            loadFile(file, connection, insertSql, batchSize);
+            connection.commit();
+        } catch(SQLException ex) {
+            connection.rollback();
+            
+            throw ex;
+        } finally {
+            connection.close();
+        }
+    }
+        
+    public void loadFile(File file, Connection connection, String insertSql)
+        throws SQLException, IOException 
+    {
+        loadFile(file, connection, insertSql, CONFIGURED_BATCH_SIZE);
+    }
+    
+    /**
+     * Load data file using the specified connection. When data generation is
+     * configured, rows generated for the file name are loaded instead, see
+     * {@link #loadGenerated(String, Connection, String, int, int)}. When
+     * only gzip-compressed version of the file exists, it is loaded by
+     * {@link #loadCompressed(File, Connection, String, int, int)}. When 
+     * binary cache is configured, rows are loaded from the cache by
+     * {@link #loadCached(File, Connection, String, int, int)}.
+     * 
+     * @param file file from which data should be loaded.
+     * @param connection connection which is used to load the data.
+     * @param insertSql SQL statement that will be used to insert data.
+     * @param batchSize number of rows sent to the server in one batch.
+     * 
+     * @throws SQLException if something went wrong.
+     */
+    public void loadFile(File file, Connection connection, String insertSql, 
+        int batchSize) throws SQLException, IOException 
+    {
+        if (getConfig().isGenerateData()) {
+            loadGenerated(file.getName(), connection, insertSql, batchSize, 0);
+            return;
+        }
+        
+        File compressed = GzipCsvReader.getCompressedFile(file);
+        
+        if (compressed != null)
+            loadCompressed(compressed, connection, insertSql, batchSize, 0);
+        else
+        if (isCacheUsed(insertSql))
+            loadCached(file, connection, insertSql, batchSize, 0);
+        else
+            loadFile(file, 0, file.length(), connection, insertSql, batchSize, 0);
+    }
+    
+    /**
+     * Check if data file is split into partitions loaded in parallel by
+     * {@link PartitionedLoader}. Generated data and compressed files are
+     * read sequentially and binary cache is loaded as a whole, so only 
+     * data files read directly are split.
+     * 
+     * @param file data file.
+     * @param insertSql SQL statement that will be used to insert data.
+     * 
+     * @return <code>true</code> if more than one partition is configured 
+     * and file can be split.
+     */
+    public boolean isPartitioned(File file, String insertSql) {
+        return getConfig().getLoadPartitions() > 1 && 
+            !getConfig().isGenerateData() &&
+            GzipCsvReader.getCompressedFile(file) == null &&
+            !isCacheUsed(insertSql);
+    }
+    
+    /**
+     * Check if rows for the insert statement can be loaded from the binary
+     * cache. Cache holds typed values, so it is used only with typed 
+     * binding.
+     * 
+     * @param insertSql SQL statement that will be used to insert data.
+     * 
+     * @return <code>true</code> if cache is configured and column types of
+     * the statement are known.
+     */
+    protected boolean isCacheUsed(String insertSql) {
+        return getConfig().isBinaryCache() && getConfig().isTypedBinding() &&
+            BenchmarkInsertSQL.getColumnTypes(insertSql) != null;
+    }
+    
+    /**
+     * Load rows from the binary cache of the data file, see 
+     * {@link BinaryRowCache}. Cache is created when it does not exist or 
+     * data file was changed.
+     * 
+     * @param file data file.
+     * @param connection connection which is used to load the data.
+     * @param insertSql SQL statement that will be used to insert data.
+     * @param batchSize number of rows sent to the server in one batch.
+     * @param commitInterval number of rows after which transaction is 
+     * committed, <code>0</code> to leave transaction control to the caller.
+     * 
+     * @return number of loaded rows.
+     * 
+     * @throws SQLException if something went wrong.
+     */
+    public int loadCached(File file, Connection connection, String insertSql, 
+        int batchSize, int commitInterval) throws SQLException, IOException 
+    {
+        BinaryRowCache cache = BinaryRowCache.open(file, 
+            BenchmarkInsertSQL.getColumnTypes(insertSql));
+        
+        String description = "cached file " + file.getName() + ", " + 
+            cache.getRowCount() + " rows";
+        
+        return loadRows(cache, description, connection, insertSql, 
+            createLoadRow(insertSql, true), batchSize, commitInterval);
+    }
+    
+    /**
+     * Load data file committing the rows every <code>commitInterval</code>
+     * rows and recording the progress in the checkpoint, so that the load
+     * interrupted by an error continues after the last commit. Files loaded
+     * completely before are skipped. Generated data and compressed files
+     * cannot be positioned, so they are loaded in one transaction and the
+     * load fails if checkpoint records rows committed in the middle of them.
+     * When binary cache is used, rows are loaded from the cache and the load
+     * continues after the committed rows.
+     * 
+     * @param file file from which data should be loaded.
+     * @param insertSql SQL statement that will be used to insert data.
+     * @param batchSize number of rows sent to the server in one batch.
+     * @param commitInterval number of rows after which transaction is 
+     * committed, <code>0</code> to commit only at the end of the file.
+     * @param checkpoint progress of the load.
+     * 
+     * @return number of rows in the table after the load.
+     * 
+     * @throws SQLException if something went wrong.
+     */
+    public int loadFile(File file, String insertSql, int batchSize, 
+        int commitInterval, LoadCheckpoint checkpoint) 
+        throws SQLException, IOException 
+    {
+        String name = file.getName();
+        
+        if (checkpoint.isComplete(name)) {
+            System.out.println("Skipping " + name + ", " + 
+                checkpoint.getRowCount(name) + " rows were loaded before.");
+            
+            return checkpoint.getRowCount(name);
+        }
+        
+        Connection connection = manager.getConnection();
+        connection.setAutoCommit(false);
+        
+        try {
+            LoadCheckpoint.Entry entry = checkpoint.resume(name, 
+                countRows(connection, BenchmarkInsertSQL.getTableName(insertSql)));
+            
+            boolean positioned = !getConfig().isGenerateData() &&
+                GzipCsvReader.getCompressedFile(file) == null;
+            boolean cached = positioned && isCacheUsed(insertSql);
+            
+            if (!positioned && entry.getRowCount() > 0)
+                throw new IOException("Checkpoint " + checkpoint + 
+                    " records " + entry.getRowCount() + " committed rows of " + 
+                    name + ", but generated data and compressed files cannot " +
+                    "be resumed. Delete the checkpoint and recreate the database.");
+            
+            if (!cached && entry.getOffset() < 0)
+                throw new IOException("Checkpoint " + checkpoint + 
+                    " records " + entry.getRowCount() + " rows of " + name + 
+                    " loaded from the binary cache, they can be resumed only " +
+                    "from the cache.");
+            
+            if (cached && entry.getRowCount() > 0)
+                System.out.println("Resuming " + name + " from the cache after " + 
+                    entry.getRowCount() + " rows.");
+            else
+            if (entry.getOffset() > 0)
+                System.out.println("Resuming " + name + " at offset " + 
+                    entry.getOffset() + " after " + entry.getRowCount() + 
+                    " rows.");
+            
+            int rowCount;
+            
+            if (getConfig().isGenerateData()) 
+                rowCount = loadGenerated(name, connection, insertSql, 
+                    batchSize, 0);
+            else
+            if (!positioned)
+                rowCount = loadCompressed(GzipCsvReader.getCompressedFile(file), 
+                    connection, insertSql, batchSize, 0);
+            else
+            if (cached) {
+                BinaryRowCache cache = BinaryRowCache.open(file, 
+                    BenchmarkInsertSQL.getColumnTypes(insertSql));
+                cache.skip(entry.getRowCount());
+                
+                String description = "cached file " + name + 
+                    (entry.getRowCount() > 0 ? 
+                        " from row " + entry.getRowCount() : "");
+                
+                rowCount = loadRows(cache, description, connection, insertSql, 
+                    createLoadRow(insertSql, true), batchSize, commitInterval, 
+                    entry);
+            } else {
+                String description = "file " + name + 
+                    (entry.getOffset() > 0 ? 
+                        " from offset " + entry.getOffset() : "");
+                
+                rowCount = loadRows(
+                    new MappedCsvReader(file, entry.getOffset(), file.length()), 
+                    description, connection, insertSql, 
+                    createLoadRow(insertSql), batchSize, commitInterval, entry);
+            }
+            
+            if (cached)
+                entry.prepare(rowCount);
+            else
+                entry.prepare(file.length() - entry.getOffset(), rowCount);
+            
+            connection.commit();
+            entry.commit();
+            
+            entry.complete();
+            
+            return entry.getRowCount() + rowCount;
+            
+        } catch(SQLException ex) {
+            connection.rollback();
+            
+            throw ex;
+        } finally {
+            connection.close();
+        }
+    }
+    
+    /**
+     * Count rows in the table.
+     * 
+     * @param connection connection to use.
+     * @param table name of the table.
+     * 
+     * @return number of rows.
+     * 
+     * @throws SQLException if rows cannot be counted.
+     */
+    protected int countRows(Connection connection, String table) 
+        throws SQLException 
+    {
+        Statement stmt = connection.createStatement();
+        try {
+            ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table);
+            
+            rs.next();
+            int rowCount = rs.getInt(1);
+            rs.close();
+            
+            return rowCount;
+        } finally {
+            stmt.close();
+        }
+    }
+    
+    /**
+     * Load gzip-compressed data file. File is decompressed in a separate 
+     * thread while rows are inserted. Compressed files cannot be split into
+     * partitions.
+     * 
+     * @param file compressed file.
+     * @param connection connection which is used to load the data.
+     * @param insertSql SQL statement that will be used to insert data.
+     * @param batchSize number of rows sent to the server in one batch.
+     * @param commitInterval number of rows after which transaction is 
+     * committed, <code>0</code> to leave transaction control to the caller.
+     * 
+     * @return number of loaded rows.
+     * 
+     * @throws SQLException if something went wrong.
+     */
+    public int loadCompressed(File file, Connection connection, 
+        String insertSql, int batchSize, int commitInterval) 
+        throws SQLException, IOException 
+    {
+        String description = "compressed file " + file.getName() + ", " + 
+            file.length() + " bytes";
+        
+        return loadRows(new GzipCsvReader(file), description, connection, 
+            insertSql, createLoadRow(insertSql), batchSize, commitInterval);
+    }
+    
+    /**
+     * Load part of the data file. Part boundaries must be aligned to the 
+     * line boundaries, i.e. <code>start</code> must point to the beginning of 
+     * the line and <code>end</code> must point right after the line end.
+     * 
+     * @param file file from which data should be loaded.
+     * @param start offset of the first byte to load.
+     * @param end offset after the last byte to load.
+     * @param connection connection which is used to load the data.
+     * @param insertSql SQL statement that will be used to insert data.
+     * @param batchSize number of rows sent to the server in one batch.
+     * @param commitInterval number of rows after which transaction is 
+     * committed, <code>0</code> to leave transaction control to the caller.
+     * 
+     * @return number of loaded rows.
+     * 
+     * @throws SQLException if something went wrong.
+     */
+    public int loadFile(File file, long start, long end, Connection connection, 
+        String insertSql, int batchSize, int commitInterval) 
+        throws SQLException, IOException 
+    {
+        String description = "file " + file.getName() + 
+            (start != 0 || end != file.length() ? 
+                " [" + start + ", " + end + ")" : "");
+
+        RowSource source;
+        if (getConfig().isPipelinedLoad())
+            source = new StreamCsvReader(file, start, end);
+        else
+            source = new MappedCsvReader(file, start, end);
+        
+        return loadRows(source, description, connection, insertSql, 
+            createLoadRow(insertSql), batchSize, commitInterval);
+    }
+    
+    /**
+     * Load rows generated by {@link AsapDataGenerator} for the specified data
+     * file. Generated values are always bound using the column types.
+     * 
+     * @param fileName name of the AS3AP data file, for example 
+     * {@link LoadTest#UPDATES_FILE}.
+     * @param connection connection which is used to load the data.
+     * @param insertSql SQL statement that will be used to insert data.
+     * @param batchSize number of rows sent to the server in one batch.
+     * @param commitInterval number of rows after which transaction is 
+     * committed, <code>0</code> to leave transaction control to the caller.
+     * 
+     * @return number of loaded rows.
+     * 
+     * @throws SQLException if something went wrong.
+     */
+    public int loadGenerated(String fileName, Connection connection, 
+        String insertSql, int batchSize, int commitInterval) 
+        throws SQLException, IOException 
+    {
+        AsapDataGenerator generator = getDataGenerator();
+        
+        String description = "generated " + fileName + ", " + 
+            generator.getRowCount(fileName) + " rows";
+        
+        return loadRows(generator.open(fileName), description, connection, 
+            insertSql, createLoadRow(insertSql, true), batchSize, 
+            commitInterval);
+    }
+    
+    /**
+     * Get generator of the data, it is created when called first time using
+     * configured row count and seed.
+     * 
+     * @return instance of {@link AsapDataGenerator}.
+     */
+    public synchronized AsapDataGenerator getDataGenerator() {
+        if (dataGenerator == null)
+            dataGenerator = new AsapDataGenerator(
+                getConfig().getGeneratorRowCount(), 
+                getConfig().getGeneratorSeed());
+        
+        return dataGenerator;
+    }
+    
+    /**
+     * Get size of the benchmark data. Row count is taken from the generator
+     * when data generation is configured, otherwise rows of the 
+     * <code>updates</code> table are counted when called first time.
+     * 
+     * @return instance of {@link DataScale}.
+     * 
+     * @throws SQLException if rows cannot be counted.
+     */
+    public synchronized DataScale getDataScale() throws SQLException {
+        if (dataScale != null)
+            return dataScale;
+        
+        if (getConfig().isGenerateData()) {
+            dataScale = new DataScale(getConfig().getGeneratorRowCount());
+            return dataScale;
+        }
+        
+        Connection connection = manager.getConnection();
+        try {
+            Statement stmt = connection.createStatement();
+            try {
+                ResultSet rs = stmt.executeQuery(
+                    "SELECT COUNT(*) FROM " + BenchmarkDDL.UPDATES_TABLE);
+                
+                rs.next();
+                int rowCount = rs.getInt(1);
+                rs.close();
+                
+                // table is empty before the data are loaded
+                if (rowCount == 0)
+                    return new DataScale(DataScale.BASE_ROW_COUNT);
+                
+                dataScale = new DataScale(rowCount);
+            } finally {
+                stmt.close();
+            }
+        } finally {
+            manager.releaseConnection(connection);
+        }
+        
+        System.out.println("Data size: " + dataScale + ".");
+        
+        return dataScale;
+    }
+    
+    /**
+     * Get name under which load of the rows is recorded in the metrics.
+     * Compressed and cached files are recorded separately, so they can be 
+     * compared with the raw files.
+     * 
+     * @param source source of the rows.
+     * @param insertSql SQL statement that will be used to insert data.
+     * 
+     * @return name of the table followed by the kind of the source.
+     */
+    protected String getMetricsName(RowSource source, String insertSql) {
+        String table = BenchmarkInsertSQL.getTableName(insertSql);
+        
+        if (source instanceof GzipCsvReader)
+            return table + " (gzip)";
+        else
+        if (source instanceof BinaryRowCache)
+            return table + " (cache)";
+        else
+            return table;
+    }
+    
+    /**
+     * Get throughput statistics of the data loaded by this fixture.
+     * 
+     * @return instance of {@link LoadMetrics}.
+     */
+    public LoadMetrics getLoadMetrics() {
+        return loadMetrics;
+    }
+    
+    /**
+     * Insert all rows from the source. Source is closed when all rows are 
+     * loaded or error happens. Time spent in each phase and progress are 
+     * recorded in {@link #getLoadMetrics()}. When pipelined load is 
+     * configured, rows are parsed by a separate thread, see 
+     * {@link PipelinedRowSource}.
+     * 
+     * @param source source of the rows.
+     * @param description description of the source for the progress output.
+     * @param connection connection which is used to load the data.
+     * @param insertSql SQL statement that will be used to insert data.
+     * @param row buffer for the rows matching the insert statement.
+     * @param batchSize number of rows sent to the server in one batch.
+     * @param commitInterval number of rows after which transaction is 
+     * committed, <code>0</code> to leave transaction control to the caller.
+     * 
+     * @return number of loaded rows.
+     * 
+     * @throws SQLException if something went wrong.
+     */
+    protected int loadRows(RowSource source, String description, 
+        Connection connection, String insertSql, LoadRow row, int batchSize, 
+        int commitInterval) throws SQLException, IOException 
+    {
+        return loadRows(source, description, connection, insertSql, row, 
+            batchSize, commitInterval, null);
+    }
+    
+    /**
+     * Insert all rows from the source recording each commit in the 
+     * checkpoint. Offset of the committed rows is taken from 
+     * {@link RowSource#getBytesRead()}, so rows are not pipelined when 
+     * checkpoint is used.
+     * 
+     * @param source source of the rows.
+     * @param description description of the source for the progress output.
+     * @param connection connection which is used to load the data.
+     * @param insertSql SQL statement that will be used to insert data.
+     * @param row buffer for the rows matching the insert statement.
+     * @param batchSize number of rows sent to the server in one batch.
+     * @param commitInterval number of rows after which transaction is 
+     * committed, <code>0</code> to leave transaction control to the caller.
+     * @param checkpoint progress of the file or <code>null</code> if it 
+     * should not be recorded.
+     * 
+     * @return number of loaded rows.
+     * 
+     * @throws SQLException if something went wrong.
+     */
+    protected int loadRows(RowSource source, String description, 
+        Connection connection, String insertSql, LoadRow row, int batchSize, 
+        int commitInterval, LoadCheckpoint.Entry checkpoint) 
+        throws SQLException, IOException 
+    {
+        PreparedStatement stmt = null;
+        
+        String metricsName = getMetricsName(source, insertSql);
+        
+        if (getConfig().isPipelinedLoad() && checkpoint == null)
+            source = new PipelinedRowSource(source, row, metricsName);
+        
+        LoadMetrics.Counter counter = loadMetrics.createCounter(metricsName);
+
+        PreparedStatement multiRowStmt = null;
+        LoadRow[] multiRows = null;
+        
+        try {
+            if (batchSize == CONFIGURED_BATCH_SIZE)
+                batchSize = getLoadBatchSize();
+            
+            if (batchSize == MULTI_ROW_BATCH_SIZE) {
+                int rowsPerStatement = getConfig().getLoadMultiRowSize();
+                
+                int maxRows = getMaxMultiRowSize(insertSql);
+                if (rowsPerStatement > maxRows) {
+                    System.out.println("Statement can insert at most " + 
+                        maxRows + " rows of " + description + ", " +
+                        "loadMultiRowSize " + rowsPerStatement + " is reduced.");
+                    rowsPerStatement = maxRows;
+                }
+                
+                String multiRowSql = rowsPerStatement > 1 && 
+                    isMultiRowInsertSupported(connection) ? 
+                        getMultiRowInsert(insertSql, rowsPerStatement) : null;
+                
+                if (multiRowSql != null) {
+                    System.out.println("Loading " + description + 
+                        " with " + rowsPerStatement + " rows per statement");
+                    
+                    multiRowStmt = connection.prepareStatement(multiRowSql);
+                    
+                    // values of all rows are bound at once
+                    row.setReuseValues(false);
+                    
+                    multiRows = new LoadRow[rowsPerStatement];
+                    for (int i = 0; i < multiRows.length; i++)
+                        multiRows[i] = new LoadRow(row);
+                    
+                    batchSize = 1;
+                } else {
+                    System.out.println("Multi-row inserts are not supported, " +
+                        "using batch updates.");
+                    batchSize = getConfig().getLoadBatchSize();
+                }
+            }
+            
+            if (batchSize > 1 && !connection.getMetaData().supportsBatchUpdates()) {
+                System.out.println("Driver does not support batch updates, " +
+                        "loading row by row.");
+                batchSize = 1;
+            }
+            
+            if (multiRowStmt == null) {
+                System.out.println("Loading " + description +
+                    (batchSize > 1 ? " in batches of " + batchSize + " rows" : ""));
+            
+                stmt = connection.prepareStatement(insertSql);
+
+                row.setReuseValues(batchSize <= 1);
+            }
+
+            int rowCount = 0;
+            int batchCount = 0;
+            
+            long time = System.nanoTime();
+            long now;
+            
+            while(source.next()) {
+                
+                if (multiRowStmt != null) {
+                    source.read(multiRows[batchCount++]);
+                    
+                    now = System.nanoTime();
+                    counter.addParse(now - time);
+                    time = now;
+                    
+                    if (batchCount == multiRows.length) {
+                        time = insertMultiRow(connection, multiRowStmt, 
+                            insertSql, multiRows, batchCount, counter, time);
+                        batchCount = 0;
+                    }
+                    
+                    rowCount++;
+                    
+                    if (commitInterval > 0 && rowCount % commitInterval == 0) {
+                        if (batchCount > 0) {
+                            time = insertMultiRow(connection, multiRowStmt, 
+                                insertSql, multiRows, batchCount, counter, time);
+                            batchCount = 0;
+                        }
+                        
+                        time = commit(connection, source, rowCount, 
+                            checkpoint, counter, time);
+                    }
+                    
+                    counter.setProgress(rowCount, source.getBytesRead());
+                    continue;
+                }
+
+                source.read(row);
+                
+                now = System.nanoTime();
+                counter.addParse(now - time);
+                time = now;
+                
+                row.bind(stmt, 1);
+                
+                if (batchSize > 1 && rowCount == 0 && !isBatchSupported(stmt))
+                    batchSize = 1;
+
+                if (batchSize > 1) {
+                    stmt.addBatch();
+                    batchCount++;
+                    
+                    now = System.nanoTime();
+                    counter.addBind(now - time);
+                    time = now;
+                    
+                    if (batchCount == batchSize) {
+                        stmt.executeBatch();
+                        batchCount = 0;
+                        
+                        now = System.nanoTime();
+                        counter.addExecute(now - time);
+                        time = now;
+                    }
+                } else {
+                    now = System.nanoTime();
+                    counter.addBind(now - time);
+                    time = now;
+                    
+                    stmt.execute();
+                    
+                    now = System.nanoTime();
+                    counter.addExecute(now - time);
+                    time = now;
+                }
+                
+                rowCount++;
+                
+                if (commitInterval > 0 && rowCount % commitInterval == 0) {
+                    if (batchCount > 0) {
+                        stmt.executeBatch();
+                        batchCount = 0;
+                        
+                        now = System.nanoTime();
+                        counter.addExecute(now - time);
+                        time = now;
+                    }
+                    
+                    time = commit(connection, source, rowCount, checkpoint, 
+                        counter, time);
+                }
+                
+                counter.setProgress(rowCount, source.getBytesRead());
+            }
+            
+            if (batchCount > 0) {
+                if (multiRowStmt != null)
+                    time = insertMultiRow(connection, multiRowStmt, insertSql, 
+                        multiRows, batchCount, counter, time);
+                else
+                    stmt.executeBatch();
+            }
+            
+            now = System.nanoTime();
+            counter.addExecute(now - time);
+            time = now;
+            
+            if (commitInterval > 0)
+                commit(connection, source, rowCount, checkpoint, counter, time);
+            
+            counter.setProgress(rowCount, source.getBytesRead());
+            
+            return rowCount;
+            
+        } finally {
+            counter.finish();
+            
+            try {
+                if (stmt != null)
+                    stmt.close();
+                
+                if (multiRowStmt != null)
+                    multiRowStmt.close();
+            } finally {
+                source.close();
+            }
+        }
+    }
+    
+    /**
+     * Commit the loaded rows recording the progress in the checkpoint.
+     * 
+     * @return time after the commit.
+     */
+    private long commit(Connection connection, RowSource source, int rowCount,
+        LoadCheckpoint.Entry checkpoint, LoadMetrics.Counter counter, 
+        long time) throws SQLException, IOException 
+    {
+        if (checkpoint != null) {
+            // cache is positioned by rows, not by offset in the data file
+            if (source instanceof BinaryRowCache)
+                checkpoint.prepare(rowCount);
+            else
+                checkpoint.prepare(source.getBytesRead(), rowCount);
+        }
+        
+        connection.commit();
+        
+        if (checkpoint != null)
+            checkpoint.commit();
+        
+        long now = System.nanoTime();
+        counter.addCommit(now - time);
+        
+        return now;
+    }
+    
+    /**
+     * Insert rows with one multi-row statement. When there are less rows
+     * than the statement inserts, statement for these rows is prepared.
+     * 
+     * @param connection connection which is used to load the data.
+     * @param stmt statement inserting <code>rows.length</code> rows.
+     * @param insertSql SQL statement inserting one row.
+     * @param rows buffers of the rows.
+     * @param count number of the rows to insert.
+     * @param counter counter of the loader.
+     * @param time time when the last measured phase ended.
+     * 
+     * @return time after the execution.
+     * 
+     * @throws SQLException if rows cannot be inserted.
+     */
+    private long insertMultiRow(Connection connection, PreparedStatement stmt,
+        String insertSql, LoadRow[] rows, int count, 
+        LoadMetrics.Counter counter, long time) throws SQLException 
+    {
+        PreparedStatement partialStmt = null;
+        
+        if (count < rows.length) {
+            partialStmt = connection.prepareStatement(
+                getMultiRowInsert(insertSql, count));
+            stmt = partialStmt;
+        }
+        
+        try {
+            int columnCount = rows[0].getColumnCount();
+            
+            for (int i = 0; i < count; i++)
+                rows[i].bind(stmt, i * columnCount + 1);
+            
+            long now = System.nanoTime();
+            counter.addBind(now - time);
+            time = now;
+            
+            stmt.execute();
+            
+            now = System.nanoTime();
+            counter.addExecute(now - time);
+            
+            return now;
+        } finally {
+            if (partialStmt != null)
+                partialStmt.close();
+        }
+    }
+    
+    /**
+     * Get statement that inserts several rows at once, used when loading 
+     * with {@link #MULTI_ROW_BATCH_SIZE}. Parameters of the first row are
+     * followed by parameters of the second row and so on. Subclasses return
+     * the fastest form supported by the database, this implementation
+     * returns <code>null</code> and data are loaded using batch updates.
+     * 
+     * @param insertSql statement inserting one row, one of the statements 
+     * of {@link BenchmarkInsertSQL}.
+     * @param rowCount number of rows to insert.
+     * 
+     * @return SQL statement or <code>null</code> if database cannot insert
+     * several rows with one statement.
+     */
+    protected String getMultiRowInsert(String insertSql, int rowCount) {
+        return null;
+    }
+    
+    /**
+     * Check if the database server accepts statements returned by
+     * {@link #getMultiRowInsert(String, int)}.
+     * 
+     * @param connection connection to the database.
+     * 
+     * @return <code>true</code> if multi-row inserts can be used, this
+     * implementation returns <code>true</code> always.
+     * 
+     * @throws SQLException if server version cannot be obtained.
+     */
+    protected boolean isMultiRowInsertSupported(Connection connection) 
+        throws SQLException 
+    {
+        return true;
+    }
+    
+    /**
+     * Get maximum number of rows that one statement returned by
+     * {@link #getMultiRowInsert(String, int)} can insert.
+     * 
+     * @param insertSql statement inserting one row.
+     * 
+     * @return number of rows, this implementation returns 
+     * {@link Integer#MAX_VALUE}.
+     */
+    protected int getMaxMultiRowSize(String insertSql) {
+        return Integer.MAX_VALUE;
+    }
+    
+    /**
+     * Create <code>INSERT ... VALUES (...), (...)</code> statement from the
+     * statement inserting one row.
+     * 
+     * @param insertSql statement inserting one row.
+     * @param rowCount number of rows to insert.
+     * 
+     * @return SQL statement.
+     */
+    protected static String createMultiValuesInsert(String insertSql, 
+        int rowCount) 
+    {
+        int valuesEnd = insertSql.lastIndexOf("VALUES") + "VALUES".length();
+        String values = insertSql.substring(valuesEnd).trim();
+        
+        StringBuffer sb = new StringBuffer(insertSql.substring(0, valuesEnd));
+        
+        for (int i = 0; i < rowCount; i++)
+            sb.append(i == 0 ? " " : ", ").append(values);
+        
+        return sb.toString();
+    }
+    
+    /**
+     * Create buffer for the rows inserted by the specified statement. Column
+     * types are taken from {@link BenchmarkInsertSQL}, columns of unknown
+     * statements are bound as strings.
+     * 
+     * @param insertSql SQL statement that will be used to insert data.
+     * 
+     * @return instance of {@link LoadRow}.
+     */
+    protected LoadRow createLoadRow(String insertSql) {
+        return createLoadRow(insertSql, getConfig().isTypedBinding());
+    }
+    
+    /**
+     * Create buffer for the rows inserted by the specified statement.
+     * 
+     * @param insertSql SQL statement that will be used to insert data.
+     * @param typed <code>true</code> if values are bound using the column
+     * types, otherwise they are bound as strings.
+     * 
+     * @return instance of {@link LoadRow}.
+     */
+    protected LoadRow createLoadRow(String insertSql, boolean typed) {
+        int[] types = BenchmarkInsertSQL.getColumnTypes(insertSql);
+        
+        if (types == null) {
+            int paramCount = 0;
+            for (int i = 0; i < insertSql.length(); i++) {
+                if (insertSql.charAt(i) == '?')
+                    paramCount++;
+            }
+            
+            types = new int[paramCount];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = Types.VARCHAR;
+            }
+        }
+        
+        return new LoadRow(types, typed);
+    }
+    
+    /**
+     * Get number of rows that are sent to the server in one batch when
+     * loading the data. 
+     * 
+     * @return configured batch size, <code>1</code> if batch updates are
+     * not used or {@link #MULTI_ROW_BATCH_SIZE} for multi-row inserts.
+     */
+    protected int getLoadBatchSize() {
+        if (getConfig().getLoadMode() == BenchmarkConfiguration.ROW_LOAD_MODE)
+            return 1;
+        
+        if (getConfig().getLoadMode() == BenchmarkConfiguration.MULTI_ROW_LOAD_MODE)
+            return MULTI_ROW_BATCH_SIZE;
+        
+        return getConfig().getLoadBatchSize();
+    }
+    
+    /**
+     * Check if statement can be executed in batch. Some drivers claim batch
+     * update support, but fail when the row is added to the batch, in this
+     * case we fall back to executing statement for each row.
+     * 
+     * @param stmt statement with parameters of the first row.
+     * 
+     * @return <code>true</code> if rows can be added to the batch.
+     */
+    private boolean isBatchSupported(PreparedStatement stmt) {
+        try {
+            stmt.addBatch();
+            stmt.clearBatch();
+            return true;
+        } catch(SQLException ex) {
+            // fall through
+        } catch(AbstractMethodError ex) {
+            // driver does not implement JDBC 2.0 API
+        }
+        
+        System.out.println("Driver failed to add row to the batch, " +
+                "loading row by row.");
+        
+        return false;
+    }
+    
+    /**
+     * Convert array of strings into comma-separated string.
+     * 
+     * @param strings strings to convert.
+     * 
+     * @return instance of {@link String} where strings are comma-separated.
+     */
+    public static String toCSVString(String[] strings) {
+        StringBuffer sb = new StringBuffer();
+
+        for (int i = 0; i < strings.length; i++) {
+            sb.append(strings[i]);
+            if (i < strings.length - 1)
+                sb.append(", ");
+        }
+
+        return sb.toString();
     }
-    
-    
 }
\ No newline at end of file
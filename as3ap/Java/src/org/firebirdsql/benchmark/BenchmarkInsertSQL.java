@@ -19,6 +19,8 @@
 
 package org.firebirdsql.benchmark;
 
+import java.util.HashMap;
+
 /**
  * This class contains all insert statements.
  */
@@ -42,10 +44,7 @@ public class BenchmarkInsertSQL {
     public static final String ADDRESS_COL = BenchmarkDDL.ADDRESS_COL;
     
     private static final String INSERT_COLUMNS_LIST = ""
-        + BenchmarkFixture.toCSVString(new String[]{
-            KEY_COL, INT_COL, SIGNED_COL, FLOAT_COL, DOUBLE_COL,
-            DECIM_COL, DATE_COL, CODE_COL, NAME_COL, ADDRESS_COL
-        })
+        + BenchmarkFixture.toCSVString(BenchmarkDDL.COLUMNS_ARRAY)
         ;
     private static final String INSERT_PARAMS_LIST = ""
         + "?, ?, ?, ?, ?, "
@@ -91,5 +90,47 @@ public class BenchmarkInsertSQL {
         + "?"
         + ")"
         ;
+    
+    private static final HashMap COLUMN_TYPES = new HashMap();
+    static {
+        COLUMN_TYPES.put(INSERT_UNIQUES, BenchmarkDDL.COLUMNS_TYPES);
+        COLUMN_TYPES.put(INSERT_HUNDRED, BenchmarkDDL.COLUMNS_TYPES);
+        COLUMN_TYPES.put(INSERT_TEN_PCT, BenchmarkDDL.COLUMNS_TYPES);
+        COLUMN_TYPES.put(INSERT_UPDATES, BenchmarkDDL.COLUMNS_TYPES);
+        COLUMN_TYPES.put(INSERT_TINY, BenchmarkDDL.TINY_COLUMNS_TYPES);
+    }
+    
+    /**
+     * Get JDBC types of the parameters of the specified insert statement.
+     * 
+     * @param insertSql one of the insert statements defined in this class.
+     * 
+     * @return array of {@link java.sql.Types} constants or <code>null</code>
+     * if statement is not known.
+     */
+    public static int[] getColumnTypes(String insertSql) {
+        return (int[])COLUMN_TYPES.get(insertSql);
+    }
+    
+    /**
+     * Get name of the table filled by the insert statement.
+     * 
+     * @param insertSql insert statement.
+     * 
+     * @return name of the table or the whole statement if it does not start
+     * with <code>INSERT INTO</code>.
+     */
+    public static String getTableName(String insertSql) {
+        String prefix = "INSERT INTO ";
+        
+        if (!insertSql.startsWith(prefix))
+            return insertSql;
+        
+        int end = insertSql.indexOf('(', prefix.length());
+        if (end == -1)
+            end = insertSql.length();
+        
+        return insertSql.substring(prefix.length(), end).trim();
+    }
 
 }
\ No newline at end of file
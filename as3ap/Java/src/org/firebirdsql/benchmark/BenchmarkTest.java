@@ -63,6 +63,18 @@ public class BenchmarkTest extends BenchmarkDDL {
     protected Connection getConnection() {
         return connection;
     }
+    
+    /**
+     * Get size of the benchmark data, used to convert key literals of the
+     * queries.
+     * 
+     * @return instance of {@link DataScale}.
+     * 
+     * @throws SQLException if data size cannot be determined.
+     */
+    protected DataScale getDataScale() throws SQLException {
+        return fixture.getDataScale();
+    }
 
     /**
      * This class can fetch complete result set to the client. 
@@ -0,0 +1,644 @@
+/*
+ * Firebird Open Source AS3AP Benchmark suite
+ *
+ * Distributable under LGPL license.
+ * You may obtain a copy of the License at http://www.gnu.org/copyleft/lgpl.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * LGPL License for more details.
+ *
+ * This file was created by members of the firebird development team.
+ * All individual contributions remain the Copyright (C) of those
+ * individuals.  Contributors to this file are either listed here or
+ * can be obtained from a CVS history command.
+ *
+ * All rights reserved.
+ */
+package org.firebirdsql.benchmark;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.sql.Types;
+import java.util.TimeZone;
+import java.util.zip.CRC32;
+
+/**
+ * Pre-parsed copy of the data file. Values are converted into the column
+ * types once and stored in rows of the fixed size next to the data file,
+ * later loads map the copy and copy the values into {@link LoadRow} without
+ * any text parsing.
+ * <p>
+ * Header of the copy holds length, modification time and CRC32 checksum of
+ * the data file and the time zone in which timestamps were converted. When
+ * length or time zone differ, copy is created anew. When only modification
+ * time differs, checksum is computed again and copy is created anew if the
+ * content changed.
+ * <p>
+ * Each column takes one byte for the <code>null</code> flag followed by
+ * the value: 4 bytes for integers, 8 bytes for big integers, floating point
+ * numbers and timestamps, unscaled value and scale for numerics, and length
+ * followed by the longest value of the file for strings. Strings are stored
+ * byte by byte, as {@link CsvReader} reads them.
+ */
+public class BinaryRowCache implements RowSource {
+
+    /**
+     * Suffix of the cache files.
+     */
+    public static final String SUFFIX = ".bin";
+
+    /**
+     * Maximum size of the mapped region.
+     */
+    public static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * "AS3AP" followed by the format version.
+     */
+    private static final long MAGIC = 0x4153334150000002L;
+
+    /**
+     * Offset of the modification time in the header.
+     */
+    private static final int MODIFIED_OFFSET = 16;
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private File file;
+
+    private FileInputStream in;
+    private FileChannel channel;
+
+    private int[] types;
+    private int[] widths;
+
+    private int headerSize;
+    private int rowCount;
+    private int rowSize;
+
+    private MappedByteBuffer buffer;
+    private int windowStart;
+    private int windowEnd;
+
+    private int firstRow;
+    private int rowIndex = -1;
+    private int rowOffset;
+
+    private char[] chars;
+
+    /**
+     * Open cache of the data file. Use {@link #open(File, int[])} to make
+     * sure that the cache is up to date.
+     *
+     * @param file cache file.
+     * @param types JDBC types of the columns.
+     *
+     * @throws IOException if file cannot be read or does not match the
+     * column types.
+     */
+    public BinaryRowCache(File file, int[] types) throws IOException {
+        this.file = file;
+        this.types = types;
+
+        Header header = readHeader(file);
+
+        if (header == null || !header.matches(types))
+            throw new IOException(file + " is not a cache for these columns.");
+
+        widths = header.widths;
+        headerSize = header.size;
+        rowCount = header.rowCount;
+        rowSize = header.rowSize;
+
+        int maxWidth = 0;
+        for (int i = 0; i < widths.length; i++)
+            maxWidth = Math.max(maxWidth, widths[i]);
+
+        chars = new char[maxWidth];
+
+        in = new FileInputStream(file);
+        channel = in.getChannel();
+
+        if (channel.size() < headerSize + (long)rowCount * rowSize) {
+            close();
+            throw new IOException(file + " is truncated.");
+        }
+    }
+
+    /**
+     * Get cache file of the data file.
+     *
+     * @param source data file.
+     *
+     * @return cache file, it may not exist.
+     */
+    public static File getCacheFile(File source) {
+        return new File(source.getPath() + SUFFIX);
+    }
+
+    /**
+     * Open cache of the data file, creating it when it does not exist or
+     * the data file was changed.
+     *
+     * @param source data file.
+     * @param types JDBC types of the columns.
+     *
+     * @return opened cache.
+     *
+     * @throws IOException if cache cannot be created.
+     */
+    public static BinaryRowCache open(File source, int[] types)
+        throws IOException
+    {
+        File cache = getCacheFile(source);
+
+        if (!isValid(source, cache, types)) {
+            System.out.println("Converting " + source.getName() +
+                " into " + cache.getName() + ".");
+
+            create(source, cache, types);
+        }
+
+        return new BinaryRowCache(cache, types);
+    }
+
+    /**
+     * Check whether the cache was created from the current content of the
+     * data file. If only modification time differs, it is updated in the
+     * cache.
+     */
+    private static boolean isValid(File source, File cache, int[] types)
+        throws IOException
+    {
+        if (!cache.exists())
+            return false;
+
+        Header header = readHeader(cache);
+
+        if (header == null || !header.matches(types) ||
+            header.sourceLength != source.length() ||
+            !header.zoneId.equals(TimeZone.getDefault().getID()))
+        {
+            return false;
+        }
+
+        if (header.sourceModified == source.lastModified())
+            return true;
+
+        if (header.sourceChecksum != checksum(source))
+            return false;
+
+        RandomAccessFile out = new RandomAccessFile(cache, "rw");
+        try {
+            out.seek(MODIFIED_OFFSET);
+            out.writeLong(source.lastModified());
+        } finally {
+            out.close();
+        }
+
+        return true;
+    }
+
+    /**
+     * Compute CRC32 checksum of the file.
+     */
+    private static long checksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] data = new byte[64 * 1024];
+
+        InputStream in = new FileInputStream(file);
+        try {
+            int count;
+            while((count = in.read(data)) != -1)
+                crc.update(data, 0, count);
+        } finally {
+            in.close();
+        }
+
+        return crc.getValue();
+    }
+
+    /**
+     * Header of the cache file.
+     */
+    private static class Header {
+        private long sourceLength;
+        private long sourceModified;
+        private long sourceChecksum;
+
+        private int rowCount;
+        private int rowSize;
+
+        private int[] types;
+        private int[] widths;
+
+        /**
+         * Time zone of the local timestamps.
+         */
+        private String zoneId;
+
+        private int size;
+
+        private boolean matches(int[] columnTypes) {
+            if (columnTypes.length != types.length)
+                return false;
+
+            for (int i = 0; i < types.length; i++) {
+                if (columnTypes[i] != types[i])
+                    return false;
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Read header of the cache file.
+     *
+     * @return header or <code>null</code> if file is not a cache.
+     */
+    private static Header readHeader(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            if (file.length() < getHeaderSize(0) || in.readLong() != MAGIC)
+                return null;
+
+            Header header = new Header();
+
+            header.sourceLength = in.readLong();
+            header.sourceModified = in.readLong();
+            header.sourceChecksum = in.readLong();
+            header.rowCount = in.readInt();
+            header.rowSize = in.readInt();
+
+            int columnCount = in.readInt();
+
+            if (columnCount < 0 ||
+                file.length() < getHeaderSize(columnCount))
+            {
+                return null;
+            }
+
+            header.types = new int[columnCount];
+            header.widths = new int[columnCount];
+
+            for (int i = 0; i < columnCount; i++) {
+                header.types[i] = in.readInt();
+                header.widths[i] = in.readInt();
+            }
+
+            // time zone IDs are ASCII, length is followed by the characters
+            int zoneLength = in.readUnsignedShort();
+            header.size = getHeaderSize(columnCount) + zoneLength;
+
+            if (file.length() < header.size)
+                return null;
+
+            char[] zone = new char[zoneLength];
+            for (int i = 0; i < zoneLength; i++)
+                zone[i] = (char)in.readUnsignedByte();
+
+            header.zoneId = new String(zone);
+
+            return header;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Get size of the header without the characters of the time zone.
+     */
+    private static int getHeaderSize(int columnCount) {
+        return 8 + 3 * 8 + 3 * 4 + columnCount * 2 * 4 + 2;
+    }
+
+    /**
+     * Check if column is stored as string.
+     */
+    private static boolean isString(int type) {
+        switch(type) {
+            case Types.INTEGER :
+            case Types.SMALLINT :
+            case Types.BIGINT :
+            case Types.FLOAT :
+            case Types.REAL :
+            case Types.DOUBLE :
+            case Types.TIMESTAMP :
+            case Types.NUMERIC :
+            case Types.DECIMAL :
+                return false;
+
+            default :
+                return true;
+        }
+    }
+
+    /**
+     * Get size of the column including the <code>null</code> flag.
+     */
+    private static int getWidth(int type, int maxLength) {
+        if (isString(type))
+            return 1 + 2 + maxLength;
+
+        switch(type) {
+            case Types.INTEGER :
+            case Types.SMALLINT :
+                return 1 + 4;
+
+            case Types.BIGINT :
+            case Types.FLOAT :
+            case Types.REAL :
+            case Types.DOUBLE :
+            case Types.TIMESTAMP :
+                return 1 + 8;
+
+            default :
+                // unscaled value and scale of numerics
+                return 1 + 8 + 1;
+        }
+    }
+
+    /**
+     * Convert the data file. First pass finds the longest strings, second
+     * one writes the rows into a temporary file, which replaces the cache
+     * at the end.
+     */
+    private static void create(File source, File cache, int[] types)
+        throws IOException
+    {
+        long sourceModified = source.lastModified();
+        long sourceChecksum = checksum(source);
+
+        int[] maxLengths = new int[types.length];
+        int rowCount = 0;
+
+        CsvReader reader = new MappedCsvReader(source);
+        try {
+            while(reader.next()) {
+                for (int i = 0; i < types.length; i++) {
+                    if (!isString(types[i]) || reader.isNull(i))
+                        continue;
+
+                    maxLengths[i] = Math.max(maxLengths[i],
+                        reader.getString(i).length());
+                }
+
+                rowCount++;
+            }
+        } finally {
+            reader.close();
+        }
+
+        int[] widths = new int[types.length];
+        int rowSize = 0;
+
+        for (int i = 0; i < types.length; i++) {
+            if (maxLengths[i] > Short.MAX_VALUE)
+                throw new IOException("Value of column " + (i + 1) +
+                    " in " + source + " is too long.");
+
+            widths[i] = getWidth(types[i], maxLengths[i]);
+            rowSize += widths[i];
+        }
+
+        File temp = new File(cache.getPath() + TEMP_SUFFIX);
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(temp), 64 * 1024));
+        try {
+            out.writeLong(MAGIC);
+            out.writeLong(source.length());
+            out.writeLong(sourceModified);
+            out.writeLong(sourceChecksum);
+            out.writeInt(rowCount);
+            out.writeInt(rowSize);
+
+            out.writeInt(types.length);
+            for (int i = 0; i < types.length; i++) {
+                out.writeInt(types[i]);
+                out.writeInt(widths[i]);
+            }
+
+            String zoneId = TimeZone.getDefault().getID();
+            out.writeShort(zoneId.length());
+            out.writeBytes(zoneId);
+
+            reader = new MappedCsvReader(source);
+            try {
+                while(reader.next())
+                    writeRow(out, reader, types, widths);
+            } finally {
+                reader.close();
+            }
+        } finally {
+            out.close();
+        }
+
+        if (cache.exists() && !cache.delete())
+            throw new IOException("Cannot replace " + cache + ".");
+
+        if (!temp.renameTo(cache))
+            throw new IOException("Cannot rename " + temp + " to " + cache + ".");
+    }
+
+    private static void writeRow(DataOutputStream out, CsvReader reader,
+        int[] types, int[] widths) throws IOException
+    {
+        for (int i = 0; i < types.length; i++) {
+            if (reader.isNull(i)) {
+                out.writeByte(1);
+
+                for (int j = 1; j < widths[i]; j++)
+                    out.writeByte(0);
+
+                continue;
+            }
+
+            out.writeByte(0);
+
+            switch(types[i]) {
+                case Types.INTEGER :
+                case Types.SMALLINT :
+                    out.writeInt(reader.getInt(i));
+                    break;
+
+                case Types.BIGINT :
+                    out.writeLong(reader.getLong(i));
+                    break;
+
+                case Types.FLOAT :
+                case Types.REAL :
+                case Types.DOUBLE :
+                    out.writeDouble(reader.getDouble(i));
+                    break;
+
+                case Types.NUMERIC :
+                case Types.DECIMAL :
+                    BigDecimal value = reader.getBigDecimal(i);
+                    BigInteger unscaled = value.unscaledValue();
+
+                    if (unscaled.bitLength() > 63 || value.scale() < 0 ||
+                        value.scale() > Byte.MAX_VALUE)
+                    {
+                        throw new IOException("Numeric value " + value +
+                            " cannot be cached.");
+                    }
+
+                    out.writeLong(unscaled.longValue());
+                    out.writeByte(value.scale());
+                    break;
+
+                case Types.TIMESTAMP :
+                    out.writeLong(reader.getDate(i));
+                    break;
+
+                default :
+                    String str = reader.getString(i);
+
+                    out.writeShort(str.length());
+
+                    // strings are read byte by byte
+                    out.writeBytes(str);
+
+                    for (int j = 1 + 2 + str.length(); j < widths[i]; j++)
+                        out.writeByte(0);
+            }
+        }
+    }
+
+    /**
+     * Map window of the rows starting at the specified row.
+     */
+    private void map(int firstRow) throws IOException {
+        int rows = Math.max(1, WINDOW_SIZE / rowSize);
+        rows = Math.min(rows, rowCount - firstRow);
+
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+            headerSize + (long)firstRow * rowSize, (long)rows * rowSize);
+
+        windowStart = firstRow;
+        windowEnd = firstRow + rows;
+    }
+
+    public boolean next() throws IOException {
+        if (rowIndex + 1 >= rowCount)
+            return false;
+
+        rowIndex++;
+
+        if (buffer == null || rowIndex >= windowEnd)
+            map(rowIndex);
+
+        rowOffset = (rowIndex - windowStart) * rowSize;
+
+        return true;
+    }
+
+    public void read(LoadRow row) {
+        int offset = rowOffset;
+
+        for (int i = 0; i < types.length; i++) {
+            int valueOffset = offset + 1;
+
+            if (buffer.get(offset) != 0) {
+                row.setNull(i);
+                offset += widths[i];
+                continue;
+            }
+
+            switch(types[i]) {
+                case Types.INTEGER :
+                case Types.SMALLINT :
+                    row.setLong(i, buffer.getInt(valueOffset));
+                    break;
+
+                case Types.BIGINT :
+                    row.setLong(i, buffer.getLong(valueOffset));
+                    break;
+
+                case Types.FLOAT :
+                case Types.REAL :
+                case Types.DOUBLE :
+                    row.setDouble(i, buffer.getDouble(valueOffset));
+                    break;
+
+                case Types.NUMERIC :
+                case Types.DECIMAL :
+                    row.setObject(i, BigDecimal.valueOf(
+                        buffer.getLong(valueOffset), buffer.get(valueOffset + 8)));
+                    break;
+
+                case Types.TIMESTAMP :
+                    row.setTimestamp(i, buffer.getLong(valueOffset));
+                    break;
+
+                default :
+                    int length = buffer.getShort(valueOffset);
+
+                    for (int j = 0; j < length; j++)
+                        chars[j] = (char)(buffer.get(valueOffset + 2 + j) & 0xff);
+
+                    row.setObject(i, new String(chars, 0, length));
+            }
+
+            offset += widths[i];
+        }
+    }
+
+    /**
+     * Get number of rows in the cache.
+     *
+     * @return number of rows.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Skip rows at the beginning of the cache. Must be called before the
+     * first {@link #next()}.
+     *
+     * @param rows number of rows to skip.
+     */
+    public void skip(int rows) {
+        firstRow = Math.min(rows, rowCount);
+        rowIndex = firstRow - 1;
+    }
+
+    public long getBytesRead() {
+        return (long)(rowIndex + 1 - firstRow) * rowSize;
+    }
+
+    /**
+     * Close this cache.
+     *
+     * @throws IOException if file cannot be closed.
+     */
+    public void close() throws IOException {
+        buffer = null;
+
+        try {
+            channel.close();
+        } finally {
+            in.close();
+        }
+    }
+
+    public String toString() {
+        return file.getPath();
+    }
+}
@@ -0,0 +1,352 @@
+/*
+ * Firebird Open Source AS3AP Benchmark suite
+ *
+ * Distributable under LGPL license.
+ * You may obtain a copy of the License at http://www.gnu.org/copyleft/lgpl.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * LGPL License for more details.
+ *
+ * This file was created by members of the firebird development team.
+ * All individual contributions remain the Copyright (C) of those
+ * individuals.  Contributors to this file are either listed here or
+ * can be obtained from a CVS history command.
+ *
+ * All rights reserved.
+ */
+package org.firebirdsql.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.util.StringTokenizer;
+
+/**
+ * Measures parsing throughput of the data files without database access.
+ * Old {@link LineNumberReader} and {@link StringTokenizer} path is compared
+ * with the {@link MappedCsvReader} producing strings, producing typed values
+ * through {@link LoadRow} and only locating the fields. When gzip-compressed
+ * version of the file exists, it is parsed by {@link GzipCsvReader} too.
+ * Reading of the same rows from {@link BinaryRowCache} shows the cost of
+ * the text parsing itself.
+ * <p>
+ * Usage: <code>CsvParseBenchmark [iterations] [file...]</code>, when no files
+ * are specified, AS3AP files from configured data path are used.
+ */
+public class CsvParseBenchmark {
+
+    private static final String[] DATA_FILES = new String[] {
+        LoadTest.UPDATES_FILE, LoadTest.HUNDRED_FILE, LoadTest.TEN_PCS_FILE,
+        LoadTest.UNIQUES_FILE, LoadTest.TINY_FILE
+    };
+
+    /**
+     * Sink for the parsed values, prevents JIT from removing parsing code.
+     */
+    private long checksum;
+
+    /**
+     * Parse file using {@link StringTokenizer}, as loader did before.
+     *
+     * @param file file to parse.
+     *
+     * @return number of parsed fields.
+     */
+    public long parseTokenizer(File file) throws IOException {
+        LineNumberReader in = new LineNumberReader(
+            new InputStreamReader(new FileInputStream(file)));
+
+        long fieldCount = 0;
+        try {
+            String line;
+            while((line = in.readLine()) != null) {
+                StringTokenizer st = new StringTokenizer(line, ",");
+
+                while(st.hasMoreTokens()) {
+                    checksum += st.nextToken().length();
+                    fieldCount++;
+                }
+            }
+        } finally {
+            in.close();
+        }
+
+        return fieldCount;
+    }
+
+    /**
+     * Parse file using {@link MappedCsvReader} converting each field into
+     * {@link String}, like loader does.
+     *
+     * @param file file to parse.
+     *
+     * @return number of parsed fields.
+     */
+    public long parseMappedStrings(File file) throws IOException {
+        MappedCsvReader in = new MappedCsvReader(file);
+
+        long fieldCount = 0;
+        try {
+            while(in.next()) {
+                for (int i = 0; i < in.getFieldCount(); i++) {
+                    String value = in.getString(i);
+
+                    if (value != null)
+                        checksum += value.length();
+
+                    fieldCount++;
+                }
+            }
+        } finally {
+            in.close();
+        }
+
+        return fieldCount;
+    }
+
+    /**
+     * Only locate the fields using {@link MappedCsvReader}.
+     *
+     * @param file file to parse.
+     *
+     * @return number of parsed fields.
+     */
+    public long parseMappedScan(File file) throws IOException {
+        MappedCsvReader in = new MappedCsvReader(file);
+
+        long fieldCount = 0;
+        try {
+            while(in.next()) {
+                fieldCount += in.getFieldCount();
+            }
+        } finally {
+            in.close();
+        }
+
+        return fieldCount;
+    }
+
+    /**
+     * Parse file using {@link MappedCsvReader} converting each field into
+     * the column type using {@link LoadRow}, like loader does.
+     *
+     * @param file file to parse.
+     *
+     * @return number of parsed fields.
+     */
+    public long parseMappedTyped(File file) throws IOException {
+        return parseTyped(new MappedCsvReader(file), file.getName());
+    }
+
+    /**
+     * Parse compressed file using {@link GzipCsvReader} converting each
+     * field into the column type using {@link LoadRow}, like loader does.
+     *
+     * @param file compressed file to parse.
+     *
+     * @return number of parsed fields.
+     */
+    public long parseGzipTyped(File file) throws IOException {
+        String name = file.getName();
+
+        return parseTyped(new GzipCsvReader(file),
+            name.substring(0, name.length() - GzipCsvReader.SUFFIX.length()));
+    }
+
+    /**
+     * Read rows of the file from its binary cache into {@link LoadRow},
+     * like loader does. Cache is created if needed.
+     *
+     * @param file data file.
+     *
+     * @return number of read fields.
+     */
+    public long parseCached(File file) throws IOException {
+        return parseTyped(BinaryRowCache.open(file,
+            getColumnTypes(file.getName())), file.getName());
+    }
+
+    private static int[] getColumnTypes(String fileName) {
+        return LoadTest.TINY_FILE.equals(fileName) ?
+            BenchmarkDDL.TINY_COLUMNS_TYPES : BenchmarkDDL.COLUMNS_TYPES;
+    }
+
+    private long parseTyped(RowSource in, String fileName) throws IOException {
+        LoadRow row = new LoadRow(getColumnTypes(fileName), true);
+
+        long fieldCount = 0;
+        try {
+            while(in.next()) {
+                in.read(row);
+                fieldCount += row.getColumnCount();
+            }
+        } finally {
+            in.close();
+        }
+
+        return fieldCount;
+    }
+
+    private void run(File file, int iterations) throws IOException {
+        File compressed = GzipCsvReader.getCompressedFile(file);
+        if (compressed == file) {
+            runCompressed(file, iterations);
+            return;
+        }
+
+        double megabytes = file.length() / (1024.0 * 1024.0);
+
+        System.out.println(file.getName() + ", " + file.length() + " bytes:");
+
+        // convert the file before the measurements
+        BinaryRowCache.open(file, getColumnTypes(file.getName())).close();
+
+        for (int mode = 0; mode < 5; mode++) {
+            long bestTime = Long.MAX_VALUE;
+            long fieldCount = 0;
+
+            for (int i = 0; i < iterations; i++) {
+                long start = System.currentTimeMillis();
+
+                switch(mode) {
+                    case 0 :
+                        fieldCount = parseTokenizer(file);
+                        break;
+
+                    case 1 :
+                        fieldCount = parseMappedStrings(file);
+                        break;
+
+                    case 2 :
+                        fieldCount = parseMappedTyped(file);
+                        break;
+
+                    case 3 :
+                        fieldCount = parseMappedScan(file);
+                        break;
+
+                    default :
+                        fieldCount = parseCached(file);
+                }
+
+                long time = System.currentTimeMillis() - start;
+                if (time < bestTime)
+                    bestTime = time;
+            }
+
+            String name;
+            switch(mode) {
+                case 0 :
+                    name = "tokenizer";
+                    break;
+
+                case 1 :
+                    name = "mapped (strings)";
+                    break;
+
+                case 2 :
+                    name = "mapped (typed)";
+                    break;
+
+                case 3 :
+                    name = "mapped (scan only)";
+                    break;
+
+                default :
+                    name = "binary cache (typed)";
+            }
+
+            System.out.println("    " + name + " - " + fieldCount +
+                " fields, best of " + iterations + " in " + bestTime +
+                " ms, " + formatThroughput(megabytes, bestTime) + " MB/s.");
+        }
+
+        compressed = new File(file.getPath() + GzipCsvReader.SUFFIX);
+        if (compressed.exists())
+            runCompressed(compressed, iterations);
+    }
+
+    private void runCompressed(File file, int iterations) throws IOException {
+        double megabytes = file.length() / (1024.0 * 1024.0);
+
+        long bestTime = Long.MAX_VALUE;
+        long fieldCount = 0;
+
+        for (int i = 0; i < iterations; i++) {
+            long start = System.currentTimeMillis();
+
+            fieldCount = parseGzipTyped(file);
+
+            long time = System.currentTimeMillis() - start;
+            if (time < bestTime)
+                bestTime = time;
+        }
+
+        System.out.println(file.getName() + ", " + file.length() + " bytes:");
+        System.out.println("    gzip (typed) - " + fieldCount +
+            " fields, best of " + iterations + " in " + bestTime +
+            " ms, " + formatThroughput(megabytes, bestTime) +
+            " compressed MB/s.");
+    }
+
+    private static String formatThroughput(double megabytes, long time) {
+        if (time == 0)
+            return "n/a";
+
+        long tenths = Math.round(megabytes * 1000 * 10 / time);
+
+        return (tenths / 10) + "." + (tenths % 10);
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args number of iterations followed by the files to parse.
+     */
+    public static void main(String[] args) throws Exception {
+        int iterations = 5;
+        int firstFile = 0;
+
+        if (args.length > 0) {
+            try {
+                iterations = Integer.parseInt(args[0]);
+                firstFile = 1;
+            } catch(NumberFormatException ex) {
+                // first argument is a file name
+            }
+        }
+
+        File[] files;
+        if (args.length > firstFile) {
+            files = new File[args.length - firstFile];
+            for (int i = 0; i < files.length; i++) {
+                files[i] = new File(args[firstFile + i]);
+            }
+        } else {
+            File dataPath = new File(
+                BenchmarkConfiguration.getConfiguration().getDataPath());
+
+            files = new File[DATA_FILES.length];
+            for (int i = 0; i < files.length; i++) {
+                files[i] = new File(dataPath, DATA_FILES[i]);
+
+                // only compressed version may exist
+                File compressed = GzipCsvReader.getCompressedFile(files[i]);
+                if (compressed != null)
+                    files[i] = compressed;
+            }
+        }
+
+        CsvParseBenchmark benchmark = new CsvParseBenchmark();
+
+        for (int i = 0; i < files.length; i++) {
+            benchmark.run(files[i], iterations);
+        }
+
+        System.out.println("Checksum " + benchmark.checksum);
+    }
+}
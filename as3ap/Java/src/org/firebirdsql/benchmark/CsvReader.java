@@ -0,0 +1,442 @@
+/*
+ * Firebird Open Source AS3AP Benchmark suite
+ *
+ * Distributable under LGPL license.
+ * You may obtain a copy of the License at http://www.gnu.org/copyleft/lgpl.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * LGPL License for more details.
+ *
+ * This file was created by members of the firebird development team.
+ * All individual contributions remain the Copyright (C) of those
+ * individuals.  Contributors to this file are either listed here or
+ * can be obtained from a CVS history command.
+ *
+ * All rights reserved.
+ */
+package org.firebirdsql.benchmark;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+
+/**
+ * Base class of the readers of the comma-separated data files. Fields are
+ * located directly in the {@link ByteBuffer} provided by the subclass, so no
+ * objects are created unless field is requested as {@link String} or
+ * {@link BigDecimal}. Subclass supplies more data when the buffer is
+ * exhausted by {@link #fill()}.
+ * <p>
+ * Empty fields are reported as <code>null</code> values. Instances of this
+ * class are not thread-safe.
+ */
+public abstract class CsvReader implements RowSource {
+
+    private static final byte SEPARATOR = ',';
+
+    private static final double[] POWERS_OF_TEN = new double[] {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    /**
+     * Buffer with the data, filled by the subclass.
+     */
+    protected ByteBuffer buffer;
+
+    /**
+     * Number of valid bytes in the buffer.
+     */
+    protected int bufferLimit;
+
+    /**
+     * Offset of the first byte of the buffer not processed yet.
+     */
+    protected int position;
+
+    private int fieldCount;
+    private int[] fieldStart = new int[16];
+    private int[] fieldEnd = new int[16];
+
+    private byte[] bytes = new byte[128];
+    private char[] chars = new char[128];
+
+    /**
+     * Make more data available. Bytes starting at {@link #position} must be
+     * kept, they belong to the line which is not complete yet. When 
+     * <code>true</code> is returned, buffer must contain at least one more
+     * byte after them, when <code>false</code> is returned, buffer must not 
+     * be changed.
+     *
+     * @return <code>false</code> if there are no more data.
+     *
+     * @throws IOException if data cannot be read.
+     */
+    protected abstract boolean fill() throws IOException;
+
+    /**
+     * Move to the next line.
+     *
+     * @return <code>true</code> if line was read, <code>false</code> if end
+     * of data is reached.
+     *
+     * @throws IOException if data cannot be read.
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            if (position >= bufferLimit && !fill())
+                return false;
+
+            int lineStart = position;
+            int fieldBegin = position;
+            int lineEnd = -1;
+
+            fieldCount = 0;
+
+            // locate line end and field separators in one pass
+            for (int i = lineStart; i < bufferLimit; i++) {
+                byte b = buffer.get(i);
+
+                if (b == SEPARATOR) {
+                    addField(fieldBegin, i);
+                    fieldBegin = i + 1;
+                } else
+                if (b == '\n') {
+                    lineEnd = i;
+                    break;
+                }
+            }
+
+            if (lineEnd == -1) {
+                position = lineStart;
+
+                // line is not complete, scan it again with more data
+                if (fill())
+                    continue;
+
+                // last line without line terminator
+                lineEnd = bufferLimit;
+                position = bufferLimit;
+            } else
+                position = lineEnd + 1;
+
+            if (lineEnd > fieldBegin && buffer.get(lineEnd - 1) == '\r')
+                lineEnd--;
+
+            // skip empty lines
+            if (lineEnd == lineStart)
+                continue;
+
+            addField(fieldBegin, lineEnd);
+
+            return true;
+        }
+    }
+
+    private void addField(int start, int end) {
+        if (fieldCount == fieldStart.length) {
+            int[] newStart = new int[fieldCount * 2];
+            int[] newEnd = new int[fieldCount * 2];
+
+            System.arraycopy(fieldStart, 0, newStart, 0, fieldCount);
+            System.arraycopy(fieldEnd, 0, newEnd, 0, fieldCount);
+
+            fieldStart = newStart;
+            fieldEnd = newEnd;
+        }
+
+        fieldStart[fieldCount] = start;
+        fieldEnd[fieldCount] = end;
+        fieldCount++;
+    }
+
+    /**
+     * Read current line into the row buffer.
+     *
+     * @param row buffer to fill.
+     */
+    public void read(LoadRow row) {
+        row.read(this);
+    }
+
+    /**
+     * Get number of fields in the current line.
+     *
+     * @return number of fields.
+     */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Check if field is empty.
+     *
+     * @param index index of the field, first field has index 0.
+     *
+     * @return <code>true</code> if field is empty or does not exist.
+     */
+    public boolean isNull(int index) {
+        return index >= fieldCount || fieldStart[index] == fieldEnd[index];
+    }
+
+    /**
+     * Get field value as string.
+     *
+     * @param index index of the field, first field has index 0.
+     *
+     * @return field value or <code>null</code> if field is empty.
+     */
+    public String getString(int index) {
+        if (isNull(index))
+            return null;
+
+        int start = fieldStart[index];
+        int length = fieldEnd[index] - start;
+
+        if (length > chars.length)
+            chars = new char[length];
+
+        // data files contain only ASCII characters, decode as ISO-8859-1
+        for (int i = 0; i < length; i++)
+            chars[i] = (char)(buffer.get(start + i) & 0xff);
+
+        return new String(chars, 0, length);
+    }
+
+    /**
+     * Get field value as <code>int</code>.
+     *
+     * @param index index of the field, first field has index 0.
+     *
+     * @return field value, <code>0</code> if field is empty.
+     *
+     * @throws NumberFormatException if field is not an integer number.
+     */
+    public int getInt(int index) {
+        long value = getLong(index);
+
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+            throw new NumberFormatException(
+                "Value " + value + " is out of int range.");
+
+        return (int)value;
+    }
+
+    /**
+     * Get field value as <code>long</code>.
+     *
+     * @param index index of the field, first field has index 0.
+     *
+     * @return field value, <code>0</code> if field is empty.
+     *
+     * @throws NumberFormatException if field is not an integer number.
+     */
+    public long getLong(int index) {
+        if (isNull(index))
+            return 0;
+
+        int i = fieldStart[index];
+        int end = fieldEnd[index];
+
+        boolean negative = false;
+        byte b = buffer.get(i);
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            i++;
+        }
+
+        if (i == end)
+            throw new NumberFormatException(getString(index));
+
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = buffer.get(i) - '0';
+
+            if (digit < 0 || digit > 9)
+                throw new NumberFormatException(getString(index));
+
+            value = value * 10 + digit;
+        }
+
+        return negative ? -value : value;
+    }
+
+    /**
+     * Get field value as <code>double</code>. Values with up to 15
+     * significant digits are converted without creating any objects, other
+     * values are converted using {@link Double#parseDouble(String)}.
+     *
+     * @param index index of the field, first field has index 0.
+     *
+     * @return field value, <code>0</code> if field is empty.
+     *
+     * @throws NumberFormatException if field is not a number.
+     */
+    public double getDouble(int index) {
+        if (isNull(index))
+            return 0;
+
+        int i = fieldStart[index];
+        int end = fieldEnd[index];
+
+        boolean negative = false;
+        byte b = buffer.get(i);
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        boolean exact = true;
+        boolean hasDigits = false;
+
+        for (; i < end; i++) {
+            b = buffer.get(i);
+
+            if (b >= '0' && b <= '9') {
+                if (mantissa >= MAX_EXACT_MANTISSA / 10) {
+                    exact = false;
+                    break;
+                }
+
+                mantissa = mantissa * 10 + (b - '0');
+                hasDigits = true;
+
+                if (mantissa != 0)
+                    digits++;
+
+                if (fraction)
+                    scale++;
+            } else
+            if (b == '.' && !fraction)
+                fraction = true;
+            else
+                break;
+        }
+
+        if (exact && i < end) {
+            b = buffer.get(i);
+
+            if (b == 'e' || b == 'E') {
+                int exponent = 0;
+                boolean negativeExponent = false;
+
+                i++;
+                if (i < end) {
+                    b = buffer.get(i);
+                    if (b == '-' || b == '+') {
+                        negativeExponent = b == '-';
+                        i++;
+                    }
+                }
+
+                int exponentStart = i;
+                for (; i < end && exponent < 1000; i++) {
+                    int digit = buffer.get(i) - '0';
+
+                    if (digit < 0 || digit > 9)
+                        break;
+
+                    exponent = exponent * 10 + digit;
+                }
+
+                if (i == exponentStart)
+                    exact = false;
+
+                scale += negativeExponent ? exponent : -exponent;
+            } else
+                exact = false;
+        }
+
+        if (exact && hasDigits && digits <= 15 && scale > -POWERS_OF_TEN.length &&
+            scale < POWERS_OF_TEN.length)
+        {
+            double value = scale >= 0 ?
+                mantissa / POWERS_OF_TEN[scale] :
+                mantissa * POWERS_OF_TEN[-scale];
+
+            return negative ? -value : value;
+        }
+
+        return Double.parseDouble(getString(index));
+    }
+
+    /**
+     * Get field value as date, see {@link AsapDateParser} for supported
+     * formats.
+     *
+     * @param index index of the field, first field has index 0.
+     *
+     * @return milliseconds of the local midnight, <code>0</code> if field
+     * is empty.
+     *
+     * @throws IllegalArgumentException if field is not a valid date.
+     */
+    public long getDate(int index) {
+        if (isNull(index))
+            return 0;
+
+        int start = fieldStart[index];
+        int length = fieldEnd[index] - start;
+
+        if (length > bytes.length)
+            bytes = new byte[length];
+
+        buffer.position(start);
+        buffer.get(bytes, 0, length);
+
+        return AsapDateParser.parse(bytes, 0, length);
+    }
+
+    /**
+     * Get field value as {@link BigDecimal}.
+     *
+     * @param index index of the field, first field has index 0.
+     *
+     * @return field value or <code>null</code> if field is empty.
+     *
+     * @throws NumberFormatException if field is not a number.
+     */
+    public BigDecimal getBigDecimal(int index) {
+        if (isNull(index))
+            return null;
+
+        int i = fieldStart[index];
+        int end = fieldEnd[index];
+
+        boolean negative = false;
+        byte b = buffer.get(i);
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            i++;
+        }
+
+        long unscaled = 0;
+        int scale = 0;
+        boolean fraction = false;
+
+        for (; i < end; i++) {
+            b = buffer.get(i);
+
+            if (b >= '0' && b <= '9' && unscaled < Long.MAX_VALUE / 10 - 10) {
+                unscaled = unscaled * 10 + (b - '0');
+
+                if (fraction)
+                    scale++;
+            } else
+            if (b == '.' && !fraction)
+                fraction = true;
+            else
+                return new BigDecimal(getString(index));
+        }
+
+        return BigDecimal.valueOf(negative ? -unscaled : unscaled, scale);
+    }
+}
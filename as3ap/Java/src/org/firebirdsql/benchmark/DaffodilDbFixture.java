@@ -47,6 +47,17 @@ public class DaffodilDbFixture extends BenchmarkFixture {
     public void createDatabase() throws SQLException {
         super.createDatabase();
     }
+    
+    /**
+     * Get statement inserting several rows. DaffodilDB has no multi-row 
+     * insert, JDBC batch updates are its fastest bulk form.
+     * 
+     * @return <code>null</code> always.
+     */
+    protected String getMultiRowInsert(String insertSql, int rowCount) {
+        return null;
+    }
+    
     /* (non-Javadoc)
      * @see org.firebirdsql.benchmark.BenchmarkFixture#createDatabaseManager()
      */
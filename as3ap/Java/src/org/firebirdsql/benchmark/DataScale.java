@@ -0,0 +1,127 @@
+/*
+ * Firebird Open Source AS3AP Benchmark suite
+ *
+ * Distributable under LGPL license.
+ * You may obtain a copy of the License at http://www.gnu.org/copyleft/lgpl.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * LGPL License for more details.
+ *
+ * This file was created by members of the firebird development team.
+ * All individual contributions remain the Copyright (C) of those
+ * individuals.  Contributors to this file are either listed here or
+ * can be obtained from a CVS history command.
+ *
+ * All rights reserved.
+ */
+package org.firebirdsql.benchmark;
+
+/**
+ * Size of the benchmark data. Key literals of the queries were chosen for
+ * the 40 MB data set with {@link #BASE_ROW_COUNT} rows in each table, this
+ * class converts them for the actual number of rows, so that queries touch
+ * the same fraction of the data at any scale. For the base data set all
+ * values stay unchanged.
+ */
+public class DataScale {
+
+    /**
+     * Number of rows in <code>uniques</code>, <code>hundred</code>,
+     * <code>tenpct</code> and <code>updates</code> tables of the 40 MB data
+     * set.
+     */
+    public static final int BASE_ROW_COUNT = 100 * 1000;
+
+    private int rowCount;
+
+    /**
+     * Create instance of this class.
+     *
+     * @param rowCount number of rows in the data tables.
+     */
+    public DataScale(int rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * Get number of rows in the data tables.
+     *
+     * @return number of rows.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Get size of the data relative to the 40 MB data set.
+     *
+     * @return scale factor.
+     */
+    public double getScaleFactor() {
+        return (double)rowCount / BASE_ROW_COUNT;
+    }
+
+    /**
+     * Convert key value chosen for the 40 MB data set. Both single keys and
+     * bounds of the key ranges are converted, so the range selects the same
+     * fraction of rows.
+     *
+     * @param baseKey key value for the 40 MB data set.
+     *
+     * @return key value for the actual data, at least <code>1</code> if
+     * <code>baseKey</code> is positive.
+     */
+    public int scale(int baseKey) {
+        long key = (long)baseKey * rowCount / BASE_ROW_COUNT;
+
+        if (baseKey > 0 && key < 1)
+            key = 1;
+
+        return key > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int)key;
+    }
+
+    /**
+     * Get range condition for the key range chosen for the 40 MB data set,
+     * <code>BETWEEN low AND high</code>. Range is converted as
+     * <code>(baseLow - 1, baseHigh]</code>, so that adjacent ranges do not
+     * overlap.
+     *
+     * @param baseLow lower bound of the range.
+     * @param baseHigh upper bound of the range.
+     *
+     * @return SQL condition without the column name.
+     */
+    public String between(int baseLow, int baseHigh) {
+        return "BETWEEN " + lowerBound(baseLow) + " AND " + 
+            upperBound(baseLow, baseHigh);
+    }
+
+    /**
+     * Get lower bound of the range used by {@link #between(int, int)}.
+     *
+     * @param baseLow lower bound of the range.
+     *
+     * @return converted lower bound.
+     */
+    public int lowerBound(int baseLow) {
+        return scale(baseLow - 1) + 1;
+    }
+
+    /**
+     * Get upper bound of the range used by {@link #between(int, int)}.
+     *
+     * @param baseLow lower bound of the range.
+     * @param baseHigh upper bound of the range.
+     *
+     * @return converted upper bound, never less than the lower bound.
+     */
+    public int upperBound(int baseLow, int baseHigh) {
+        return Math.max(lowerBound(baseLow), scale(baseHigh));
+    }
+
+    public String toString() {
+        return rowCount + " rows, scale factor " + getScaleFactor();
+    }
+}
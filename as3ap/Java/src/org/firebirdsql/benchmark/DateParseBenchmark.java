@@ -0,0 +1,285 @@
+/*
+ * Firebird Open Source AS3AP Benchmark suite
+ *
+ * Distributable under LGPL license.
+ * You may obtain a copy of the License at http://www.gnu.org/copyleft/lgpl.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * LGPL License for more details.
+ *
+ * This file was created by members of the firebird development team.
+ * All individual contributions remain the Copyright (C) of those
+ * individuals.  Contributors to this file are either listed here or
+ * can be obtained from a CVS history command.
+ *
+ * All rights reserved.
+ */
+package org.firebirdsql.benchmark;
+
+import java.sql.Timestamp;
+import java.util.Date;
+
+/**
+ * Compares {@link AsapDateParser} with the deprecated
+ * {@link Date#Date(String)} constructor used by the loader before. Dates
+ * between 1900 and 2000 in <code>10-nov-1985</code> format are parsed, the
+ * only AS3AP format that both parsers understand, and the results are
+ * checked to be equal.
+ * <p>
+ * Usage: <code>DateParseBenchmark [iterations] [threads]</code>, when more
+ * than one thread is specified, parser is also run concurrently to check
+ * that it is thread-safe.
+ */
+public class DateParseBenchmark {
+
+    private static final String[] MONTHS = new String[] {
+        "jan", "feb", "mar", "apr", "may", "jun",
+        "jul", "aug", "sep", "oct", "nov", "dec"
+    };
+
+    private static final int[] DAYS_IN_MONTH = new int[] {
+        31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31
+    };
+
+    private String[] dates;
+    private byte[][] dateBytes;
+
+    /**
+     * Sink for the parsed values, prevents JIT from removing parsing code.
+     */
+    private long checksum;
+
+    private DateParseBenchmark() {
+        StringBuffer sb = new StringBuffer();
+
+        int count = 0;
+        String[] all = new String[101 * 366];
+
+        for (int year = 1900; year <= 2000; year++) {
+            boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+
+            for (int month = 0; month < 12; month++) {
+                int days = DAYS_IN_MONTH[month] + (month == 1 && leap ? 1 : 0);
+
+                for (int day = 1; day <= days; day++) {
+                    sb.setLength(0);
+                    sb.append(day).append('-').append(MONTHS[month])
+                        .append('-').append(year);
+
+                    all[count++] = sb.toString();
+                }
+            }
+        }
+
+        dates = new String[count];
+        dateBytes = new byte[count][];
+
+        for (int i = 0; i < count; i++) {
+            dates[i] = all[i];
+            dateBytes[i] = new byte[dates[i].length()];
+            for (int j = 0; j < dateBytes[i].length; j++)
+                dateBytes[i][j] = (byte)dates[i].charAt(j);
+        }
+    }
+
+    /**
+     * Check that both parsers return the same values.
+     *
+     * @return number of dates for which values differ.
+     */
+    private int verify() {
+        int mismatches = 0;
+
+        for (int i = 0; i < dates.length; i++) {
+            long expected = parseDate(dates[i]).getTime();
+            long actual = AsapDateParser.parse(dateBytes[i], 0, dateBytes[i].length);
+
+            if (expected != actual) {
+                if (mismatches < 10)
+                    System.out.println("Mismatch for " + dates[i] + ": " +
+                        expected + " != " + actual);
+
+                mismatches++;
+            }
+        }
+
+        return mismatches;
+    }
+
+    /**
+     * Parse date with the deprecated {@link Date#Date(String)} that the load
+     * used before {@link AsapDateParser}, the reference of this benchmark.
+     */
+    @SuppressWarnings("deprecation")
+    private static Date parseDate(String value) {
+        return new Date(value);
+    }
+
+    private long runDateConstructor() {
+        long start = System.currentTimeMillis();
+
+        for (int i = 0; i < dates.length; i++) {
+            Date date = parseDate(dates[i]);
+            Timestamp timestamp = new Timestamp(date.getTime());
+
+            checksum += timestamp.getTime();
+        }
+
+        return System.currentTimeMillis() - start;
+    }
+
+    private long runParserString(Timestamp timestamp) {
+        long start = System.currentTimeMillis();
+
+        for (int i = 0; i < dates.length; i++) {
+            timestamp.setTime(AsapDateParser.parse(dates[i]));
+
+            checksum += timestamp.getTime();
+        }
+
+        return System.currentTimeMillis() - start;
+    }
+
+    private long runParserBytes(Timestamp timestamp) {
+        long start = System.currentTimeMillis();
+
+        for (int i = 0; i < dates.length; i++) {
+            byte[] bytes = dateBytes[i];
+            timestamp.setTime(AsapDateParser.parse(bytes, 0, bytes.length));
+
+            checksum += timestamp.getTime();
+        }
+
+        return System.currentTimeMillis() - start;
+    }
+
+    private void run(int iterations) {
+        Timestamp timestamp = new Timestamp(0);
+
+        for (int mode = 0; mode < 3; mode++) {
+            long bestTime = Long.MAX_VALUE;
+
+            for (int i = 0; i < iterations; i++) {
+                long time;
+
+                switch(mode) {
+                    case 0 :
+                        time = runDateConstructor();
+                        break;
+
+                    case 1 :
+                        time = runParserString(timestamp);
+                        break;
+
+                    default :
+                        time = runParserBytes(timestamp);
+                }
+
+                if (time < bestTime)
+                    bestTime = time;
+            }
+
+            String name;
+            switch(mode) {
+                case 0 :
+                    name = "new Date(String)";
+                    break;
+
+                case 1 :
+                    name = "AsapDateParser (String)";
+                    break;
+
+                default :
+                    name = "AsapDateParser (bytes)";
+            }
+
+            System.out.println("    " + name + " - " + dates.length +
+                " dates, best of " + iterations + " in " + bestTime + " ms, " +
+                (bestTime > 0 ? dates.length * 1000L / bestTime + " dates/sec." : "n/a."));
+        }
+    }
+
+    /**
+     * Parse all dates concurrently in several threads and compare results
+     * with the values computed by {@link Date#Date(String)}.
+     *
+     * @return number of mismatches.
+     */
+    private int runConcurrently(int threadCount) throws InterruptedException {
+        final long[] expected = new long[dates.length];
+        for (int i = 0; i < dates.length; i++) {
+            expected[i] = parseDate(dates[i]).getTime();
+        }
+
+        final int[] mismatches = new int[threadCount];
+
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            final int number = t;
+
+            threads[t] = new Thread("parser-" + t) {
+                public void run() {
+                    for (int i = 0; i < dates.length; i++) {
+                        int index = (i + number * 1000) % dates.length;
+                        byte[] bytes = dateBytes[index];
+
+                        if (AsapDateParser.parse(bytes, 0, bytes.length) != expected[index])
+                            mismatches[number]++;
+                    }
+                }
+            };
+        }
+
+        long start = System.currentTimeMillis();
+
+        for (int t = 0; t < threadCount; t++) {
+            threads[t].start();
+        }
+
+        for (int t = 0; t < threadCount; t++) {
+            threads[t].join();
+        }
+
+        long time = System.currentTimeMillis() - start;
+
+        int result = 0;
+        for (int t = 0; t < threadCount; t++) {
+            result += mismatches[t];
+        }
+
+        System.out.println("    " + threadCount + " threads - " +
+            (dates.length * threadCount) + " dates in " + time + " ms, " +
+            result + " mismatch(es).");
+
+        return result;
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args number of iterations and number of threads.
+     */
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+
+        DateParseBenchmark benchmark = new DateParseBenchmark();
+
+        System.out.println("Date parsing:");
+
+        int mismatches = benchmark.verify();
+        System.out.println("    " + mismatches + " mismatch(es) with new Date(String).");
+
+        benchmark.run(iterations);
+
+        if (threads > 1)
+            mismatches += benchmark.runConcurrently(threads);
+
+        System.out.println("Checksum " + benchmark.checksum);
+
+        if (mismatches > 0)
+            System.exit(1);
+    }
+}
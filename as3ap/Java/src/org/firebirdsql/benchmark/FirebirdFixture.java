@@ -19,7 +19,9 @@
 package org.firebirdsql.benchmark;
 
 import java.io.File;
+import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Types;
 
 import org.firebirdsql.jdbc.FBSQLException;
 import org.firebirdsql.management.FBManager;
@@ -31,6 +33,16 @@ import org.firebirdsql.management.FBManager;
  */
 public class FirebirdFixture extends BenchmarkFixture {
     
+    /**
+     * Longest statement text accepted by Firebird before 3.0.
+     */
+    private static final int MAX_STATEMENT_LENGTH = 64 * 1024 - 1;
+    
+    /**
+     * Largest input message, sum of the parameter sizes.
+     */
+    private static final int MAX_MESSAGE_LENGTH = 64 * 1024 - 1;
+    
     /**
      * Create instance of this class for the specified benchmark database
      * manager and path to the data files.
@@ -71,6 +83,159 @@ public class FirebirdFixture extends BenchmarkFixture {
         super.setUp(createDatabase);
     }
 
+    /**
+     * Get statement inserting several rows. Firebird has no multi-row 
+     * <code>VALUES</code> list, so rows are passed as parameters of 
+     * <code>EXECUTE BLOCK</code> which executes insert statement for each 
+     * of them on the server.
+     * 
+     * @param insertSql statement inserting one row.
+     * @param rowCount number of rows to insert.
+     * 
+     * @return <code>EXECUTE BLOCK</code> statement or <code>null</code> if
+     * column types of the statement are not known.
+     */
+    protected String getMultiRowInsert(String insertSql, int rowCount) {
+        int[] types = BenchmarkInsertSQL.getColumnTypes(insertSql);
+        
+        if (types == null)
+            return null;
+        
+        StringBuffer params = new StringBuffer();
+        StringBuffer body = new StringBuffer();
+        
+        for (int i = 0; i < rowCount; i++) {
+            int column = 0;
+            
+            for (int j = 0; j < insertSql.length(); j++) {
+                char ch = insertSql.charAt(j);
+                
+                if (ch != '?') {
+                    body.append(ch);
+                    continue;
+                }
+                
+                String name = "p" + i + "_" + column;
+                
+                if (params.length() > 0)
+                    params.append(", ");
+                
+                params.append(name).append(' ')
+                    .append(getParameterType(types[column])).append(" = ?");
+                
+                body.append(':').append(name);
+                
+                column++;
+            }
+            
+            body.append(";\n");
+        }
+        
+        return "EXECUTE BLOCK (" + params + ") AS BEGIN\n" + body + "END";
+    }
+    
+    /**
+     * Check if server supports <code>EXECUTE BLOCK</code>, which was added
+     * in Firebird 2.0.
+     */
+    protected boolean isMultiRowInsertSupported(Connection connection) 
+        throws SQLException 
+    {
+        return connection.getMetaData().getDatabaseMajorVersion() >= 2;
+    }
+    
+    /**
+     * Get maximum number of rows of the <code>EXECUTE BLOCK</code> statement
+     * whose text and parameters fit into the 64 KB limits of Firebird.
+     */
+    protected int getMaxMultiRowSize(String insertSql) {
+        int[] types = BenchmarkInsertSQL.getColumnTypes(insertSql);
+        
+        if (types == null)
+            return super.getMaxMultiRowSize(insertSql);
+        
+        int rowMessageLength = 0;
+        for (int i = 0; i < types.length; i++)
+            rowMessageLength += getParameterLength(types[i]);
+        
+        int max = Math.max(1, MAX_MESSAGE_LENGTH / rowMessageLength);
+        
+        // text grows with the number of digits in parameter names
+        int min = 1;
+        while (min < max) {
+            int rows = (min + max + 1) / 2;
+            
+            if (getMultiRowInsert(insertSql, rows).length() <= MAX_STATEMENT_LENGTH)
+                min = rows;
+            else
+                max = rows - 1;
+        }
+        
+        return min;
+    }
+    
+    /**
+     * Get number of bytes that the parameter takes in the message, 
+     * including the <code>null</code> indicator and the alignment.
+     */
+    private static int getParameterLength(int type) {
+        switch(type) {
+            case Types.SMALLINT :
+                return 2 + 2;
+            
+            case Types.INTEGER :
+            case Types.FLOAT :
+            case Types.REAL :
+                return 4 + 2 + 2;
+            
+            case Types.BIGINT :
+            case Types.DOUBLE :
+            case Types.NUMERIC :
+            case Types.DECIMAL :
+            case Types.TIMESTAMP :
+                return 8 + 2 + 6;
+            
+            default :
+                // VARCHAR(80) with length, single-byte character set
+                return 2 + 80 + 2 + 4;
+        }
+    }
+    
+    /**
+     * Get type of the <code>EXECUTE BLOCK</code> parameter for the column
+     * of the AS3AP table.
+     */
+    private static String getParameterType(int type) {
+        switch(type) {
+            case Types.INTEGER :
+                return "INTEGER";
+            
+            case Types.SMALLINT :
+                return "SMALLINT";
+            
+            case Types.BIGINT :
+                return "BIGINT";
+            
+            case Types.FLOAT :
+            case Types.REAL :
+                return "FLOAT";
+            
+            case Types.DOUBLE :
+                return "DOUBLE PRECISION";
+            
+            case Types.NUMERIC :
+            case Types.DECIMAL :
+                return "NUMERIC(18,2)";
+            
+            case Types.TIMESTAMP :
+                return "TIMESTAMP";
+            
+            default :
+                // longest string column of the AS3AP tables
+                return "VARCHAR(80)";
+        }
+    }
+    
     /**
      * Create instance of {@link BenchmarkDatabaseManager} that will provide
      * access to the database. 
@@ -0,0 +1,122 @@
+/*
+ * Firebird Open Source AS3AP Benchmark suite
+ *
+ * Distributable under LGPL license.
+ * You may obtain a copy of the License at http://www.gnu.org/copyleft/lgpl.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * LGPL License for more details.
+ *
+ * This file was created by members of the firebird development team.
+ * All individual contributions remain the Copyright (C) of those
+ * individuals.  Contributors to this file are either listed here or
+ * can be obtained from a CVS history command.
+ *
+ * All rights reserved.
+ */
+package org.firebirdsql.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reader of the gzip-compressed data files. File is decompressed by the
+ * reading thread of {@link StreamCsvReader}, so decompression overlaps with
+ * parsing and inserting and memory use does not depend on the file size.
+ */
+public class GzipCsvReader extends StreamCsvReader {
+
+    /**
+     * Suffix of the compressed data files.
+     */
+    public static final String SUFFIX = ".gz";
+
+    /**
+     * Stream counting the compressed bytes read from the file.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private volatile long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        public int read() throws IOException {
+            int result = super.read();
+
+            if (result != -1)
+                count++;
+
+            return result;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = super.read(b, off, len);
+
+            if (result > 0)
+                count += result;
+
+            return result;
+        }
+    }
+
+    private CountingInputStream compressed;
+
+    /**
+     * Create reader for the compressed file and start decompression.
+     *
+     * @param file file to read.
+     *
+     * @throws IOException if file cannot be opened.
+     */
+    public GzipCsvReader(File file) throws IOException {
+        this(file, new CountingInputStream(new FileInputStream(file)));
+    }
+
+    private GzipCsvReader(File file, CountingInputStream compressed)
+        throws IOException
+    {
+        super(new GZIPInputStream(compressed, 64 * 1024),
+            Long.MAX_VALUE, file.getName());
+
+        this.compressed = compressed;
+    }
+
+    /**
+     * Get number of compressed bytes read from the file so far. Decompression
+     * runs ahead of the parser by up to {@link #CHUNK_COUNT} chunks.
+     *
+     * @return number of bytes.
+     */
+    public long getBytesRead() {
+        return compressed.count;
+    }
+
+    /**
+     * Get compressed version of the data file. Compressed file is used only
+     * when the file itself does not exist.
+     *
+     * @param file data file, either compressed or not.
+     *
+     * @return compressed file or <code>null</code> if file is not
+     * compressed.
+     */
+    public static File getCompressedFile(File file) {
+        if (file.getName().endsWith(SUFFIX))
+            return file;
+
+        if (file.exists())
+            return null;
+
+        File compressed = new File(file.getPath() + SUFFIX);
+
+        return compressed.exists() ? compressed : null;
+    }
+}
@@ -19,6 +19,7 @@
 package org.firebirdsql.benchmark;
 
 import java.io.File;
+import java.sql.Connection;
 import java.sql.SQLException;
 
 /**
@@ -43,12 +44,7 @@ public class HSQLDBFixture extends BenchmarkFixture {
      */
     public void createDatabase() throws SQLException {
         
-        executeDDL(BenchmarkDDL.CREATE_UPDATES_TABLE);
-        executeDDL(BenchmarkDDL.CREATE_HUNDRED_TABLE);
-        executeDDL(BenchmarkDDL.CREATE_HUNDRED_FOREIGN_KEY);
-        executeDDL(BenchmarkDDL.CREATE_TEN_PCT_TABLE);
-        executeDDL(BenchmarkDDL.CREATE_UNIQUES_TABLE);
-        executeDDL(BenchmarkDDL.CREATE_TINY_TABLE);
+        createDataTables(getConfig().isDeferConstraints());
         
         executeDDL(BenchmarkDDL.CREATE_TINY_OUTPUT);
         executeDDL(BenchmarkDDL.CREATE_UPDATES_OUTPUT);
@@ -56,6 +52,9 @@ public class HSQLDBFixture extends BenchmarkFixture {
         
         executeDDL(BenchmarkDDL.CREATE_SAVE_UPDATES_TABLE);
         
+        executeDDL(BenchmarkDDL.CREATE_SNAPSHOT_UPDATES_TABLE);
+        executeDDL(BenchmarkDDL.CREATE_SNAPSHOT_HUNDRED_TABLE);
+        
         executeDDL(BenchmarkDDL.CREATE_SEL_100_SEQ_TABLE);
         executeDDL(BenchmarkDDL.CREATE_SEL_100_RND_TABLE);
     }
@@ -69,7 +68,7 @@ public class HSQLDBFixture extends BenchmarkFixture {
      * 
      * @throws SQLException if SQL error occured during execution.
      */
-    private void executeDDL(String statement) throws SQLException {
+    protected void executeDDL(String statement) throws SQLException {
         String createTableStr = "CREATE TABLE";
         int createTableIndex = statement.indexOf(createTableStr);
         
@@ -86,6 +85,29 @@ public class HSQLDBFixture extends BenchmarkFixture {
         getManager().executeDDL(newStatement);
     }
 
+    /**
+     * Get statement inserting several rows. HSQLDB 2.x accepts multi-row
+     * <code>VALUES</code> list.
+     * 
+     * @param insertSql statement inserting one row.
+     * @param rowCount number of rows to insert.
+     * 
+     * @return <code>INSERT ... VALUES (...), (...)</code> statement.
+     */
+    protected String getMultiRowInsert(String insertSql, int rowCount) {
+        return createMultiValuesInsert(insertSql, rowCount);
+    }
+
+    /**
+     * Check if server accepts multi-row <code>VALUES</code> list, which
+     * HSQLDB supports since version 2.0.
+     */
+    protected boolean isMultiRowInsertSupported(Connection connection) 
+        throws SQLException 
+    {
+        return connection.getMetaData().getDatabaseMajorVersion() >= 2;
+    }
+
     /**
      * Shutdown this database.
      */
@@ -87,7 +87,7 @@ public class JoinTest extends BenchmarkTest {
             + "WHERE "
             + UNIQUES_KEY_COL + " = " + HUNDRED_KEY_COL + " "
             + "AND "
-            + UNIQUES_KEY_COL + " = 1000"
+            + UNIQUES_KEY_COL + " = " + getDataScale().scale(1000)
         );
 
         f.fetchResultSet(rs);
@@ -155,7 +155,7 @@ public class JoinTest extends BenchmarkTest {
             + "AND "
             + UNIQUES_KEY_COL + " = " + TEN_PCT_KEY_COL + " "
             + "AND "
-            + UNIQUES_KEY_COL + " = 1000"
+            + UNIQUES_KEY_COL + " = " + getDataScale().scale(1000)
         );
 
         f.fetchResultSet(rs);
@@ -208,7 +208,7 @@ public class JoinTest extends BenchmarkTest {
             + "AND "
             + UNIQUES_KEY_COL + " = " + UPDATES_KEY_COL + " "
             + "AND "
-            + UNIQUES_KEY_COL + " = 1000"
+            + UNIQUES_KEY_COL + " = " + getDataScale().scale(1000)
         );
 
         f.fetchResultSet(rs);
@@ -0,0 +1,234 @@
+/*
+ * Firebird Open Source AS3AP Benchmark suite
+ *
+ * Distributable under LGPL license.
+ * You may obtain a copy of the License at http://www.gnu.org/copyleft/lgpl.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * LGPL License for more details.
+ *
+ * This file was created by members of the firebird development team.
+ * All individual contributions remain the Copyright (C) of those
+ * individuals.  Contributors to this file are either listed here or
+ * can be obtained from a CVS history command.
+ *
+ * All rights reserved.
+ */
+package org.firebirdsql.benchmark;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of the latencies in microseconds. Buckets are log-linear: values
+ * below {@link #SUB_BUCKET_COUNT} have own bucket, larger values share a
+ * bucket with values that differ only in the bits below the highest
+ * {@link #SUB_BUCKET_BITS} bits, so relative error of any value is below
+ * 1%. Values above {@link #MAX_VALUE} are counted as that value.
+ * <p>
+ * Recording does not lock and does not allocate, each user records into its
+ * own histogram and histograms are added together at the end of the test.
+ */
+public class LatencyHistogram {
+
+    public static final int SUB_BUCKET_BITS = 8;
+    public static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+
+    /**
+     * Largest value with own bucket, about 19 hours.
+     */
+    public static final long MAX_VALUE = (1L << 36) - 1;
+
+    private static final int BUCKET_COUNT = getIndex(MAX_VALUE) + 1;
+
+    private AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private AtomicLong totalCount = new AtomicLong();
+    private AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * Get bucket of the value.
+     *
+     * @param value non-negative value not greater than {@link #MAX_VALUE}.
+     *
+     * @return index of the bucket.
+     */
+    private static int getIndex(long value) {
+        if (value < SUB_BUCKET_COUNT)
+            return (int)value;
+
+        // shift that leaves the highest SUB_BUCKET_BITS bits of the value
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF +
+            (int)(value >>> shift) - SUB_BUCKET_HALF;
+    }
+
+    /**
+     * Get the highest value counted in the bucket.
+     *
+     * @param index index of the bucket.
+     *
+     * @return value.
+     */
+    private static long getHighestValue(int index) {
+        if (index < SUB_BUCKET_COUNT)
+            return index;
+
+        int offset = index - SUB_BUCKET_COUNT;
+        int shift = offset / SUB_BUCKET_HALF + 1;
+        long subBucket = offset % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Record the value.
+     *
+     * @param value latency in microseconds.
+     */
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        else
+        if (value > MAX_VALUE)
+            value = MAX_VALUE;
+
+        counts.incrementAndGet(getIndex(value));
+        totalCount.incrementAndGet();
+
+        long max = maxValue.get();
+        while (value > max && !maxValue.compareAndSet(max, value))
+            max = maxValue.get();
+    }
+
+    /**
+     * Record the value and correct the coordinated omission. When the
+     * operation took longer than the expected interval between the
+     * operations, operations that would be started in the meantime are
+     * recorded too, each with latency shorter by the interval.
+     *
+     * @param value latency in microseconds.
+     * @param expectedInterval expected interval between the operations in
+     * microseconds, <code>0</code> records the value only.
+     */
+    public void recordCorrected(long value, long expectedInterval) {
+        record(value);
+
+        if (expectedInterval <= 0)
+            return;
+
+        for (long missing = value - expectedInterval;
+            missing >= expectedInterval; missing -= expectedInterval)
+        {
+            record(missing);
+        }
+    }
+
+    /**
+     * Add values recorded by the other histogram.
+     *
+     * @param other histogram to add.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = other.counts.get(i);
+
+            if (count != 0)
+                counts.addAndGet(i, count);
+        }
+
+        totalCount.addAndGet(other.totalCount.get());
+
+        long otherMax = other.maxValue.get();
+        long max = maxValue.get();
+        while (otherMax > max && !maxValue.compareAndSet(max, otherMax))
+            max = maxValue.get();
+    }
+
+    /**
+     * Get values recorded since the earlier copy of this histogram was
+     * taken, used to get latencies of one interval from the cumulative
+     * histogram. Maximum is the highest value of the highest non-empty
+     * bucket. Total count is the sum of the buckets, so that it matches
+     * the percentiles even when values are recorded during the call.
+     *
+     * @param previous earlier copy, for example merged histogram from the
+     * previous interval.
+     *
+     * @return new histogram with the difference.
+     */
+    public LatencyHistogram getDifference(LatencyHistogram previous) {
+        LatencyHistogram result = new LatencyHistogram();
+
+        long max = 0;
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = counts.get(i) - previous.counts.get(i);
+
+            if (count > 0) {
+                result.counts.set(i, count);
+                total += count;
+                max = getHighestValue(i);
+            }
+        }
+
+        result.totalCount.set(total);
+        result.maxValue.set(Math.min(max, getMaxValue()));
+
+        return result;
+    }
+
+    public long getTotalCount() {
+        return totalCount.get();
+    }
+
+    public long getMaxValue() {
+        return maxValue.get();
+    }
+
+    /**
+     * Get value below which the specified percentage of the recorded values
+     * lies.
+     *
+     * @param percentile percentile, for example <code>99.9</code>.
+     *
+     * @return value in microseconds, highest value of its bucket but not
+     * more than the maximum recorded value.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = getTotalCount();
+        if (total == 0)
+            return 0;
+
+        long target = (long)Math.ceil(total * Math.min(percentile, 100) / 100);
+        if (target < 1)
+            target = 1;
+
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += counts.get(i);
+
+            if (count >= target)
+                return Math.min(getHighestValue(i), getMaxValue());
+        }
+
+        return getMaxValue();
+    }
+
+    private static String toMillis(long micros) {
+        return String.valueOf(Math.round(micros / 10.0) / 100.0);
+    }
+
+    public String toString() {
+        return getTotalCount() + " ops, p50 " +
+            toMillis(getValueAtPercentile(50)) + " ms, p90 " +
+            toMillis(getValueAtPercentile(90)) + " ms, p99 " +
+            toMillis(getValueAtPercentile(99)) + " ms, p99.9 " +
+            toMillis(getValueAtPercentile(99.9)) + " ms, max " +
+            toMillis(getMaxValue()) + " ms";
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Firebird Open Source AS3AP Benchmark suite
+ *
+ * Distributable under LGPL license.
+ * You may obtain a copy of the License at http://www.gnu.org/copyleft/lgpl.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * LGPL License for more details.
+ *
+ * This file was created by members of the firebird development team.
+ * All individual contributions remain the Copyright (C) of those
+ * individuals.  Contributors to this file are either listed here or
+ * can be obtained from a CVS history command.
+ *
+ * All rights reserved.
+ */
+package org.firebirdsql.benchmark;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latencies of the operations during one phase of the multi-user test. Each
+ * user gets its own {@link LatencyHistogram} for each operation it executes
+ * and histograms of all users are merged when the phase ends.
+ */
+public class LatencyStatistics {
+
+    private String name;
+    private long expectedInterval;
+
+    private ArrayList operations = new ArrayList();
+    private HashMap recorders = new HashMap();
+    private HashMap errorCounts = new HashMap();
+    private HashMap lockConflictCounts = new HashMap();
+
+    /**
+     * Create statistics of the phase.
+     *
+     * @param name name of the phase.
+     * @param expectedInterval expected interval between the operations of a
+     * user in microseconds used to correct the coordinated omission,
+     * <code>0</code> if latencies are not corrected.
+     */
+    public LatencyStatistics(String name, long expectedInterval) {
+        this.name = name;
+        this.expectedInterval = expectedInterval;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getExpectedInterval() {
+        return expectedInterval;
+    }
+
+    /**
+     * Create histogram for one user.
+     *
+     * @param operation name of the operation.
+     *
+     * @return histogram that is merged with the histograms of the other
+     * users by {@link #merge(String)}.
+     */
+    public synchronized LatencyHistogram createRecorder(String operation) {
+        LatencyHistogram recorder = new LatencyHistogram();
+        getRecorders(operation).add(recorder);
+
+        return recorder;
+    }
+
+    private ArrayList getRecorders(String operation) {
+        ArrayList list = (ArrayList)recorders.get(operation);
+
+        if (list == null) {
+            list = new ArrayList();
+            recorders.put(operation, list);
+            errorCounts.put(operation, new AtomicLong());
+            lockConflictCounts.put(operation, new AtomicLong());
+            operations.add(operation);
+        }
+
+        return list;
+    }
+
+    /**
+     * Get names of the recorded operations.
+     *
+     * @return names in the order operations were first recorded.
+     */
+    public synchronized String[] getOperations() {
+        return (String[])operations.toArray(new String[operations.size()]);
+    }
+
+    /**
+     * Count operation that failed with an error.
+     *
+     * @param operation name of the operation.
+     */
+    public synchronized void recordError(String operation) {
+        getRecorders(operation);
+        ((AtomicLong)errorCounts.get(operation)).incrementAndGet();
+    }
+
+    /**
+     * Count statement of the operation that was not executed because of
+     * a deadlock or lock conflict.
+     *
+     * @param operation name of the operation.
+     */
+    public synchronized void recordLockConflict(String operation) {
+        getRecorders(operation);
+        ((AtomicLong)lockConflictCounts.get(operation)).incrementAndGet();
+    }
+
+    public synchronized long getErrorCount(String operation) {
+        AtomicLong count = (AtomicLong)errorCounts.get(operation);
+        return count != null ? count.get() : 0;
+    }
+
+    public synchronized long getLockConflictCount(String operation) {
+        AtomicLong count = (AtomicLong)lockConflictCounts.get(operation);
+        return count != null ? count.get() : 0;
+    }
+
+    /**
+     * Merge histograms of all users.
+     *
+     * @param operation name of the operation.
+     *
+     * @return merged histogram, empty if operation was not recorded.
+     */
+    public synchronized LatencyHistogram merge(String operation) {
+        LatencyHistogram result = new LatencyHistogram();
+
+        ArrayList list = (ArrayList)recorders.get(operation);
+        if (list == null)
+            return result;
+
+        for (int i = 0; i < list.size(); i++)
+            result.add((LatencyHistogram)list.get(i));
+
+        return result;
+    }
+
+    /**
+     * Print latencies of the operations in the order they were first
+     * recorded.
+     *
+     * @param out stream to print to.
+     */
+    public synchronized void print(PrintStream out) {
+        out.println("Latency " + name + (expectedInterval > 0 ?
+            " (corrected for " + expectedInterval / 1000 + " ms interval):" : ":"));
+
+        for (int i = 0; i < operations.size(); i++) {
+            String operation = (String)operations.get(i);
+
+            out.println("    " + operation + ": " + merge(operation) + ", " +
+                getErrorCount(operation) + " errors, " +
+                getLockConflictCount(operation) + " lock conflicts");
+        }
+    }
+}
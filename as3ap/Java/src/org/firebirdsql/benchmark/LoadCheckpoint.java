@@ -0,0 +1,337 @@
+/*
+ * Firebird Open Source AS3AP Benchmark suite
+ *
+ * Distributable under LGPL license.
+ * You may obtain a copy of the License at http://www.gnu.org/copyleft/lgpl.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * LGPL License for more details.
+ *
+ * This file was created by members of the firebird development team.
+ * All individual contributions remain the Copyright (C) of those
+ * individuals.  Contributors to this file are either listed here or
+ * can be obtained from a CVS history command.
+ *
+ * All rights reserved.
+ */
+package org.firebirdsql.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Progress of the resumable data load. For each data file the offset after
+ * the last committed row and number of committed rows are stored in a
+ * properties file, which is rewritten after each commit, so that an
+ * interrupted load can continue where it stopped.
+ * <p>
+ * Progress is recorded as pending before the commit and as committed after
+ * it. When the load stops between the two, number of rows in the table
+ * tells which of them is valid.
+ * <p>
+ * Rows loaded from the binary cache are positioned by their number, their
+ * progress does not record the offset in the data file.
+ */
+public class LoadCheckpoint {
+
+    private static final String OFFSET = ".offset";
+    private static final String ROWS = ".rows";
+    private static final String PENDING_OFFSET = ".pending.offset";
+    private static final String PENDING_ROWS = ".pending.rows";
+    private static final String COMPLETE = ".complete";
+
+    private static final String CONSTRAINTS_DEFERRED = "constraintsDeferred";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Progress of one data file.
+     */
+    public class Entry {
+
+        private String name;
+
+        private long startOffset;
+        private int startRows;
+
+        private Entry(String name, long startOffset, int startRows) {
+            this.name = name;
+            this.startOffset = startOffset;
+            this.startRows = startRows;
+        }
+
+        /**
+         * Get offset from which the load continues.
+         *
+         * @return offset in bytes, <code>0</code> if file was not loaded,
+         * <code>-1</code> if progress was recorded by {@link #prepare(int)}.
+         */
+        public long getOffset() {
+            return startOffset;
+        }
+
+        /**
+         * Get number of rows committed before.
+         *
+         * @return number of rows.
+         */
+        public int getRowCount() {
+            return startRows;
+        }
+
+        /**
+         * Record progress that is going to be committed.
+         *
+         * @param bytesRead bytes read from {@link #getOffset()}.
+         * @param rowCount rows loaded after {@link #getRowCount()}.
+         *
+         * @throws IOException if checkpoint cannot be written.
+         */
+        public void prepare(long bytesRead, int rowCount) throws IOException {
+            synchronized(LoadCheckpoint.this) {
+                setLong(name + PENDING_OFFSET, startOffset + bytesRead);
+                setLong(name + PENDING_ROWS, startRows + rowCount);
+                save();
+            }
+        }
+
+        /**
+         * Record progress that is going to be committed, when rows are not
+         * read from the data file. Offset of the file becomes unknown.
+         *
+         * @param rowCount rows loaded after {@link #getRowCount()}.
+         *
+         * @throws IOException if checkpoint cannot be written.
+         */
+        public void prepare(int rowCount) throws IOException {
+            synchronized(LoadCheckpoint.this) {
+                setLong(name + PENDING_OFFSET, -1);
+                setLong(name + PENDING_ROWS, startRows + rowCount);
+                save();
+            }
+        }
+
+        /**
+         * Record that the prepared progress was committed.
+         *
+         * @throws IOException if checkpoint cannot be written.
+         */
+        public void commit() throws IOException {
+            synchronized(LoadCheckpoint.this) {
+                applyPending(name);
+                save();
+            }
+        }
+
+        /**
+         * Record that the file was loaded completely.
+         *
+         * @throws IOException if checkpoint cannot be written.
+         */
+        public void complete() throws IOException {
+            synchronized(LoadCheckpoint.this) {
+                properties.setProperty(name + COMPLETE, "true");
+                save();
+            }
+        }
+    }
+
+    private File file;
+    private Properties properties = new Properties();
+    private boolean resumed;
+
+    /**
+     * Create checkpoint stored in the specified file. If file exists,
+     * progress recorded in it is read.
+     *
+     * @param file file with the checkpoint.
+     *
+     * @throws IOException if existing checkpoint cannot be read.
+     */
+    public LoadCheckpoint(File file) throws IOException {
+        this.file = file;
+
+        File source = file.exists() ? file : getTempFile(file);
+
+        if (!source.exists())
+            return;
+
+        InputStream in = new FileInputStream(source);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+
+        resumed = true;
+    }
+
+    /**
+     * Check if checkpoint of an interrupted load exists.
+     *
+     * @param file file with the checkpoint.
+     *
+     * @return <code>true</code> if load can be resumed.
+     */
+    public static boolean exists(File file) {
+        return file.exists() || getTempFile(file).exists();
+    }
+
+    private static File getTempFile(File file) {
+        return new File(file.getPath() + TEMP_SUFFIX);
+    }
+
+    /**
+     * Check if this checkpoint was read from an existing file.
+     *
+     * @return <code>true</code> if load is resumed.
+     */
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    public synchronized boolean isConstraintsDeferred() {
+        return "true".equals(properties.getProperty(CONSTRAINTS_DEFERRED));
+    }
+
+    /**
+     * Record whether constraints are still to be created after the load.
+     *
+     * @param constraintsDeferred <code>true</code> if tables have no
+     * constraints yet.
+     *
+     * @throws IOException if checkpoint cannot be written.
+     */
+    public synchronized void setConstraintsDeferred(boolean constraintsDeferred)
+        throws IOException
+    {
+        properties.setProperty(CONSTRAINTS_DEFERRED,
+            String.valueOf(constraintsDeferred));
+        save();
+    }
+
+    /**
+     * Check if data file was loaded completely.
+     *
+     * @param name name of the data file.
+     *
+     * @return <code>true</code> if file was loaded.
+     */
+    public synchronized boolean isComplete(String name) {
+        return "true".equals(properties.getProperty(name + COMPLETE));
+    }
+
+    /**
+     * Get number of rows of the data file committed so far.
+     *
+     * @param name name of the data file.
+     *
+     * @return number of rows.
+     */
+    public synchronized int getRowCount(String name) {
+        return (int)getLong(name + ROWS);
+    }
+
+    /**
+     * Get progress from which load of the data file continues. When the
+     * last recorded progress is pending, number of rows in the table decides
+     * whether it was committed.
+     *
+     * @param name name of the data file.
+     * @param tableRows number of rows in the table into which file is
+     * loaded.
+     *
+     * @return progress of the file.
+     *
+     * @throws IOException if number of rows in the table does not match
+     * the checkpoint.
+     */
+    public synchronized Entry resume(String name, int tableRows)
+        throws IOException
+    {
+        if (properties.getProperty(name + PENDING_ROWS) != null) {
+            if (getLong(name + PENDING_ROWS) == tableRows) {
+                applyPending(name);
+                save();
+            } else
+                clearPending(name);
+        }
+
+        int rowCount = (int)getLong(name + ROWS);
+
+        if (rowCount != tableRows)
+            throw new IOException("Checkpoint " + file + " records " +
+                rowCount + " rows of " + name + ", but table contains " +
+                tableRows + " rows.");
+
+        return new Entry(name, getLong(name + OFFSET), rowCount);
+    }
+
+    private void applyPending(String name) {
+        properties.setProperty(name + OFFSET,
+            properties.getProperty(name + PENDING_OFFSET, "0"));
+        properties.setProperty(name + ROWS,
+            properties.getProperty(name + PENDING_ROWS, "0"));
+
+        clearPending(name);
+    }
+
+    private void clearPending(String name) {
+        properties.remove(name + PENDING_OFFSET);
+        properties.remove(name + PENDING_ROWS);
+    }
+
+    private long getLong(String key) {
+        String value = properties.getProperty(key);
+
+        return value != null ? Long.parseLong(value) : 0;
+    }
+
+    private void setLong(String key, long value) {
+        properties.setProperty(key, String.valueOf(value));
+    }
+
+    /**
+     * Write checkpoint into the temporary file and replace the checkpoint
+     * with it, so that the interrupted write does not destroy the previous
+     * checkpoint.
+     */
+    private void save() throws IOException {
+        File temp = getTempFile(file);
+
+        OutputStream out = new FileOutputStream(temp);
+        try {
+            properties.store(out, "AS3AP data load checkpoint");
+        } finally {
+            out.close();
+        }
+
+        if (file.exists() && !file.delete())
+            throw new IOException("Cannot replace " + file + ".");
+
+        if (!temp.renameTo(file))
+            throw new IOException("Cannot rename " + temp + " to " + file + ".");
+    }
+
+    /**
+     * Delete the checkpoint after the load finished.
+     */
+    public synchronized void delete() {
+        file.delete();
+        getTempFile(file).delete();
+
+        properties.clear();
+        resumed = false;
+    }
+
+    public String toString() {
+        return file.getPath();
+    }
+}
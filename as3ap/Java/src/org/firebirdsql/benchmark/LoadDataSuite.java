@@ -18,6 +18,9 @@
  */
 package org.firebirdsql.benchmark;
 
+import java.io.File;
+import java.io.IOException;
+
 /**
  * This suite creates benchmark database and loads data into it.
  * 
@@ -30,17 +33,29 @@ public class LoadDataSuite extends BenchmarkSuite {
      * Fill this test suite.
 	 */
 	public void fillSuite() {
-		addTest(getFixture().createLoadTest("testLoadData"));
+		BenchmarkConfiguration config = BenchmarkConfiguration.getConfiguration();
+		
+		if (config.getLoadMode() == BenchmarkConfiguration.COMPARE_LOAD_MODE) {
+			addTest(getFixture().createLoadTest("testLoadDataByRow"));
+			addTest(getFixture().createLoadTest("testLoadDataByBatch"));
+			addTest(getFixture().createLoadTest("testLoadDataByMultiRow"));
+		} else
+			addTest(getFixture().createLoadTest("testLoadData"));
 
 	}
 
 	/**
      * Check if database should be created.
      * 
-     * @return <code>true</code> always. 
+     * @return <code>true</code> unless the data load is resumed from a 
+     * checkpoint. 
 	 */
 	protected boolean isCreateDatabase() {
-		return true;
+		String checkpointFile = 
+			BenchmarkConfiguration.getConfiguration().getLoadCheckpointFile();
+		
+		return checkpointFile == null || 
+			!LoadCheckpoint.exists(new File(checkpointFile));
 	}
 
     /**
@@ -52,6 +67,32 @@ public class LoadDataSuite extends BenchmarkSuite {
         BenchmarkListener listener = new BenchmarkListener();
         TestRunner.run(new LoadDataSuite().suite(), listener);
         listener.printStatistics(System.out);
+        
+        printLoadMetrics();
+    }
+    
+    /**
+     * Print load statistics and write them into the configured file.
+     */
+    private static void printLoadMetrics() {
+        if (getFixture() == null)
+            return;
+        
+        LoadMetrics metrics = getFixture().getLoadMetrics();
+        metrics.printSummary(System.out);
+        
+        String fileName = 
+            BenchmarkConfiguration.getConfiguration().getLoadMetricsFile();
+        
+        if (fileName == null)
+            return;
+        
+        try {
+            metrics.writeCsv(new File(fileName));
+            System.out.println("Load statistics written to " + fileName + ".");
+        } catch(IOException ex) {
+            ex.printStackTrace();
+        }
     }
 
 }
@@ -0,0 +1,406 @@
+/*
+ * Firebird Open Source AS3AP Benchmark suite
+ *
+ * Distributable under LGPL license.
+ * You may obtain a copy of the License at http://www.gnu.org/copyleft/lgpl.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * LGPL License for more details.
+ *
+ * This file was created by members of the firebird development team.
+ * All individual contributions remain the Copyright (C) of those
+ * individuals.  Contributors to this file are either listed here or
+ * can be obtained from a CVS history command.
+ *
+ * All rights reserved.
+ */
+package org.firebirdsql.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Throughput of the data load per table. Each loader gets its own
+ * {@link Counter} which only the loading thread updates, so no locking is
+ * needed in the load loop. Background reporter started by
+ * {@link #startReporter(int, PrintStream)} samples the counters at a fixed
+ * interval and prints the progress, totals are printed by
+ * {@link #printSummary(PrintStream)} and written by
+ * {@link #writeCsv(File)} in a form suitable for scripts.
+ */
+public class LoadMetrics {
+
+    public static final String CSV_HEADER = ""
+        + "table,rows,bytes,elapsed_ms,rows_per_sec,bytes_per_sec,"
+        + "parse_ms,bind_ms,execute_ms,commit_ms";
+
+    private static final long NANOS_PER_MILLI = 1000 * 1000;
+
+    /**
+     * Counters of one loader. Fields are written by the loading thread
+     * only and read by the reporter.
+     */
+    public static class Counter {
+
+        private volatile long rows;
+        private volatile long bytes;
+
+        private volatile long parseNanos;
+        private volatile long bindNanos;
+        private volatile long executeNanos;
+        private volatile long commitNanos;
+
+        private volatile long startNanos = System.nanoTime();
+        private volatile long endNanos;
+
+        public void addParse(long nanos) {
+            parseNanos += nanos;
+        }
+
+        public void addBind(long nanos) {
+            bindNanos += nanos;
+        }
+
+        public void addExecute(long nanos) {
+            executeNanos += nanos;
+        }
+
+        public void addCommit(long nanos) {
+            commitNanos += nanos;
+        }
+
+        /**
+         * Update progress of the loader.
+         *
+         * @param rows number of rows loaded so far.
+         * @param bytes number of bytes read so far.
+         */
+        public void setProgress(long rows, long bytes) {
+            this.rows = rows;
+            this.bytes = bytes;
+        }
+
+        /**
+         * Mark this loader as finished.
+         */
+        public void finish() {
+            endNanos = System.nanoTime();
+        }
+
+        private boolean isFinished() {
+            return endNanos != 0;
+        }
+    }
+
+    /**
+     * Sum of the counters of all loaders of one table.
+     */
+    private static class Totals {
+        private String table;
+
+        private long rows;
+        private long bytes;
+
+        private long parseNanos;
+        private long bindNanos;
+        private long executeNanos;
+        private long commitNanos;
+
+        /**
+         * Time between start of the first and end of the last loader.
+         */
+        private long elapsedNanos;
+
+        private int activeLoaders;
+
+        private Totals(String table) {
+            this.table = table;
+        }
+
+        private void add(Counter counter) {
+            rows += counter.rows;
+            bytes += counter.bytes;
+
+            parseNanos += counter.parseNanos;
+            bindNanos += counter.bindNanos;
+            executeNanos += counter.executeNanos;
+            commitNanos += counter.commitNanos;
+
+            if (!counter.isFinished())
+                activeLoaders++;
+        }
+
+        private long getElapsedMillis() {
+            return elapsedNanos / NANOS_PER_MILLI;
+        }
+
+        private long getRate(long value) {
+            return elapsedNanos > 0 ?
+                Math.round(value * 1e9 / elapsedNanos) : 0;
+        }
+
+        private String getPhases() {
+            long total = parseNanos + bindNanos + executeNanos + commitNanos;
+
+            if (total == 0)
+                return "";
+
+            return "parse " + (parseNanos * 100 / total) + "%, " +
+                "bind " + (bindNanos * 100 / total) + "%, " +
+                "execute " + (executeNanos * 100 / total) + "%, " +
+                "commit " + (commitNanos * 100 / total) + "%";
+        }
+    }
+
+    /**
+     * Counters by table name, in the order tables were first loaded.
+     */
+    private LinkedHashMap counters = new LinkedHashMap();
+
+    private Thread reporter;
+    private boolean reporterStopped;
+
+    /**
+     * Create counter for a new loader of the specified table.
+     *
+     * @param table name of the table or description of the source.
+     *
+     * @return new counter.
+     */
+    public synchronized Counter createCounter(String table) {
+        ArrayList tableCounters = (ArrayList)counters.get(table);
+
+        if (tableCounters == null) {
+            tableCounters = new ArrayList();
+            counters.put(table, tableCounters);
+        }
+
+        Counter counter = new Counter();
+        tableCounters.add(counter);
+
+        return counter;
+    }
+
+    /**
+     * Forget all counters.
+     */
+    public synchronized void clear() {
+        counters.clear();
+    }
+
+    /**
+     * Sum counters of each table.
+     *
+     * @return array of totals in the order tables were loaded.
+     */
+    private synchronized Totals[] getTotals() {
+        long now = System.nanoTime();
+
+        Totals[] result = new Totals[counters.size()];
+
+        int index = 0;
+        Iterator iter = counters.keySet().iterator();
+        while (iter.hasNext()) {
+            String table = (String)iter.next();
+            ArrayList tableCounters = (ArrayList)counters.get(table);
+
+            Totals totals = new Totals(table);
+
+            long start = Long.MAX_VALUE;
+            long end = Long.MIN_VALUE;
+
+            for (int i = 0; i < tableCounters.size(); i++) {
+                Counter counter = (Counter)tableCounters.get(i);
+
+                totals.add(counter);
+
+                start = Math.min(start, counter.startNanos);
+                end = Math.max(end,
+                    counter.isFinished() ? counter.endNanos : now);
+            }
+
+            totals.elapsedNanos = end - start;
+
+            result[index++] = totals;
+        }
+
+        return result;
+    }
+
+    /**
+     * Start background thread printing the progress of the tables being
+     * loaded. Reporter runs until {@link #stopReporter()} is called.
+     *
+     * @param interval interval between the reports in milliseconds.
+     * @param out stream to print to.
+     */
+    public synchronized void startReporter(final int interval,
+        final PrintStream out)
+    {
+        if (reporter != null)
+            return;
+
+        reporterStopped = false;
+
+        reporter = new Thread("load-reporter") {
+            public void run() {
+                long[] lastRows = new long[0];
+                long lastTime = System.currentTimeMillis();
+
+                while (waitInterval(interval)) {
+                    Totals[] totals = getTotals();
+                    long now = System.currentTimeMillis();
+
+                    if (lastRows.length < totals.length) {
+                        long[] newRows = new long[totals.length];
+                        System.arraycopy(lastRows, 0, newRows, 0, lastRows.length);
+                        lastRows = newRows;
+                    }
+
+                    for (int i = 0; i < totals.length; i++) {
+                        if (totals[i].activeLoaders == 0)
+                            continue;
+
+                        long rows = totals[i].rows - lastRows[i];
+                        long time = now - lastTime;
+
+                        out.println("    " + totals[i].table + ": " +
+                            totals[i].rows + " rows, " +
+                            (time > 0 ? rows * 1000 / time : 0) +
+                            " rows/sec now, " +
+                            totals[i].getRate(totals[i].rows) +
+                            " rows/sec average, " + totals[i].getPhases());
+
+                        lastRows[i] = totals[i].rows;
+                    }
+
+                    lastTime = now;
+                }
+            }
+        };
+
+        reporter.setDaemon(true);
+        reporter.start();
+    }
+
+    /**
+     * Wait for the next report.
+     *
+     * @return <code>false</code> if reporter was stopped.
+     */
+    private synchronized boolean waitInterval(int interval) {
+        long end = System.currentTimeMillis() + interval;
+
+        try {
+            long remaining;
+            while (!reporterStopped &&
+                (remaining = end - System.currentTimeMillis()) > 0)
+            {
+                wait(remaining);
+            }
+        } catch(InterruptedException ex) {
+            return false;
+        }
+
+        return !reporterStopped;
+    }
+
+    /**
+     * Stop background reporter and wait until it finishes.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void stopReporter() throws InterruptedException {
+        Thread thread;
+
+        synchronized(this) {
+            thread = reporter;
+            reporter = null;
+
+            reporterStopped = true;
+            notifyAll();
+        }
+
+        if (thread != null)
+            thread.join();
+    }
+
+    /**
+     * Print totals of each table.
+     *
+     * @param out stream to print to.
+     */
+    public void printSummary(PrintStream out) {
+        Totals[] totals = getTotals();
+
+        out.println("Load statistics:");
+
+        for (int i = 0; i < totals.length; i++) {
+            Totals table = totals[i];
+
+            StringBuffer msg = new StringBuffer();
+            msg.append(table.table).append(" - ");
+            msg.append(table.rows).append(" rows");
+
+            if (table.bytes > 0)
+                msg.append(", ").append(table.bytes).append(" bytes");
+
+            msg.append(" in ").append(table.getElapsedMillis()).append(" ms, ");
+            msg.append(table.getRate(table.rows)).append(" rows/sec");
+
+            if (table.bytes > 0)
+                msg.append(", ").append(table.getRate(table.bytes))
+                    .append(" bytes/sec");
+
+            String phases = table.getPhases();
+            if (phases.length() > 0)
+                msg.append(" (").append(phases).append(")");
+
+            msg.append(".");
+
+            out.println(msg.toString());
+        }
+    }
+
+    /**
+     * Write totals of each table as comma-separated values with the
+     * {@link #CSV_HEADER} header.
+     *
+     * @param file file to write.
+     *
+     * @throws IOException if file cannot be written.
+     */
+    public void writeCsv(File file) throws IOException {
+        Totals[] totals = getTotals();
+
+        PrintStream out = new PrintStream(new FileOutputStream(file));
+        try {
+            out.println(CSV_HEADER);
+
+            for (int i = 0; i < totals.length; i++) {
+                Totals table = totals[i];
+
+                out.println(table.table + "," + table.rows + "," +
+                    table.bytes + "," + table.getElapsedMillis() + "," +
+                    table.getRate(table.rows) + "," +
+                    table.getRate(table.bytes) + "," +
+                    (table.parseNanos / NANOS_PER_MILLI) + "," +
+                    (table.bindNanos / NANOS_PER_MILLI) + "," +
+                    (table.executeNanos / NANOS_PER_MILLI) + "," +
+                    (table.commitNanos / NANOS_PER_MILLI));
+            }
+
+            if (out.checkError())
+                throw new IOException("Cannot write " + file + ".");
+        } finally {
+            out.close();
+        }
+    }
+}
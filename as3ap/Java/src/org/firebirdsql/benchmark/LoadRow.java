@@ -0,0 +1,295 @@
+/*
+ * Firebird Open Source AS3AP Benchmark suite
+ *
+ * Distributable under LGPL license.
+ * You may obtain a copy of the License at http://www.gnu.org/copyleft/lgpl.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * LGPL License for more details.
+ *
+ * This file was created by members of the firebird development team.
+ * All individual contributions remain the Copyright (C) of those
+ * individuals.  Contributors to this file are either listed here or
+ * can be obtained from a CVS history command.
+ *
+ * All rights reserved.
+ */
+package org.firebirdsql.benchmark;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+/**
+ * Buffer for one row of the data file. Values are parsed on the client
+ * according to the column types and bound to the insert statement using
+ * corresponding <code>setXXX</code> methods. Instance can be reused for
+ * all rows of the file.
+ * <p>
+ * When typed binding is switched off, all columns except timestamps are
+ * bound as strings leaving conversion to the driver or the server. Values set
+ * with <code>setXXX</code> methods must match the column types, so sources
+ * that produce typed values need typed binding.
+ * <p>
+ * Timestamps are always parsed with {@link AsapDateParser}, because the
+ * server formats differ from the ones used in the data files.
+ */
+public class LoadRow {
+
+    private int[] types;
+
+    private boolean[] nulls;
+    private long[] longValues;
+    private double[] doubleValues;
+    private Object[] objectValues;
+
+    private boolean reuseValues;
+
+    /**
+     * Create row buffer for the specified column types.
+     *
+     * @param types JDBC types of the columns, see
+     * {@link BenchmarkInsertSQL#getColumnTypes(String)}.
+     * @param typed <code>true</code> if values should be bound using the
+     * column types, otherwise columns are bound as strings.
+     */
+    public LoadRow(int[] types, boolean typed) {
+        this.types = new int[types.length];
+
+        for (int i = 0; i < types.length; i++) {
+            if (typed || types[i] == Types.TIMESTAMP)
+                this.types[i] = types[i];
+            else
+                this.types[i] = Types.VARCHAR;
+        }
+
+        nulls = new boolean[types.length];
+        longValues = new long[types.length];
+        doubleValues = new double[types.length];
+        objectValues = new Object[types.length];
+    }
+
+    /**
+     * Create empty row buffer with the same column types and binding as the
+     * specified one.
+     *
+     * @param prototype row buffer to copy the types from.
+     */
+    public LoadRow(LoadRow prototype) {
+        types = prototype.types;
+        reuseValues = prototype.reuseValues;
+
+        nulls = new boolean[types.length];
+        longValues = new long[types.length];
+        doubleValues = new double[types.length];
+        objectValues = new Object[types.length];
+    }
+
+    /**
+     * Get number of the columns in this row.
+     *
+     * @return number of the columns.
+     */
+    public int getColumnCount() {
+        return types.length;
+    }
+
+    /**
+     * Allow reuse of the objects passed to the statement. Some drivers keep
+     * references to the parameter values until the batch is executed, so
+     * reuse is safe only when each row is executed separately.
+     *
+     * @param reuseValues <code>true</code> if the same {@link Timestamp}
+     * instance can be bound for every row.
+     */
+    public void setReuseValues(boolean reuseValues) {
+        this.reuseValues = reuseValues;
+    }
+
+    /**
+     * Read current line of the data file into this buffer. Missing fields
+     * are treated as <code>null</code> values, extra fields are ignored.
+     *
+     * @param in reader positioned on the line to read.
+     *
+     * @throws IllegalArgumentException if field cannot be converted into
+     * the column type.
+     */
+    public void read(CsvReader in) {
+        for (int i = 0; i < types.length; i++) {
+
+            nulls[i] = in.isNull(i);
+
+            if (nulls[i])
+                continue;
+
+            switch(types[i]) {
+                case Types.INTEGER :
+                case Types.SMALLINT :
+                    longValues[i] = in.getInt(i);
+                    break;
+
+                case Types.BIGINT :
+                    longValues[i] = in.getLong(i);
+                    break;
+
+                case Types.FLOAT :
+                case Types.REAL :
+                case Types.DOUBLE :
+                    doubleValues[i] = in.getDouble(i);
+                    break;
+
+                case Types.NUMERIC :
+                case Types.DECIMAL :
+                    objectValues[i] = in.getBigDecimal(i);
+                    break;
+
+                case Types.TIMESTAMP :
+                    longValues[i] = in.getDate(i);
+                    break;
+
+                default :
+                    objectValues[i] = in.getString(i);
+            }
+        }
+    }
+
+    /**
+     * Copy values from the other row buffer with the same column types.
+     * Timestamp instances are not shared, so the reused ones are not
+     * changed by the other buffer.
+     *
+     * @param row row buffer to copy the values from.
+     */
+    public void copyFrom(LoadRow row) {
+        System.arraycopy(row.nulls, 0, nulls, 0, types.length);
+        System.arraycopy(row.longValues, 0, longValues, 0, types.length);
+        System.arraycopy(row.doubleValues, 0, doubleValues, 0, types.length);
+
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] != Types.TIMESTAMP)
+                objectValues[i] = row.objectValues[i];
+        }
+    }
+
+    /**
+     * Set column value to <code>null</code>.
+     *
+     * @param column index of the column, first column has index 0.
+     */
+    public void setNull(int column) {
+        nulls[column] = true;
+    }
+
+    /**
+     * Set value of the integer column.
+     *
+     * @param column index of the column, first column has index 0.
+     * @param value value to set.
+     */
+    public void setLong(int column, long value) {
+        nulls[column] = false;
+        longValues[column] = value;
+    }
+
+    /**
+     * Set value of the floating point column.
+     *
+     * @param column index of the column, first column has index 0.
+     * @param value value to set.
+     */
+    public void setDouble(int column, double value) {
+        nulls[column] = false;
+        doubleValues[column] = value;
+    }
+
+    /**
+     * Set value of the timestamp column.
+     *
+     * @param column index of the column, first column has index 0.
+     * @param millis value to set in milliseconds.
+     */
+    public void setTimestamp(int column, long millis) {
+        nulls[column] = false;
+        longValues[column] = millis;
+    }
+
+    /**
+     * Set value of the numeric or string column.
+     *
+     * @param column index of the column, first column has index 0.
+     * @param value {@link BigDecimal} or {@link String} value, depending on
+     * the column type.
+     */
+    public void setObject(int column, Object value) {
+        nulls[column] = value == null;
+        objectValues[column] = value;
+    }
+
+    /**
+     * Bind values of this row to the statement parameters.
+     *
+     * @param stmt statement to which values are bound.
+     * @param firstParam index of the parameter for the first column.
+     *
+     * @throws SQLException if parameter cannot be set.
+     */
+    public void bind(PreparedStatement stmt, int firstParam) throws SQLException {
+        for (int i = 0; i < types.length; i++) {
+            int param = firstParam + i;
+
+            if (nulls[i]) {
+                stmt.setNull(param, types[i]);
+                continue;
+            }
+
+            switch(types[i]) {
+                case Types.INTEGER :
+                case Types.SMALLINT :
+                    stmt.setInt(param, (int)longValues[i]);
+                    break;
+
+                case Types.BIGINT :
+                    stmt.setLong(param, longValues[i]);
+                    break;
+
+                case Types.FLOAT :
+                case Types.REAL :
+                case Types.DOUBLE :
+                    stmt.setDouble(param, doubleValues[i]);
+                    break;
+
+                case Types.NUMERIC :
+                case Types.DECIMAL :
+                    stmt.setBigDecimal(param, (BigDecimal)objectValues[i]);
+                    break;
+
+                case Types.TIMESTAMP :
+                    stmt.setTimestamp(param, getTimestamp(i));
+                    break;
+
+                default :
+                    stmt.setString(param, (String)objectValues[i]);
+            }
+        }
+    }
+
+    private Timestamp getTimestamp(int column) {
+        if (!reuseValues)
+            return new Timestamp(longValues[column]);
+
+        Timestamp timestamp = (Timestamp)objectValues[column];
+
+        if (timestamp == null) {
+            timestamp = new Timestamp(longValues[column]);
+            objectValues[column] = timestamp;
+        } else
+            timestamp.setTime(longValues[column]);
+
+        return timestamp;
+    }
+}
@@ -39,43 +39,452 @@ public class LoadTest extends BenchmarkTest {
         super(name);
     }
     
+    /**
+     * Load data with the configured batch size. When checkpoint file is
+     * configured, load continues from the checkpoint left by the previous
+     * run.
+     * 
+     * @throws Exception if something went wrong.
+     */
     public void testLoadData() throws Exception {
+        String checkpointFile = 
+            getDatabaseManager().getConfig().getLoadCheckpointFile();
+        
+        if (checkpointFile != null)
+            loadData(BenchmarkFixture.CONFIGURED_BATCH_SIZE, 
+                new LoadCheckpoint(new File(checkpointFile)));
+        else
+            loadData(BenchmarkFixture.CONFIGURED_BATCH_SIZE);
+    }
+    
+    /**
+     * Load data executing insert statement for each row. Any data loaded
+     * before are deleted.
+     * 
+     * @throws Exception if something went wrong.
+     */
+    public void testLoadDataByRow() throws Exception {
+        deleteData();
+        loadData(1);
+    }
+    
+    /**
+     * Load data using JDBC batch updates. Any data loaded before are deleted.
+     * 
+     * @throws Exception if something went wrong.
+     */
+    public void testLoadDataByBatch() throws Exception {
+        deleteData();
+        loadData(getDatabaseManager().getConfig().getLoadBatchSize());
+    }
+    
+    /**
+     * Load data inserting several rows with one statement, see
+     * {@link BenchmarkFixture#getMultiRowInsert(String, int)}. Any data 
+     * loaded before are deleted.
+     * 
+     * @throws Exception if something went wrong.
+     */
+    public void testLoadDataByMultiRow() throws Exception {
+        deleteData();
+        loadData(BenchmarkFixture.MULTI_ROW_BATCH_SIZE);
+    }
+    
+    /**
+     * Load all data files. If tables were created without constraints,
+     * constraints are created and validated after the load and time spent
+     * for it is reported separately. Snapshot for the snapshot restore mode
+     * is taken after the load.
+     * 
+     * @param batchSize number of rows sent to the server in one batch.
+     * 
+     * @throws Exception if something went wrong.
+     */
+    protected void loadData(int batchSize) throws Exception {
+        loadData(batchSize, null);
+    }
+    
+    /**
+     * Load all data files recording the progress in the checkpoint. Files
+     * are loaded one by one, checkpoint is deleted when the load and 
+     * creation of the deferred constraints succeed.
+     * 
+     * @param batchSize number of rows sent to the server in one batch.
+     * @param checkpoint progress of the load or <code>null</code> if load
+     * is not resumable.
+     * 
+     * @throws Exception if something went wrong.
+     */
+    protected void loadData(int batchSize, LoadCheckpoint checkpoint) 
+        throws Exception 
+    {
+        BenchmarkFixture fixture = getFixture();
+        LoadMetrics metrics = fixture.getLoadMetrics();
+        
+        if (checkpoint != null) {
+            if (checkpoint.isResumed()) {
+                System.out.println("Resuming data load from " + checkpoint + ".");
+                fixture.setConstraintsDeferred(checkpoint.isConstraintsDeferred());
+            } else
+                checkpoint.setConstraintsDeferred(fixture.isConstraintsDeferred());
+        }
+        
+        // do not add this load to the earlier loads of the fixture
+        metrics.clear();
+        
+        int reportInterval = 
+            getDatabaseManager().getConfig().getLoadReportInterval();
+        
+        if (reportInterval > 0)
+            metrics.startReporter(reportInterval, System.out);
+        
+        long start = System.currentTimeMillis();
+        
+        try {
+            if (checkpoint != null)
+                loadFiles(batchSize, checkpoint);
+            else
+                loadFiles(batchSize);
+        } finally {
+            metrics.stopReporter();
+        }
+        
+        long loadTime = System.currentTimeMillis() - start;
+        
+        if (fixture.isConstraintsDeferred()) {
+            long indexTime = fixture.createConstraints();
+            
+            if (checkpoint != null)
+                checkpoint.setConstraintsDeferred(false);
+            
+            start = System.currentTimeMillis();
+            fixture.validateConstraints();
+            long validationTime = System.currentTimeMillis() - start;
+            
+            System.out.println("Data loaded in " + loadTime + " ms, " +
+                "constraints created in " + indexTime + " ms, " +
+                "validated in " + validationTime + " ms.");
+        }
+        
+        if (isSnapshotRestore())
+            createSnapshot();
+        
+        if (checkpoint != null)
+            checkpoint.delete();
+        
+        // next load of the comparison clears the metrics
+        if (getDatabaseManager().getConfig().getLoadMode() == 
+            BenchmarkConfiguration.COMPARE_LOAD_MODE)
+        {
+            metrics.printSummary(System.out);
+        }
+    }
+    
+    /**
+     * Load all data files either one after another or in parallel.
+     * 
+     * @param batchSize number of rows sent to the server in one batch.
+     * 
+     * @throws Exception if something went wrong.
+     */
+    protected void loadFiles(int batchSize) throws Exception {
         
         BenchmarkFixture fixture = getFixture();
 
         File dataPath = fixture.getDataPath();
+        
+        if (getDatabaseManager().getConfig().isParallelLoad()) {
+            ParallelLoader loader = new ParallelLoader(fixture, batchSize);
+            
+            // hundred references updates, so they are loaded in one chain
+            loader.addChain(
+                new File[] {
+                    new File(dataPath, UPDATES_FILE), 
+                    new File(dataPath, HUNDRED_FILE)
+                }, 
+                new String[] {
+                    BenchmarkInsertSQL.INSERT_UPDATES, 
+                    BenchmarkInsertSQL.INSERT_HUNDRED
+                });
+            
+            loader.add(new File(dataPath, TEN_PCS_FILE), 
+                BenchmarkInsertSQL.INSERT_TEN_PCT);
+            
+            loader.add(new File(dataPath, UNIQUES_FILE), 
+                BenchmarkInsertSQL.INSERT_UNIQUES);
+            
+            loader.add(new File(dataPath, TINY_FILE), 
+                BenchmarkInsertSQL.INSERT_TINY);
+            
+            try {
+                loader.load();
+            } finally {
+                loader.printStatistics(System.out);
+            }
+            
+            return;
+        }
 
-        fixture.loadFile(new File(dataPath, UPDATES_FILE), 
-            BenchmarkInsertSQL.INSERT_UPDATES);
+        loadFile(new File(dataPath, UPDATES_FILE), 
+            BenchmarkInsertSQL.INSERT_UPDATES, batchSize);
 
-        fixture.loadFile(new File(dataPath, HUNDRED_FILE), 
-            BenchmarkInsertSQL.INSERT_HUNDRED);
+        loadFile(new File(dataPath, HUNDRED_FILE), 
+            BenchmarkInsertSQL.INSERT_HUNDRED, batchSize);
 
-        fixture.loadFile(new File(dataPath, TEN_PCS_FILE), 
-            BenchmarkInsertSQL.INSERT_TEN_PCT);
+        loadFile(new File(dataPath, TEN_PCS_FILE), 
+            BenchmarkInsertSQL.INSERT_TEN_PCT, batchSize);
 
-        fixture.loadFile(new File(dataPath, UNIQUES_FILE), 
-            BenchmarkInsertSQL.INSERT_UNIQUES);
+        loadFile(new File(dataPath, UNIQUES_FILE), 
+            BenchmarkInsertSQL.INSERT_UNIQUES, batchSize);
 
-        fixture.loadFile(new File(dataPath, TINY_FILE), 
-            BenchmarkInsertSQL.INSERT_TINY);
+        loadFile(new File(dataPath, TINY_FILE), 
+            BenchmarkInsertSQL.INSERT_TINY, batchSize);
+    }
+    
+    /**
+     * Load all data files one after another recording the progress in the
+     * checkpoint. Parallel and partitioned load are not used in this mode.
+     * 
+     * @param batchSize number of rows sent to the server in one batch.
+     * @param checkpoint progress of the load.
+     * 
+     * @throws Exception if something went wrong.
+     */
+    protected void loadFiles(int batchSize, LoadCheckpoint checkpoint) 
+        throws Exception 
+    {
+        BenchmarkFixture fixture = getFixture();
+        
+        File dataPath = fixture.getDataPath();
+        int commitInterval = 
+            getDatabaseManager().getConfig().getLoadCommitInterval();
+        
+        String[] files = new String[] {
+            UPDATES_FILE, HUNDRED_FILE, TEN_PCS_FILE, UNIQUES_FILE, TINY_FILE
+        };
+        
+        String[] insertSql = new String[] {
+            BenchmarkInsertSQL.INSERT_UPDATES,
+            BenchmarkInsertSQL.INSERT_HUNDRED,
+            BenchmarkInsertSQL.INSERT_TEN_PCT,
+            BenchmarkInsertSQL.INSERT_UNIQUES,
+            BenchmarkInsertSQL.INSERT_TINY
+        };
+        
+        for (int i = 0; i < files.length; i++)
+            fixture.loadFile(new File(dataPath, files[i]), insertSql[i], 
+                batchSize, commitInterval, checkpoint);
     }
     
+    /**
+     * Load single data file. If more than one load partition is configured,
+     * file is split and loaded by {@link PartitionedLoader}. Generated data,
+     * compressed files and binary cache are always loaded by one thread, see
+     * {@link BenchmarkFixture#isPartitioned(File, String)}.
+     * 
+     * @param file file to load.
+     * @param insertSql SQL statement that will be used to insert data.
+     * @param batchSize number of rows sent to the server in one batch.
+     * 
+     * @throws Exception if something went wrong.
+     */
+    protected void loadFile(File file, String insertSql, int batchSize) 
+        throws Exception 
+    {
+        BenchmarkConfiguration config = getDatabaseManager().getConfig();
+        
+        if (!getFixture().isPartitioned(file, insertSql)) {
+            getFixture().loadFile(file, insertSql, batchSize);
+            return;
+        }
+        
+        PartitionedLoader loader = new PartitionedLoader(getFixture(), file, 
+            insertSql, config.getLoadPartitions(), batchSize, 
+            config.getLoadCommitInterval());
+        
+        try {
+            loader.load();
+        } finally {
+            loader.printStatistics(System.out);
+        }
+    }
+    
+    /**
+     * Delete all data from the tables filled by {@link #loadFiles(int)}.
+     * 
+     * @throws SQLException if something went wrong.
+     */
+    protected void deleteData() throws SQLException {
+        Connection con = getConnection();
+        try {
+            con.setAutoCommit(false);
+            
+            Statement stmt = con.createStatement();
+            try {
+                stmt.executeUpdate("DELETE FROM " + TINY_TABLE);
+                stmt.executeUpdate("DELETE FROM " + UNIQUES_TABLE);
+                stmt.executeUpdate("DELETE FROM " + TEN_PCT_TABLE);
+                stmt.executeUpdate("DELETE FROM " + HUNDRED_TABLE);
+                stmt.executeUpdate("DELETE FROM " + UPDATES_TABLE);
+            } finally {
+                stmt.close();
+            }
+            
+            con.commit();
+            
+        } catch(SQLException ex) {
+            con.rollback();
+            
+            throw ex;
+        }
+    }
+    
+    /**
+     * Save content of the <code>updates</code> and <code>hundred</code>
+     * tables before the multi-user test. Only the snapshot and delta restore
+     * modes need it, and snapshot is taken only if the data load did not 
+     * create it already. In delta mode tracking of the modified rows starts
+     * here.
+     * 
+     * @throws Exception if something went wrong.
+     */
     public void testBackupUpdates() throws Exception {
-        // do nothing here
+        if (!isSnapshotRestore())
+            return;
+        
+        BenchmarkFixture fixture = getFixture();
+        
+        if (!fixture.hasSnapshot())
+            createSnapshot();
+        
+        if (getDatabaseManager().getConfig().getRestoreMode() == 
+            BenchmarkConfiguration.DELTA_RESTORE_MODE)
+        {
+            fixture.startUpdatesTracking();
+        }
     }
     
     public void testRestoreUpdates() throws Exception {
-        if (getDatabaseManager().getConfig().isRecreateTableAsCleanup())
-            restoreUpdatesByDrop();
-        else
+        switch(getDatabaseManager().getConfig().getRestoreMode()) {
+            case BenchmarkConfiguration.DELTA_RESTORE_MODE :
+                restoreUpdatesByDelta();
+                break;
+                
+            case BenchmarkConfiguration.SNAPSHOT_RESTORE_MODE :
+                restoreUpdatesBySnapshot();
+                break;
+                
+            case BenchmarkConfiguration.DROP_RESTORE_MODE :
+                restoreUpdatesByDrop();
+                break;
+                
+            default :
+                restoreUpdatesByDelete();
+        }
+    }
+    
+    protected boolean isSnapshotRestore() {
+        int restoreMode = getDatabaseManager().getConfig().getRestoreMode();
+        
+        return restoreMode == BenchmarkConfiguration.SNAPSHOT_RESTORE_MODE ||
+            restoreMode == BenchmarkConfiguration.DELTA_RESTORE_MODE;
+    }
+    
+    protected void createSnapshot() throws Exception {
+        long time = getFixture().createSnapshot();
+        
+        System.out.println("Snapshot of " + UPDATES_TABLE + " and " + 
+            HUNDRED_TABLE + " created in " + time + " ms.");
+    }
+    
+    /**
+     * Restore <code>updates</code> and <code>hundred</code> tables by 
+     * copying the rows from the snapshot tables. When there is no snapshot,
+     * data files are loaded as in {@link #restoreUpdatesByDelete()}.
+     * 
+     * @throws Exception if something went wrong.
+     */
+    protected void restoreUpdatesBySnapshot() throws Exception {
+        BenchmarkFixture fixture = getFixture();
+        
+        if (!fixture.hasSnapshot()) {
+            System.out.println("No snapshot of " + UPDATES_TABLE + 
+                " found, restoring from data files.");
+            
             restoreUpdatesByDelete();
+            return;
+        }
+        
+        long start = System.currentTimeMillis();
+        
+        Connection con = getConnection();
+        try {
+            con.setAutoCommit(false);
+            
+            fixture.restoreSnapshot(con);
+            
+            con.commit();
+            
+        } catch(SQLException ex) {
+            con.rollback();
+            
+            throw ex;
+        }
+        
+        System.out.println("Restored from snapshot in " + 
+            (System.currentTimeMillis() - start) + " ms.");
+    }
+    
+    /**
+     * Restore only the rows of <code>updates</code> table modified since
+     * {@link #testBackupUpdates()} by copying them from the snapshot table,
+     * <code>hundred</code> table is not modified by the multi-user test. 
+     * When rows were not tracked, whole tables are restored as in 
+     * {@link #restoreUpdatesBySnapshot()}.
+     * 
+     * @throws Exception if something went wrong.
+     */
+    protected void restoreUpdatesByDelta() throws Exception {
+        BenchmarkFixture fixture = getFixture();
+        
+        UpdatesTracker tracker = fixture.getUpdatesTracker();
+        if (tracker == null) {
+            restoreUpdatesBySnapshot();
+            return;
+        }
+        
+        long start = System.currentTimeMillis();
+        
+        String modified = tracker.toString();
+        int restoredRows;
+        
+        Connection con = getConnection();
+        try {
+            con.setAutoCommit(false);
+            
+            restoredRows = fixture.restoreDelta(con, tracker);
+            
+            con.commit();
+            
+        } catch(SQLException ex) {
+            con.rollback();
+            
+            throw ex;
+        }
+        
+        tracker.clear();
+        
+        System.out.println("Restored " + restoredRows + " row(s) of " + 
+            UPDATES_TABLE + " (" + modified + ") from snapshot in " + 
+            (System.currentTimeMillis() - start) + " ms.");
     }
     
     protected void restoreUpdatesByDelete() throws Exception {
         BenchmarkFixture fixture = getFixture();
         BenchmarkDatabaseManager manager = getDatabaseManager();
         
+        fixture.getLoadMetrics().clear();
+        
         Connection con = getConnection();
         try {
             con.setAutoCommit(false);
@@ -104,6 +513,8 @@ public class LoadTest extends BenchmarkTest {
         BenchmarkFixture fixture = getFixture();
         BenchmarkDatabaseManager manager = getDatabaseManager();
         
+        fixture.getLoadMetrics().clear();
+        
         Connection con = getConnection();
         try {
             
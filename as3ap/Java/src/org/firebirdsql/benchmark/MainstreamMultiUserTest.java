@@ -40,7 +40,7 @@ public class MainstreamMultiUserTest extends MultiUserTest {
         return throughput;
     }
     
-    public synchronized void testIrSelect() throws Exception {
+    public void testIrSelect() throws Exception {
         long start = System.currentTimeMillis();
         
         while(System.currentTimeMillis() - start < duration) {
@@ -48,7 +48,7 @@ public class MainstreamMultiUserTest extends MultiUserTest {
             
             int sleepDuration = getDatabaseManager().getConfig().getSleepDuration();
             if (sleepDuration > 0)
-                wait(sleepDuration);
+                Thread.sleep(sleepDuration);
         }
     }
     
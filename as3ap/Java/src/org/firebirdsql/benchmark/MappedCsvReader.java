@@ -0,0 +1,137 @@
+/*
+ * Firebird Open Source AS3AP Benchmark suite
+ *
+ * Distributable under LGPL license.
+ * You may obtain a copy of the License at http://www.gnu.org/copyleft/lgpl.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * LGPL License for more details.
+ *
+ * This file was created by members of the firebird development team.
+ * All individual contributions remain the Copyright (C) of those
+ * individuals.  Contributors to this file are either listed here or
+ * can be obtained from a CVS history command.
+ *
+ * All rights reserved.
+ */
+package org.firebirdsql.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reader of the comma-separated data files. File is memory-mapped and fields
+ * are located directly in the mapped buffer.
+ * <p>
+ * Files larger than {@link #WINDOW_SIZE} are mapped window by window. Each
+ * line must fit into one window, which is always the case for AS3AP data.
+ */
+public class MappedCsvReader extends CsvReader {
+
+    /**
+     * Maximum size of the mapped region.
+     */
+    public static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private FileInputStream in;
+    private FileChannel channel;
+
+    private long start;
+    private long end;
+
+    private long bufferOffset;
+
+    /**
+     * Create reader for the whole file.
+     *
+     * @param file file to read.
+     *
+     * @throws IOException if file cannot be mapped.
+     */
+    public MappedCsvReader(File file) throws IOException {
+        this(file, 0, file.length());
+    }
+
+    /**
+     * Create reader for the part of the file. Part must start at the
+     * beginning of the line.
+     *
+     * @param file file to read.
+     * @param start offset of the first byte to read.
+     * @param end offset after the last byte to read.
+     *
+     * @throws IOException if file cannot be mapped.
+     */
+    public MappedCsvReader(File file, long start, long end) throws IOException {
+        this.in = new FileInputStream(file);
+        this.channel = in.getChannel();
+        this.start = start;
+        this.end = Math.min(end, channel.size());
+
+        map(start);
+    }
+
+    /**
+     * Map window of the file starting at the specified offset.
+     */
+    private void map(long offset) throws IOException {
+        long size = Math.min(WINDOW_SIZE, end - offset);
+
+        if (size < 0)
+            size = 0;
+
+        MappedByteBuffer mapped = channel.map(
+            FileChannel.MapMode.READ_ONLY, offset, size);
+
+        buffer = mapped;
+        bufferOffset = offset;
+        bufferLimit = (int)size;
+        position = 0;
+    }
+
+    protected boolean fill() throws IOException {
+        if (bufferOffset + bufferLimit >= end)
+            return false;
+
+        if (position == 0 && bufferLimit > 0)
+            throw new IOException("Line at offset " + bufferOffset + 
+                " is longer than " + WINDOW_SIZE + " bytes.");
+
+        map(bufferOffset + position);
+
+        return true;
+    }
+
+    /**
+     * Get offset in the file right after the current line.
+     *
+     * @return offset in bytes.
+     */
+    public long getPosition() {
+        return bufferOffset + position;
+    }
+
+    public long getBytesRead() {
+        return getPosition() - start;
+    }
+
+    /**
+     * Close this reader.
+     *
+     * @throws IOException if file cannot be closed.
+     */
+    public void close() throws IOException {
+        buffer = null;
+
+        try {
+            channel.close();
+        } finally {
+            in.close();
+        }
+    }
+}
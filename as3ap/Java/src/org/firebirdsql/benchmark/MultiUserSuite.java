@@ -18,6 +18,8 @@
  */
 package org.firebirdsql.benchmark;
 
+import java.sql.SQLException;
+
 import junit.framework.*;
 
 
@@ -28,6 +30,9 @@ import junit.framework.*;
  */
 public final class MultiUserSuite extends BenchmarkSuite {
     
+    /**
+     * Key range for the 40 MB data set, scaled to the actual data size.
+     */
     public static final int KEY_RANGE = 100 * 1000;
     
     private BenchmarkListener listener;
@@ -44,8 +49,8 @@ public final class MultiUserSuite extends BenchmarkSuite {
         return BenchmarkConfiguration.getConfiguration().getUserCount();
     }
     
-    protected int getKeyRange() {
-        return KEY_RANGE;
+    protected int getKeyRange() throws SQLException {
+        return getFixture().getDataScale().scale(KEY_RANGE);
     }
     
     /** 
@@ -59,21 +64,216 @@ public final class MultiUserSuite extends BenchmarkSuite {
         return false;
     }
     
+    private UserScheduler createScheduler(String name) {
+        return new UserScheduler(name, getDatabaseManager().getConfig());
+    }
+    
+    /**
+     * Run mainstream test as a single user and wait until it finishes.
+     * 
+     * @param name name of the user thread.
+     * @param test test to run.
+     * @param result result to which test is reported.
+     * 
+     * @throws Exception if test failed.
+     */
+    private void runMainstream(String name, Test test, TestResult result) 
+        throws Exception 
+    {
+        UserScheduler scheduler = createScheduler(name);
+        scheduler.start(test, result);
+        scheduler.drain(0);
+    }
+    
     public class Suite extends TestCase {
+        
+        /**
+         * Monitor of the carrier threads when users run on virtual threads.
+         */
+        private VirtualThreadMonitor threadMonitor;
+        
+        /**
+         * Writer of the time series or <code>null</code> if it is not
+         * configured.
+         */
+        private TimeSeriesSampler sampler;
+        
         public Suite(String name) {
             super(name);
         }
         
         public void testMultiUser() throws Exception {
+            int threadMode = getDatabaseManager().getConfig().getUserThreadMode();
+            
+            if (threadMode == BenchmarkConfiguration.VIRTUAL_USER_THREADS) {
+                threadMonitor = new VirtualThreadMonitor();
+                threadMonitor.start();
+            }
+            
+            if (getDatabaseManager().getConfig().getSampleInterval() > 0) {
+                sampler = new TimeSeriesSampler(getDatabaseManager().getConfig());
+                sampler.start();
+                
+                System.out.println("Writing time series to " + sampler.getFile());
+            }
+            
+            try {
+                runMultiUser();
+            } finally {
+                if (threadMonitor != null)
+                    threadMonitor.stop();
+                
+                threadMonitor = null;
+                
+                if (sampler != null) {
+                    sampler.mark("end");
+                    sampler.stop();
+                }
+                
+                sampler = null;
+            }
+        }
+        
+        /**
+         * Mark start of the step in the time series.
+         * 
+         * @param step number of the step.
+         */
+        private void startStep(int step) {
+            if (sampler != null)
+                sampler.mark("step " + step);
+        }
+        
+        /**
+         * Make background users workers of the open-loop test, if it is
+         * configured.
+         * 
+         * @param bgTests background users.
+         * 
+         * @return schedule shared by the users or <code>null</code> if users
+         * run in closed loop.
+         */
+        private ArrivalSchedule createSchedule(BackgroundMultiUserTest[] bgTests) {
+            BenchmarkConfiguration config = getDatabaseManager().getConfig();
+            
+            if (!config.isOpenLoop())
+                return null;
+            
+            ArrivalSchedule schedule = new ArrivalSchedule(config);
+            
+            for (int i = 0; i < bgTests.length; i++) {
+                bgTests[i].setArrivalSchedule(schedule);
+            }
+            
+            return schedule;
+        }
+        
+        /**
+         * Stop the background users and wait until they finish.
+         */
+        private void stopBackground(BackgroundMultiUserTest[] bgTests, 
+            UserScheduler users, ArrivalSchedule schedule) throws Exception 
+        {
+            if (schedule != null)
+                schedule.stop();
+            
+            for (int i = 0; i < bgTests.length; i++) {
+                bgTests[i].stop();
+            }
+            
+            users.drain(getDatabaseManager().getConfig().getUserDrainTimeout());
+            
+            if (schedule != null)
+                System.out.println("Background users " + schedule + ".");
+        }
+        
+        /**
+         * Start recording latencies of the operations into new statistics.
+         * 
+         * @param name name of the phase.
+         * 
+         * @return statistics of the phase.
+         */
+        private LatencyStatistics startLatencyPhase(String name) {
+            LatencyStatistics statistics = new LatencyStatistics(name,
+                getDatabaseManager().getConfig().getLatencyExpectedInterval());
+            
+            getFixture().setLatencyStatistics(statistics);
+            
+            if (sampler != null)
+                sampler.setStatistics(statistics);
+            
+            return statistics;
+        }
+        
+        private void finishLatencyPhase(LatencyStatistics statistics) {
+            getFixture().setLatencyStatistics(null);
+            
+            if (sampler != null)
+                sampler.setStatistics(null);
+            
+            statistics.print(System.out);
+        }
+        
+        /**
+         * Let the background users warm up until their operation is in 
+         * steady state or for the full background duration when steady 
+         * state is not detected. Performance measurement that follows runs
+         * for its full duration in both cases.
+         * 
+         * @param statistics statistics of the phase.
+         * @param operation latency name of the background operation.
+         */
+        private void runBackground(LatencyStatistics statistics, 
+            String operation) throws InterruptedException 
+        {
+            BenchmarkConfiguration config = getDatabaseManager().getConfig();
+            
+            if (config.isSteadyStateDetection())
+                awaitSteadyState(statistics, operation, 
+                    config.getBackgroundMinDuration(), 
+                    config.getBackgroundTestDuration());
+            else
+                Thread.sleep(config.getBackgroundTestDuration());
+        }
+        
+        private void awaitSteadyState(LatencyStatistics statistics, 
+            String operation, long minDuration, long maxDuration) 
+            throws InterruptedException 
+        {
+            SteadyStateDetector detector = 
+                new SteadyStateDetector(getDatabaseManager().getConfig());
+            
+            long start = System.currentTimeMillis();
+            
+            boolean steady = detector.awaitSteadyState(statistics, 
+                new String[] {operation}, minDuration, maxDuration);
+            
+            long elapsed = (System.currentTimeMillis() - start) / 1000;
+            
+            System.out.println((steady ? "Steady state of " : "No steady state of ") + 
+                operation + " after " + elapsed + " s, " + detector);
+        }
+        
+        private String getThreadStatistics() {
+            return threadMonitor != null ? ", " + threadMonitor : "";
+        }
+        
+        private void runMultiUser() throws Exception {
             
             TestResult testResult = new TestResult();
             testResult.addListener(listener);
             
             // Step 1
+            startStep(1);
+            getFixture().createLoadTest("testBackupUpdates").run(testResult);
             
             System.out.println("step 1 completed");
             
             // Step 2
+            startStep(2);
+            
+            LatencyStatistics irLatency = startLatencyPhase("with IR background");
             
             BackgroundMultiUserTest[] bgTests = 
                 new BackgroundMultiUserTest[getUserCount()];
@@ -82,113 +282,127 @@ public final class MultiUserSuite extends BenchmarkSuite {
                 bgTests[i] = getFixture().createBackgroundMultiUserTest("testIrSelect", getKeyRange());
             }
             
+            ArrivalSchedule bgIrSchedule = createSchedule(bgTests);
             
-            ActiveBenchmarkSuite bgIrSuite = new ActiveBenchmarkSuite();
+            UserScheduler bgIrUsers = createScheduler("bg-ir");
             for (int i = 0; i < bgTests.length; i++) {
-                bgIrSuite.addTest(bgTests[i]);
+                bgIrUsers.start(bgTests[i], testResult);
             }
             
-            bgIrSuite.run(testResult);
+            System.out.println("Started " + bgIrUsers.getUserCount() + " users.");
             
-            Thread.sleep(getDatabaseManager().getConfig().getBackgroundTestDuration());
+            runBackground(irLatency, bgTests[0].getIrSelectLatencyName());
             
-            System.out.println("step 2 completed");
+            System.out.println("step 2 completed, " + 
+                bgIrUsers.getLiveCount() + " users running");
             
-            // Step 3          
+            // Step 3
+            startStep(3);
             
             MainstreamMultiUserTest perfIrTest = 
                 getFixture().createMainstreamMultiUserTest("testIrSelect", getKeyRange(), 
                     getDatabaseManager().getConfig().getPerformanceDuration());
                     
-            perfIrTest.run(testResult);
+            runMainstream("perf-ir", perfIrTest, testResult);
             
-            System.out.println("step 3 completed: " + perfIrTest.getThroughput() + " fetches");
+            System.out.println("step 3 completed: " + perfIrTest.getThroughput() + " fetches" +
+                getThreadStatistics());
             
             // Step 4
+            startStep(4);
             bgTests[0].stop();
             
             Test crossSectionTest = 
                 getFixture().createMainstreamMultiUserTest("testCrossSection", getKeyRange(), 0);
-            crossSectionTest.run(testResult);
+            runMainstream("cross-section", crossSectionTest, testResult);
             
             System.out.println("step 4 completed");
             
             // Step 5
-            for (int i = 0; i < bgTests.length; i++) {
-                bgTests[i].stop();
-            }
+            startStep(5);
+            stopBackground(bgTests, bgIrUsers, bgIrSchedule);
             
-            bgIrSuite.waitSuiteCompletion();
+            finishLatencyPhase(irLatency);
             
             System.out.println("background suite stopped.");
             
             Test checkTest = 
                 getFixture().createMainstreamMultiUserTest("testCheck", 0, 0);
-            checkTest.run(testResult);
+            runMainstream("check", checkTest, testResult);
             
             System.out.println("step 5 completed");
             
             // Step 6
+            startStep(6);
             getFixture().createLoadTest("testRestoreUpdates").run(testResult);
             
             System.out.println("step 6 completed");
             
             // Step 7
+            startStep(7);
             checkTest = getFixture().createMainstreamMultiUserTest("testCheck", 0, 0);
                 
-            checkTest.run(testResult);
+            runMainstream("check", checkTest, testResult);
             
             getFixture().recreateTempUpdates();
             
             System.out.println("step 7 completed");
             
             // Step 8
+            startStep(8);
+            
+            LatencyStatistics oltpLatency = startLatencyPhase("with OLTP background");
             
             for (int i = 0; i < bgTests.length; i++) {
                 bgTests[i] = getFixture().createBackgroundMultiUserTest("testOltpUpdate", getKeyRange());
             }
             
-            ActiveBenchmarkSuite bgOltpSuite = new ActiveBenchmarkSuite();
+            ArrivalSchedule bgOltpSchedule = createSchedule(bgTests);
+            
+            UserScheduler bgOltpUsers = createScheduler("bg-oltp");
             for (int i = 0; i < bgTests.length; i++) {
-                bgOltpSuite.addTest(bgTests[i]);
+                bgOltpUsers.start(bgTests[i], testResult);
             }
             
-            bgOltpSuite.run(testResult);
+            System.out.println("Started " + bgOltpUsers.getUserCount() + " users.");
             
-            Thread.sleep(getDatabaseManager().getConfig().getBackgroundTestDuration());
+            runBackground(oltpLatency, bgTests[0].getOltpUpdateLatencyName());
             
-            System.out.println("step 8 completed");
+            System.out.println("step 8 completed, " + 
+                bgOltpUsers.getLiveCount() + " users running");
             
             // Step 9
+            startStep(9);
             perfIrTest = getFixture().createMainstreamMultiUserTest("testIrSelect", getKeyRange(), 
                     getDatabaseManager().getConfig().getPerformanceDuration());
 
-            perfIrTest.run(testResult);
+            runMainstream("perf-ir", perfIrTest, testResult);
             
-            System.out.println("step 9 completed: " + perfIrTest.getThroughput());
+            System.out.println("step 9 completed: " + perfIrTest.getThroughput() +
+                getThreadStatistics());
             
             // Step 10
+            startStep(10);
             bgTests[0].stop();
             
             System.out.println("One background test stopped.");
             
             crossSectionTest = 
                 getFixture().createMainstreamMultiUserTest("testCrossSection", getKeyRange(), 0);
-            crossSectionTest.run(testResult);
+            runMainstream("cross-section", crossSectionTest, testResult);
             
             System.out.println("step 10 completed");
             
             // Step 11
+            startStep(11);
             
-            for (int i = 0; i < bgTests.length; i++) {
-                bgTests[i].stop();
-            }
+            stopBackground(bgTests, bgOltpUsers, bgOltpSchedule);
             
-            bgOltpSuite.waitSuiteCompletion();
+            finishLatencyPhase(oltpLatency);
             
             checkTest = getFixture().createMainstreamMultiUserTest("testCheck", 0, 0);
 
-            checkTest.run(testResult);
+            runMainstream("check", checkTest, testResult);
             
             System.out.println("step 11 completed");
         }
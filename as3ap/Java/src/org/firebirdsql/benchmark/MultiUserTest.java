@@ -24,8 +24,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.ArrayList;
 import java.util.Random;
 
 /**
@@ -62,6 +61,51 @@ public abstract class MultiUserTest extends BenchmarkTest {
     public static final String SEL_100_RND_KEY_COL = SEL_100_RND_TABLE + "." + KEY_COL;
     public static final String SEL_100_RND_DOUBLE_COL = SEL_100_RND_TABLE + "." + DOUBLE_COL;
 
+    /*
+     * Statements of the background operations are built once, so that the
+     * operation loop does not allocate anything in the benchmark itself.
+     */
+    private static final String OLTP_UPDATE_SQL = ""
+        + "UPDATE " + UPDATES_TABLE + " "
+        + "SET " + SIGNED_COL + " = " + SIGNED_COL + " + 1 "
+        + "WHERE " + KEY_COL + " = ?";
+
+    private static final String IR_SELECT_SQL = ""
+        + "SELECT " 
+        + KEY_COL + ", " + CODE_COL + ", " + DATE_COL + ", "
+        + SIGNED_COL + ", " + NAME_COL + " "
+        + "FROM " + UPDATES_TABLE + " "
+        + "WHERE " + KEY_COL + " = ?";
+
+    private static final Fetcher IR_SELECT_FETCHER = new Fetcher(new String[]{
+        KEY_COL, CODE_COL, DATE_COL, SIGNED_COL, NAME_COL
+    });
+
+    private static final Object[] NO_PARAMS = new Object[0];
+
+    /*
+     * Operations with recorded latency.
+     */
+    private static final int OLTP_UPDATE = 0;
+    private static final int IR_SELECT = 1;
+    private static final int MODE_TINY = 2;
+    private static final int MODE_100K = 3;
+    private static final int SELECT_1_NON_CLUSTERED = 4;
+    private static final int SIMPLE_REPORT = 5;
+    private static final int SELECT_100_SEQUENCE = 6;
+    private static final int SELECT_100_RANDOM = 7;
+    private static final int MODIFY_100_SEQUENCE = 8;
+    private static final int MODIFY_100_RANDOM = 9;
+    private static final int UNMODIFY_100_SEQUENCE = 10;
+    private static final int UNMODIFY_100_RANDOM = 11;
+
+    private static final String[] OPERATION_NAMES = new String[] {
+        "oltp update", "ir select", "mode tiny", "mode 100k",
+        "select 1 non-clustered", "simple report", "select 100 sequence",
+        "select 100 random", "modify 100 sequence", "modify 100 random",
+        "unmodify 100 sequence", "unmodify 100 random"
+    };
+
     private int keyRange;
 
     public MultiUserTest(String name) {
@@ -82,19 +126,210 @@ public abstract class MultiUserTest extends BenchmarkTest {
         this.keyRange = keyRange;
     }
     
-    private HashSet statements = new HashSet();
+    private ArrayList statements = new ArrayList();
     private Random rnd;
     
+    /**
+     * Statements kept open during the test or <code>null</code> if each
+     * statement is closed after the operation.
+     */
+    private StatementCache statementCache;
+    
+    /**
+     * Result sets of the cached statements, closed after the operation.
+     */
+    private ArrayList resultSets = new ArrayList();
+    
+    /**
+     * Tracker of the modified rows or <code>null</code> if rows are not
+     * tracked.
+     */
+    private UpdatesTracker tracker;
+    
+    /**
+     * Statistics of the current phase or <code>null</code> if latencies
+     * are not recorded.
+     */
+    private LatencyStatistics latencyStatistics;
+    
+    /**
+     * Histograms of this user, created on the first execution of the
+     * operation.
+     */
+    private LatencyHistogram[] latencies = 
+        new LatencyHistogram[OPERATION_NAMES.length];
+    
+    private long intendedStart;
+    private boolean intendedStartSet;
+    
+    /**
+     * Operation that is being executed, <code>-1</code> if none.
+     */
+    private int currentOperation = -1;
+    
     protected void setUp() throws Exception {
         super.setUp();
         
-        rnd = new Random();
-        
         getConnection().setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        
+        StatementCache cache = null;
+        
+        int cacheSize = getDatabaseManager().getConfig().getStatementCacheSize();
+        if (cacheSize > 0)
+            cache = new StatementCache(getConnection(), cacheSize);
+        
+        init(getFixture().getUpdatesTracker(), cache, 
+            getFixture().getLatencyStatistics());
+    }
+    
+    /**
+     * Initialize state of the operations, called from {@link #setUp()} and
+     * by {@link OperationAllocationBenchmark} which runs the operations
+     * without the suite.
+     * 
+     * @param tracker tracker of the modified rows or <code>null</code>.
+     * @param statementCache cache of the statements or <code>null</code>.
+     * @param latencyStatistics statistics of the latencies or 
+     * <code>null</code>.
+     */
+    void init(UpdatesTracker tracker, StatementCache statementCache,
+        LatencyStatistics latencyStatistics) 
+    {
+        this.rnd = new Random();
+        this.tracker = tracker;
+        this.statementCache = statementCache;
+        this.latencyStatistics = latencyStatistics;
+    }
+    
+    /**
+     * Set time at which the next operation was supposed to start, its
+     * latency is measured from this time instead of its actual start. Used
+     * by the open-loop test, where latency includes waiting for a free user
+     * and no correction is needed.
+     * 
+     * @param nanos scheduled start, value of {@link System#nanoTime()}.
+     */
+    protected void setIntendedStart(long nanos) {
+        intendedStart = nanos;
+        intendedStartSet = true;
+    }
+    
+    /**
+     * Get name under which latency of the operation is recorded.
+     * 
+     * @param operation name of the operation.
+     * 
+     * @return name of the latency histogram.
+     */
+    protected String getLatencyName(String operation) {
+        return operation;
+    }
+    
+    /**
+     * Get name under which latencies of the information retrieval select
+     * of this user are recorded.
+     */
+    String getIrSelectLatencyName() {
+        return getLatencyName(OPERATION_NAMES[IR_SELECT]);
+    }
+    
+    /**
+     * Get name under which latencies of the OLTP update of this user are
+     * recorded.
+     */
+    String getOltpUpdateLatencyName() {
+        return getLatencyName(OPERATION_NAMES[OLTP_UPDATE]);
+    }
+    
+    /**
+     * Mark start of the operation.
+     * 
+     * @param operation operation, for example {@link #IR_SELECT}.
+     * 
+     * @return start time, value of {@link System#nanoTime()}.
+     */
+    private long startOperation(int operation) {
+        currentOperation = operation;
+        
+        return System.nanoTime();
+    }
+    
+    private void recordLockConflict() {
+        if (currentOperation != -1 && latencyStatistics != null)
+            latencyStatistics.recordLockConflict(
+                getLatencyName(OPERATION_NAMES[currentOperation]));
+    }
+    
+    /**
+     * Record latency of the operation that finished now.
+     * 
+     * @param operation operation, for example {@link #IR_SELECT}.
+     * @param start start of the operation, value of 
+     * {@link System#nanoTime()}.
+     */
+    private void recordLatency(int operation, long start) {
+        long now = System.nanoTime();
+        
+        currentOperation = -1;
+        
+        boolean intended = intendedStartSet;
+        if (intended) {
+            start = intendedStart;
+            intendedStartSet = false;
+        }
+        
+        if (latencyStatistics == null)
+            return;
+        
+        LatencyHistogram histogram = latencies[operation];
+        if (histogram == null) {
+            histogram = latencyStatistics.createRecorder(
+                getLatencyName(OPERATION_NAMES[operation]));
+            latencies[operation] = histogram;
+        }
+        
+        long micros = (now - start) / 1000;
+        
+        if (intended)
+            histogram.record(micros);
+        else
+            histogram.recordCorrected(micros, latencyStatistics.getExpectedInterval());
     }
     
     protected void tearDown() throws Exception {
-        super.tearDown();
+        // operation did not finish, test failed in it
+        if (currentOperation != -1 && latencyStatistics != null)
+            latencyStatistics.recordError(
+                getLatencyName(OPERATION_NAMES[currentOperation]));
+        
+        try {
+            if (statementCache != null)
+                statementCache.close();
+        } finally {
+            statementCache = null;
+            super.tearDown();
+        }
+    }
+    
+    /**
+     * Prepare statement. Statement is taken from the statement cache when
+     * it is configured, otherwise new statement is prepared and closed in
+     * {@link #releaseStatements()}.
+     * 
+     * @param sql SQL statement.
+     * 
+     * @return prepared statement.
+     * 
+     * @throws SQLException if statement cannot be prepared.
+     */
+    protected PreparedStatement prepareStatement(String sql) throws SQLException {
+        if (statementCache != null)
+            return statementCache.prepareStatement(sql);
+        
+        PreparedStatement stmt = getConnection().prepareStatement(sql);
+        statements.add(stmt);
+        
+        return stmt;
     }
     
     /**
@@ -112,12 +347,11 @@ public abstract class MultiUserTest extends BenchmarkTest {
     protected ResultSet executeQuery(String sql, Object[] params) throws SQLException {
         
         if (USE_PREPARED_STATEMENTS) {
-            PreparedStatement stmt = getConnection().prepareStatement(sql);
-            statements.add(stmt);
+            PreparedStatement stmt = prepareStatement(sql);
             
             setParams(stmt, params);
             
-            return stmt.executeQuery();
+            return executeQuery(stmt);
         } else {
             Statement stmt = getConnection().createStatement();
             statements.add(stmt);
@@ -125,6 +359,39 @@ public abstract class MultiUserTest extends BenchmarkTest {
             return stmt.executeQuery(sql);
         }
     }
+    
+    /**
+     * Execute query with one integer parameter. Parameter is bound with
+     * {@link PreparedStatement#setInt(int, int)}, so no wrapper object is
+     * created for it.
+     * 
+     * @param sql SQL query to execute.
+     * @param param value of the parameter.
+     * 
+     * @return instance of {@link ResultSet} corresponding to the specified
+     * query.
+     * 
+     * @throws SQLException if something went wrong.
+     */
+    protected ResultSet executeQuery(String sql, int param) throws SQLException {
+        if (!USE_PREPARED_STATEMENTS)
+            return executeQuery(sql, new Object[] {Integer.valueOf(param)});
+        
+        PreparedStatement stmt = prepareStatement(sql);
+        
+        stmt.setInt(1, param);
+        
+        return executeQuery(stmt);
+    }
+    
+    private ResultSet executeQuery(PreparedStatement stmt) throws SQLException {
+        ResultSet rs = stmt.executeQuery();
+        
+        if (statementCache != null)
+            resultSets.add(rs);
+        
+        return rs;
+    }
 
     /**
      * Execute update. This method tries to hide the way statement is executed.
@@ -138,8 +405,7 @@ public abstract class MultiUserTest extends BenchmarkTest {
     protected void executeUpdate(String sql, Object[] params) throws SQLException {
         try {
             if (USE_PREPARED_STATEMENTS) {
-                PreparedStatement stmt = getConnection().prepareStatement(sql);
-                statements.add(stmt);
+                PreparedStatement stmt = prepareStatement(sql);
                 
                 setParams(stmt, params);
                 
@@ -153,14 +419,50 @@ public abstract class MultiUserTest extends BenchmarkTest {
         } catch(SQLException ex) {
             
             // ignore deadlocks... 
-            if (ex.getErrorCode() != DEADLOCK_ERROR_CODE &&
-                ex.getErrorCode() != DEADLOCK_ERROR_CODE2 &&
-                ex.getErrorCode() != LOCK_CONFLICT_ERROR_CODE
-            )
+            if (!isLockConflict(ex))
                 throw ex;
+            
+            recordLockConflict();
         }
     }    
     
+    /**
+     * Execute update with one integer parameter, see 
+     * {@link #executeQuery(String, int)}.
+     * 
+     * @param sql SQL statement to execute.
+     * @param param value of the parameter.
+     * 
+     * @throws SQLException if something went wrong.
+     */
+    protected void executeUpdate(String sql, int param) throws SQLException {
+        if (!USE_PREPARED_STATEMENTS) {
+            executeUpdate(sql, new Object[] {Integer.valueOf(param)});
+            return;
+        }
+        
+        try {
+            PreparedStatement stmt = prepareStatement(sql);
+            
+            stmt.setInt(1, param);
+            
+            stmt.execute();
+        } catch(SQLException ex) {
+            
+            // ignore deadlocks... 
+            if (!isLockConflict(ex))
+                throw ex;
+            
+            recordLockConflict();
+        }
+    }
+    
+    private static boolean isLockConflict(SQLException ex) {
+        return ex.getErrorCode() == DEADLOCK_ERROR_CODE ||
+            ex.getErrorCode() == DEADLOCK_ERROR_CODE2 ||
+            ex.getErrorCode() == LOCK_CONFLICT_ERROR_CODE;
+    }
+    
     /**
      * Set parameters of prepared statement.
      * 
@@ -176,14 +478,25 @@ public abstract class MultiUserTest extends BenchmarkTest {
     }
     
     /**
-     * Release all statements.
+     * Release all statements. Cached statements stay open, only their 
+     * result sets are closed.
      * 
      * @throws SQLException if something went wrong.
      */
     protected void releaseStatements() throws SQLException {
-        Iterator iter = statements.iterator();
-        while (iter.hasNext()) {
-            Statement stmt = (Statement) iter.next();
+        for (int i = 0; i < resultSets.size(); i++) {
+            try {
+                ((ResultSet)resultSets.get(i)).close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+                // bad luck
+            }
+        }
+        
+        resultSets.clear();
+        
+        for (int i = 0; i < statements.size(); i++) {
+            Statement stmt = (Statement) statements.get(i);
             
             try {
                 stmt.close();
@@ -197,49 +510,46 @@ public abstract class MultiUserTest extends BenchmarkTest {
     }
     
     protected void doOltpUpdate() throws Exception {
+        long start = startOperation(OLTP_UPDATE);
         try {
-            executeUpdate(""
-                + "UPDATE " + UPDATES_TABLE + " "
-                + "SET " + SIGNED_COL + " = " + SIGNED_COL + " + 1 "
-                + "WHERE " + KEY_COL + " = ?", 
-                new Object[]{ new Integer(rnd.nextInt(keyRange))}
-            );
+            int key = rnd.nextInt(keyRange);
+            
+            if (tracker != null)
+                tracker.markKey(key);
+            
+            executeUpdate(OLTP_UPDATE_SQL, key);
         } finally {
             releaseStatements();
         }
+        
+        recordLatency(OLTP_UPDATE, start);
     }
     
     protected int doIrSelect() throws Exception {
+        long start = startOperation(IR_SELECT);
+        int result;
         try {
-            ResultSet rs = executeQuery(""
-                + "SELECT " 
-                + KEY_COL + ", " + CODE_COL + ", " + DATE_COL + ", "
-                + SIGNED_COL + ", " + NAME_COL + " "
-                + "FROM " + UPDATES_TABLE + " "
-                + "WHERE " + KEY_COL + " = ?",
-                new Object[]{ new Integer(rnd.nextInt(keyRange) + 1)}
-            );
+            ResultSet rs = executeQuery(IR_SELECT_SQL, rnd.nextInt(keyRange) + 1);
             
-            Fetcher f = new Fetcher(new String[]{
-                KEY_COL, CODE_COL, DATE_COL, SIGNED_COL, NAME_COL
-            });
-            
-            int result = f.fetchResultSet(rs);
+            result = IR_SELECT_FETCHER.fetchResultSet(rs);
             
             rs.close();
-            
-            return result;
         } finally {
             releaseStatements();
         }
+        
+        recordLatency(IR_SELECT, start);
+        
+        return result;
     }
     
     protected void doModeTiny() throws Exception {
+        long start = startOperation(MODE_TINY);
         try {
             ResultSet rs = executeQuery(""
                 + "SELECT " + KEY_COL + " "
                 + "FROM " + TINY_TABLE,
-                new Object[0]
+                NO_PARAMS
             );
             
             Fetcher f = new Fetcher(new String[]{
@@ -251,17 +561,20 @@ public abstract class MultiUserTest extends BenchmarkTest {
         } finally {
             releaseStatements();
         }
+        
+        recordLatency(MODE_TINY, start);
     }
     
     protected void doMode100k() throws Exception {
+        long start = startOperation(MODE_100K);
         try {
             getConnection().setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
             
             ResultSet rs = executeQuery(""
                 + "SELECT " + COLUMNS_LIST + " "
                 + "FROM " + HUNDRED_TABLE + " "
-                + "WHERE " + KEY_COL + " <= 1000",
-                new Object[0]
+                + "WHERE " + KEY_COL + " <= " + getDataScale().scale(1000),
+                NO_PARAMS
             );
             
             Fetcher f = new Fetcher(COLUMNS_ARRAY);
@@ -270,9 +583,12 @@ public abstract class MultiUserTest extends BenchmarkTest {
         } finally {
             releaseStatements();
         }
+        
+        recordLatency(MODE_100K, start);
     }
     
     protected void doSelect1NonClustered() throws Exception {
+        long start = startOperation(SELECT_1_NON_CLUSTERED);
         try {
             String sql = ""
                 + "SELECT " 
@@ -281,7 +597,7 @@ public abstract class MultiUserTest extends BenchmarkTest {
                 + "FROM " + UPDATES_TABLE + " "
                 + "WHERE " + CODE_COL + " = 'BENCHMARKS'";
                 
-            Object[] params = new Object[0];
+            Object[] params = NO_PARAMS;
             
             Fetcher f = new Fetcher(new String[]{
                 KEY_COL, INT_COL, SIGNED_COL, CODE_COL, DOUBLE_COL, NAME_COL
@@ -316,9 +632,12 @@ public abstract class MultiUserTest extends BenchmarkTest {
         } finally {
             releaseStatements();
         }
+        
+        recordLatency(SELECT_1_NON_CLUSTERED, start);
     }
     
     protected void doSimpleReport() throws Exception {
+        long start = startOperation(SIMPLE_REPORT);
         try {
             getConnection().setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
             
@@ -331,7 +650,7 @@ public abstract class MultiUserTest extends BenchmarkTest {
                 + "WHERE " + HUNDRED_KEY_COL + " = " + UPDATES_KEY_COL + " "
                 + "AND " + UPDATES_DECIM_COL + " > 980000000"
                 + ")",
-                new Object[0]
+                NO_PARAMS
             );
             
             Fetcher f = new Fetcher(new String[]{
@@ -342,46 +661,71 @@ public abstract class MultiUserTest extends BenchmarkTest {
         } finally {
             releaseStatements();
         }
+        
+        recordLatency(SIMPLE_REPORT, start);
     }
     
     protected void doSelect100Sequence() throws Exception {
+        long start = startOperation(SELECT_100_SEQUENCE);
         try {
             executeUpdate(""
                 + "INSERT INTO " + SEL_100_SEQ_TABLE + " "
                 + "SELECT * FROM " + UPDATES_TABLE + " "
-                + "WHERE " + UPDATES_KEY_COL + " BETWEEN 1001 AND 1100",
-                new Object[0]
+                + "WHERE " + UPDATES_KEY_COL + " " + getDataScale().between(1001, 1100),
+                NO_PARAMS
             );
         } finally {
             releaseStatements();
         }
+        
+        recordLatency(SELECT_100_SEQUENCE, start);
     }
     
     protected void doSelect100Random() throws Exception {
+        long start = startOperation(SELECT_100_RANDOM);
         try {
             executeUpdate(""
                 + "INSERT INTO " + SEL_100_RND_TABLE + " "
                 + "SELECT * FROM " + UPDATES_TABLE + " "
-                + "WHERE " + UPDATES_INT_COL + " BETWEEN 1001 AND 1100",
-                new Object[0]
+                + "WHERE " + UPDATES_INT_COL + " " + getDataScale().between(1001, 1100),
+                NO_PARAMS
             );
         } finally {
             releaseStatements();
         }
+        
+        recordLatency(SELECT_100_RANDOM, start);
     }
     
-    private void updateUpdates(String whereColumn, boolean modify) throws Exception {
+    private void updateUpdates(String whereColumn, boolean modify, int operation) 
+        throws Exception 
+    {
+        long start = startOperation(operation);
         try {
+            if (tracker != null) {
+                DataScale scale = getDataScale();
+                
+                int low = scale.lowerBound(1001);
+                int high = scale.upperBound(1001, 1100);
+                
+                if (KEY_COL.equals(whereColumn))
+                    tracker.markKeyRange(low, high);
+                else
+                    tracker.markIntRange(low, high);
+            }
+            
             String sql = ""
                 + "UPDATE " + UPDATES_TABLE + " "
                 + "SET " + DOUBLE_COL + " = " + DOUBLE_COL + (modify ? "+" : "-") + " 100000000 "
-                + "WHERE " + whereColumn + " BETWEEN 1001 AND 1100"
+                + "WHERE " + whereColumn + " " + getDataScale().between(1001, 1100)
                 ;   
                 
-            executeUpdate(sql, new Object[0]);
+            executeUpdate(sql, NO_PARAMS);
         } finally {
             releaseStatements();
         }
+        
+        recordLatency(operation, start);
     }
     
     protected void doModify100Sequence() throws Exception {
@@ -391,21 +735,21 @@ public abstract class MultiUserTest extends BenchmarkTest {
         if (!connection.getAutoCommit())
             connection.setAutoCommit(false);
         
-        updateUpdates(KEY_COL, true);
+        updateUpdates(KEY_COL, true, MODIFY_100_SEQUENCE);
         
         connection.rollback();
     }
     
     protected void doModify100Random() throws Exception {
-        updateUpdates(INT_COL, true);
+        updateUpdates(INT_COL, true, MODIFY_100_RANDOM);
     }
     
     protected void doUnmodify100Sequence() throws Exception {
-        updateUpdates(KEY_COL, false);
+        updateUpdates(KEY_COL, false, UNMODIFY_100_SEQUENCE);
     }
     
     protected void doUnmodify100Random() throws Exception {
-        updateUpdates(INT_COL, false);
+        updateUpdates(INT_COL, false, UNMODIFY_100_RANDOM);
     }
     
     protected void doCheck100Sequence() throws Exception {
@@ -415,7 +759,7 @@ public abstract class MultiUserTest extends BenchmarkTest {
                 + "FROM " + UPDATES_TABLE + ", " + SEL_100_SEQ_TABLE + " "
                 + "WHERE " + UPDATES_KEY_COL + " = " + SEL_100_SEQ_KEY_COL + " "
                 + "AND NOT " + UPDATES_DOUBLE_COL + " = " + SEL_100_SEQ_DOUBLE_COL,
-                new Object[0]
+                NO_PARAMS
             );
             
             assertTrue("Should have at least one row.", rs.next());
@@ -436,7 +780,7 @@ public abstract class MultiUserTest extends BenchmarkTest {
                 + "FROM " + UPDATES_TABLE + ", " + SEL_100_RND_TABLE + " "
                 + "WHERE " + UPDATES_KEY_COL + " = " + SEL_100_RND_KEY_COL + " "
                 + "AND NOT " + UPDATES_DOUBLE_COL + " = " + SEL_100_RND_DOUBLE_COL,
-                new Object[0]
+                NO_PARAMS
             );
             
             assertTrue("Should have at least one row.", rs.next());
@@ -0,0 +1,300 @@
+/*
+ * Firebird Open Source AS3AP Benchmark suite
+ *
+ * Distributable under LGPL license.
+ * You may obtain a copy of the License at http://www.gnu.org/copyleft/lgpl.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * LGPL License for more details.
+ *
+ * This file was created by members of the firebird development team.
+ * All individual contributions remain the Copyright (C) of those
+ * individuals.  Contributors to this file are either listed here or
+ * can be obtained from a CVS history command.
+ *
+ * All rights reserved.
+ */
+package org.firebirdsql.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that the operations of the background users do not allocate
+ * memory in the benchmark itself. Operations of {@link MultiUserTest} are
+ * executed with the statement cache and latency recording against a stub
+ * driver returning one row for each query, and the same driver calls are
+ * executed directly. Memory allocated by the thread is measured for both
+ * loops, difference is the allocation of the benchmark code and must be
+ * zero.
+ * <p>
+ * Allocated memory is measured by the <code>com.sun.management</code>
+ * extension of {@link java.lang.management.ThreadMXBean}, benchmark fails
+ * when it is not available. Escape analysis must be switched off, otherwise
+ * the compiler removes some of the stub driver allocations in one loop and
+ * not in the other one.
+ * <p>
+ * Usage: <code>java -XX:-DoEscapeAnalysis OperationAllocationBenchmark
+ * [operations]</code>, exits with non-zero status when the operations
+ * allocate.
+ */
+public class OperationAllocationBenchmark {
+
+    /**
+     * Allowed allocation per operation. Any object is bigger, so allocating
+     * operation always exceeds it.
+     */
+    private static final double MAX_BYTES_PER_OPERATION = 4;
+
+    private static final int KEY_RANGE = MultiUserTest.DEFAULT_KEY_RANGE;
+
+    private static final Integer ZERO = Integer.valueOf(0);
+
+    /**
+     * Stub of the driver, connection prepares always the same statement,
+     * each query returns the same result set with one row.
+     */
+    private static class StubDriver implements InvocationHandler {
+
+        private Connection connection;
+        private PreparedStatement statement;
+        private ResultSet resultSet;
+
+        private boolean rowFetched;
+
+        private StubDriver() {
+            ClassLoader loader = getClass().getClassLoader();
+
+            connection = (Connection)Proxy.newProxyInstance(loader,
+                new Class[] {Connection.class}, this);
+            statement = (PreparedStatement)Proxy.newProxyInstance(loader,
+                new Class[] {PreparedStatement.class}, this);
+            resultSet = (ResultSet)Proxy.newProxyInstance(loader,
+                new Class[] {ResultSet.class}, this);
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+
+            if (proxy == connection && name.equals("prepareStatement"))
+                return statement;
+
+            if (proxy == statement && name.equals("executeQuery")) {
+                rowFetched = false;
+                return resultSet;
+            }
+
+            if (proxy == resultSet && name.equals("next")) {
+                boolean hasRow = !rowFetched;
+                rowFetched = true;
+                return hasRow ? Boolean.TRUE : Boolean.FALSE;
+            }
+
+            if (proxy == resultSet && name.equals("getObject"))
+                return ZERO;
+
+            Class type = method.getReturnType();
+
+            if (type == Boolean.TYPE)
+                return Boolean.FALSE;
+            else
+            if (type == Integer.TYPE)
+                return ZERO;
+            else
+                return null;
+        }
+    }
+
+    /**
+     * Operations of the background users running without the suite.
+     */
+    private static class Operations extends MultiUserTest {
+
+        private Connection connection;
+
+        private Operations(Connection connection) {
+            super("allocation", KEY_RANGE);
+
+            this.connection = connection;
+
+            init(null, new StatementCache(connection, 16),
+                new LatencyStatistics("allocation", 0));
+        }
+
+        protected Connection getConnection() {
+            return connection;
+        }
+    }
+
+    private StubDriver driver = new StubDriver();
+    private Operations operations = new Operations(driver.connection);
+
+    private Random rnd = new Random();
+
+    private Method allocatedBytesMethod;
+    private Object threadBean;
+    private Object[] threadId;
+
+    private OperationAllocationBenchmark() throws Exception {
+        threadBean = ManagementFactory.getThreadMXBean();
+        threadId = new Object[] {Long.valueOf(Thread.currentThread().getId())};
+
+        Class beanClass = Class.forName("com.sun.management.ThreadMXBean");
+        if (!beanClass.isInstance(threadBean))
+            throw new UnsupportedOperationException(
+                "Thread allocation is not measured by this VM.");
+
+        allocatedBytesMethod = beanClass.getMethod(
+            "getThreadAllocatedBytes", new Class[] {Long.TYPE});
+    }
+
+    /**
+     * Check that escape analysis is switched off.
+     */
+    private static boolean isEscapeAnalysisDisabled() {
+        List vmArgs = ManagementFactory.getRuntimeMXBean().getInputArguments();
+
+        return vmArgs.contains("-XX:-DoEscapeAnalysis") ||
+            vmArgs.contains("-Xint");
+    }
+
+    private long getAllocatedBytes() throws Exception {
+        return ((Long)allocatedBytesMethod.invoke(threadBean, threadId))
+            .longValue();
+    }
+
+    /**
+     * Driver calls of {@link MultiUserTest#doOltpUpdate()} with the cached
+     * statement.
+     */
+    private void oltpUpdateDriver() throws Exception {
+        PreparedStatement stmt = driver.statement;
+
+        stmt.clearParameters();
+        stmt.setInt(1, rnd.nextInt(KEY_RANGE));
+        stmt.execute();
+    }
+
+    /**
+     * Driver calls of {@link MultiUserTest#doIrSelect()} with the cached
+     * statement.
+     */
+    private int irSelectDriver() throws Exception {
+        PreparedStatement stmt = driver.statement;
+
+        stmt.clearParameters();
+        stmt.setInt(1, rnd.nextInt(KEY_RANGE) + 1);
+
+        ResultSet rs = stmt.executeQuery();
+
+        int counter = 0;
+        while (rs.next()) {
+            for (int i = 0; i < 5; i++)
+                rs.getObject(i + 1);
+
+            counter++;
+        }
+
+        // closed by the operation and by releaseStatements()
+        rs.close();
+        rs.close();
+
+        return counter;
+    }
+
+    private void runOltpUpdate(int count, boolean driverOnly) throws Exception {
+        for (int i = 0; i < count; i++) {
+            if (driverOnly)
+                oltpUpdateDriver();
+            else
+                operations.doOltpUpdate();
+        }
+    }
+
+    private void runIrSelect(int count, boolean driverOnly) throws Exception {
+        for (int i = 0; i < count; i++) {
+            if (driverOnly)
+                irSelectDriver();
+            else
+                operations.doIrSelect();
+        }
+    }
+
+    /**
+     * Measure memory allocated by the loop.
+     *
+     * @return allocated bytes per operation.
+     */
+    private double measure(boolean irSelect, int count, boolean driverOnly)
+        throws Exception
+    {
+        long start = getAllocatedBytes();
+
+        if (irSelect)
+            runIrSelect(count, driverOnly);
+        else
+            runOltpUpdate(count, driverOnly);
+
+        return (double)(getAllocatedBytes() - start) / count;
+    }
+
+    /**
+     * Measure the operation and its driver calls.
+     *
+     * @return <code>true</code> if operation does not allocate.
+     */
+    private boolean run(String name, boolean irSelect, int count)
+        throws Exception
+    {
+        // warm-up, so that the compiled code is measured
+        for (int i = 0; i < 3; i++) {
+            measure(irSelect, count / 10, true);
+            measure(irSelect, count / 10, false);
+        }
+
+        double driverBytes = measure(irSelect, count, true);
+        double operationBytes = measure(irSelect, count, false);
+
+        double harnessBytes = operationBytes - driverBytes;
+        boolean passed = harnessBytes <= MAX_BYTES_PER_OPERATION;
+
+        System.out.println(name + ": driver " +
+            Math.round(driverBytes * 10) / 10.0 + " bytes/op, benchmark " +
+            Math.round(harnessBytes * 10) / 10.0 + " bytes/op" +
+            (passed ? "." : " - FAILED, limit is " +
+                MAX_BYTES_PER_OPERATION + " bytes/op."));
+
+        return passed;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int count = 1000 * 1000;
+
+        if (args.length > 0)
+            count = Integer.parseInt(args[0]);
+
+        if (!isEscapeAnalysisDisabled()) {
+            System.out.println("Run with -XX:-DoEscapeAnalysis, allocations " +
+                "of the stub driver are not comparable otherwise.");
+            System.exit(2);
+        }
+
+        OperationAllocationBenchmark benchmark =
+            new OperationAllocationBenchmark();
+
+        boolean passed = benchmark.run("OLTP update", false, count);
+        passed &= benchmark.run("IR select", true, count);
+
+        if (!passed)
+            System.exit(1);
+    }
+}
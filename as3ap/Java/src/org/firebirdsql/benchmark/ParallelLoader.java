@@ -0,0 +1,219 @@
+/*
+ * Firebird Open Source AS3AP Benchmark suite
+ *
+ * Distributable under LGPL license.
+ * You may obtain a copy of the License at http://www.gnu.org/copyleft/lgpl.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * LGPL License for more details.
+ *
+ * This file was created by members of the firebird development team.
+ * All individual contributions remain the Copyright (C) of those
+ * individuals.  Contributors to this file are either listed here or
+ * can be obtained from a CVS history command.
+ *
+ * All rights reserved.
+ */
+package org.firebirdsql.benchmark;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * This class loads several data files in parallel. Files are organized in
+ * chains, each chain is loaded in a separate thread using its own connection,
+ * and files within one chain are loaded one after another. This allows to
+ * respect dependencies between tables, for example <code>hundred</code>
+ * table references <code>updates</code> table and must be loaded after it.
+ */
+public class ParallelLoader {
+
+    private BenchmarkFixture fixture;
+    private int batchSize;
+
+    private List chains = new ArrayList();
+    private List tasks = new ArrayList();
+
+    private long totalDuration;
+
+    /**
+     * Create instance of this class.
+     *
+     * @param fixture fixture that loads the files.
+     * @param batchSize batch size passed to the
+     * {@link BenchmarkFixture#loadFile(File, Connection, String, int)} method.
+     */
+    public ParallelLoader(BenchmarkFixture fixture, int batchSize) {
+        this.fixture = fixture;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Add chain of files that must be loaded one after another.
+     *
+     * @param files files to load.
+     * @param insertSql insert statements corresponding to the files.
+     */
+    public void addChain(File[] files, String[] insertSql) {
+        LoadTask[] chain = new LoadTask[files.length];
+
+        for (int i = 0; i < files.length; i++) {
+            chain[i] = new LoadTask(files[i], insertSql[i]);
+            tasks.add(chain[i]);
+        }
+
+        chains.add(chain);
+    }
+
+    /**
+     * Add file that does not depend on any other file.
+     *
+     * @param file file to load.
+     * @param insertSql insert statement for the file.
+     */
+    public void add(File file, String insertSql) {
+        addChain(new File[]{file}, new String[]{insertSql});
+    }
+
+    /**
+     * Load all files and wait until all loader threads finish.
+     *
+     * @throws Exception first error reported by the loader threads.
+     */
+    public void load() throws Exception {
+        long start = System.currentTimeMillis();
+
+        LoadThread[] threads = new LoadThread[chains.size()];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new LoadThread((LoadTask[])chains.get(i));
+            threads[i].start();
+        }
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+
+        totalDuration = System.currentTimeMillis() - start;
+
+        for (int i = 0; i < threads.length; i++) {
+            Throwable error = threads[i].error;
+
+            if (error instanceof Exception)
+                throw (Exception)error;
+            else
+            if (error instanceof Error)
+                throw (Error)error;
+        }
+    }
+
+    /**
+     * Get total wall time of the last {@link #load()} call.
+     *
+     * @return duration in milliseconds.
+     */
+    public long getTotalDuration() {
+        return totalDuration;
+    }
+
+    /**
+     * Print per-file and total wall time.
+     *
+     * @param out stream to print to.
+     */
+    public void printStatistics(PrintStream out) {
+        out.println("Parallel load statistics:");
+
+        Iterator iter = tasks.iterator();
+        while (iter.hasNext()) {
+            LoadTask task = (LoadTask) iter.next();
+
+            out.println(task.file.getName() + " - " +
+                (task.finished ? "in " + task.duration + " ms." : "not loaded."));
+        }
+
+        out.println("Total - in " + totalDuration + " ms, " +
+            chains.size() + " thread(s).");
+    }
+
+    private static class LoadTask {
+        private File file;
+        private String insertSql;
+        private long duration;
+        private boolean finished;
+
+        private LoadTask(File file, String insertSql) {
+            this.file = file;
+            this.insertSql = insertSql;
+        }
+    }
+
+    private class LoadThread extends Thread {
+
+        private LoadTask[] chain;
+        private Throwable error;
+
+        private LoadThread(LoadTask[] chain) {
+            super("loader-" + chain[0].file.getName());
+            this.chain = chain;
+        }
+
+        public void run() {
+            try {
+                for (int i = 0; i < chain.length; i++) {
+                    long start = System.currentTimeMillis();
+
+                    loadFile(chain[i]);
+
+                    chain[i].duration = System.currentTimeMillis() - start;
+                    chain[i].finished = true;
+                }
+            } catch(Throwable ex) {
+                error = ex;
+            }
+        }
+
+        private void loadFile(LoadTask task) throws Exception {
+            if (fixture.isPartitioned(task.file, task.insertSql)) {
+                PartitionedLoader loader = new PartitionedLoader(fixture, 
+                    task.file, task.insertSql, 
+                    fixture.getConfig().getLoadPartitions(), batchSize, 
+                    fixture.getConfig().getLoadCommitInterval());
+                
+                try {
+                    loader.load();
+                } finally {
+                    loader.printStatistics(System.out);
+                }
+                
+                return;
+            }
+            
+            BenchmarkDatabaseManager manager = fixture.getManager();
+
+            Connection connection = manager.getConnection();
+            try {
+                connection.setAutoCommit(false);
+
+                fixture.loadFile(task.file, connection, task.insertSql, batchSize);
+
+                connection.commit();
+            } catch(Exception ex) {
+                connection.rollback();
+
+                throw ex;
+            } catch(Error ex) {
+                connection.rollback();
+
+                throw ex;
+            } finally {
+                manager.releaseConnection(connection);
+            }
+        }
+    }
+}
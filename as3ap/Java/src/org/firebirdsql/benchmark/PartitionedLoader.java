@@ -0,0 +1,260 @@
+/*
+ * Firebird Open Source AS3AP Benchmark suite
+ *
+ * Distributable under LGPL license.
+ * You may obtain a copy of the License at http://www.gnu.org/copyleft/lgpl.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * LGPL License for more details.
+ *
+ * This file was created by members of the firebird development team.
+ * All individual contributions remain the Copyright (C) of those
+ * individuals.  Contributors to this file are either listed here or
+ * can be obtained from a CVS history command.
+ *
+ * All rights reserved.
+ */
+package org.firebirdsql.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.sql.Connection;
+
+/**
+ * This class loads one data file using several threads. The file is split
+ * into byte ranges aligned to the line boundaries, each range is loaded by
+ * a separate worker using its own connection and transaction that is
+ * committed after configured number of rows.
+ */
+public class PartitionedLoader {
+
+    private BenchmarkFixture fixture;
+    private File file;
+    private String insertSql;
+    private int batchSize;
+    private int commitInterval;
+
+    private Worker[] workers;
+    private long totalDuration;
+
+    /**
+     * Create instance of this class.
+     *
+     * @param fixture fixture that loads the data.
+     * @param file file to load.
+     * @param insertSql SQL statement that will be used to insert data.
+     * @param partitions number of the parts into which the file is split.
+     * @param batchSize number of rows sent to the server in one batch.
+     * @param commitInterval number of rows after which each worker commits
+     * its transaction.
+     *
+     * @throws IOException if file cannot be split.
+     */
+    public PartitionedLoader(BenchmarkFixture fixture, File file,
+        String insertSql, int partitions, int batchSize, int commitInterval)
+        throws IOException
+    {
+        this.fixture = fixture;
+        this.file = file;
+        this.insertSql = insertSql;
+        this.batchSize = batchSize;
+        this.commitInterval = commitInterval;
+
+        long[] bounds = split(file, partitions);
+
+        workers = new Worker[bounds.length - 1];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i, bounds[i], bounds[i + 1]);
+        }
+    }
+
+    /**
+     * Split file into the specified number of parts. Each part starts at
+     * the beginning of the line, parts that would be empty are dropped.
+     *
+     * @param file file to split.
+     * @param partitions number of parts.
+     *
+     * @return array of offsets, part <code>i</code> starts at offset
+     * <code>i</code> and ends before offset <code>i + 1</code>.
+     *
+     * @throws IOException if file cannot be read.
+     */
+    public static long[] split(File file, int partitions) throws IOException {
+        long length = file.length();
+
+        if (partitions < 1)
+            partitions = 1;
+
+        long[] bounds = new long[partitions + 1];
+        int count = 1;
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            for (int i = 1; i < partitions; i++) {
+                long offset = length * i / partitions;
+
+                if (offset <= bounds[count - 1])
+                    continue;
+
+                // move to the beginning of the next line
+                raf.seek(offset - 1);
+
+                int b = raf.read();
+                while(b != -1 && b != '\n')
+                    b = raf.read();
+
+                offset = raf.getFilePointer();
+
+                if (offset >= length)
+                    break;
+
+                if (offset > bounds[count - 1])
+                    bounds[count++] = offset;
+            }
+        } finally {
+            raf.close();
+        }
+
+        bounds[count++] = length;
+
+        long[] result = new long[count];
+        System.arraycopy(bounds, 0, result, 0, count);
+
+        return result;
+    }
+
+    /**
+     * Load the file and wait until all workers finish.
+     *
+     * @throws Exception first error reported by the workers.
+     */
+    public void load() throws Exception {
+        long start = System.currentTimeMillis();
+
+        for (int i = 0; i < workers.length; i++) {
+            workers[i].start();
+        }
+
+        for (int i = 0; i < workers.length; i++) {
+            workers[i].join();
+        }
+
+        totalDuration = System.currentTimeMillis() - start;
+
+        for (int i = 0; i < workers.length; i++) {
+            Throwable error = workers[i].error;
+
+            if (error instanceof Exception)
+                throw (Exception)error;
+            else
+            if (error instanceof Error)
+                throw (Error)error;
+        }
+    }
+
+    /**
+     * Get total number of rows loaded by all workers.
+     *
+     * @return number of loaded rows.
+     */
+    public long getRowCount() {
+        long result = 0;
+
+        for (int i = 0; i < workers.length; i++) {
+            result += workers[i].rowCount;
+        }
+
+        return result;
+    }
+
+    /**
+     * Get wall time of the last {@link #load()} call.
+     *
+     * @return duration in milliseconds.
+     */
+    public long getTotalDuration() {
+        return totalDuration;
+    }
+
+    /**
+     * Print rows per second for each worker and for the whole file.
+     *
+     * @param out stream to print to.
+     */
+    public void printStatistics(PrintStream out) {
+        out.println("Partitioned load statistics for " + file.getName() + ":");
+
+        for (int i = 0; i < workers.length; i++) {
+            Worker worker = workers[i];
+
+            out.println("worker " + i +
+                " [" + worker.startOffset + ", " + worker.endOffset + ") - " +
+                worker.rowCount + " rows in " + worker.duration + " ms, " +
+                rowsPerSecond(worker.rowCount, worker.duration) + " rows/sec" +
+                (worker.error != null ? ", failed: " + worker.error : "."));
+        }
+
+        long rowCount = getRowCount();
+
+        out.println("Total - " + rowCount + " rows in " + totalDuration +
+            " ms, " + rowsPerSecond(rowCount, totalDuration) + " rows/sec, " +
+            workers.length + " worker(s).");
+    }
+
+    private static long rowsPerSecond(long rowCount, long duration) {
+        return duration > 0 ? rowCount * 1000 / duration : 0;
+    }
+
+    private class Worker extends Thread {
+
+        private long startOffset;
+        private long endOffset;
+
+        private int rowCount;
+        private long duration;
+        private Throwable error;
+
+        private Worker(int number, long start, long end) {
+            super("loader-" + file.getName() + "-" + number);
+
+            this.startOffset = start;
+            this.endOffset = end;
+        }
+
+        public void run() {
+            long startTime = System.currentTimeMillis();
+
+            BenchmarkDatabaseManager manager = fixture.getManager();
+            try {
+                Connection connection = manager.getConnection();
+                try {
+                    connection.setAutoCommit(false);
+
+                    rowCount = fixture.loadFile(file, startOffset, endOffset, connection,
+                        insertSql, batchSize, commitInterval);
+
+                    connection.commit();
+                } catch(Exception ex) {
+                    connection.rollback();
+
+                    throw ex;
+                } catch(Error ex) {
+                    connection.rollback();
+
+                    throw ex;
+                } finally {
+                    manager.releaseConnection(connection);
+                }
+            } catch(Throwable ex) {
+                error = ex;
+            } finally {
+                duration = System.currentTimeMillis() - startTime;
+            }
+        }
+    }
+}
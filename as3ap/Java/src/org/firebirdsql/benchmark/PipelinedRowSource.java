@@ -0,0 +1,327 @@
+/*
+ * Firebird Open Source AS3AP Benchmark suite
+ *
+ * Distributable under LGPL license.
+ * You may obtain a copy of the License at http://www.gnu.org/copyleft/lgpl.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * LGPL License for more details.
+ *
+ * This file was created by members of the firebird development team.
+ * All individual contributions remain the Copyright (C) of those
+ * individuals.  Contributors to this file are either listed here or
+ * can be obtained from a CVS history command.
+ *
+ * All rights reserved.
+ */
+package org.firebirdsql.benchmark;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Source of the rows parsed by a separate thread. Together with
+ * {@link StreamCsvReader} this makes the load pipeline of three stages:
+ * reader thread reads the file, parser thread converts the lines into
+ * {@link LoadRow} buffers and the loading thread binds and executes them.
+ * Stages are connected by the bounded queues of reused buffers, so a fast
+ * stage waits for the slower one instead of filling the memory.
+ * <p>
+ * Utilization of each stage is printed when the source is closed, stage
+ * that is busy most of the time is the bottleneck of the load.
+ */
+public class PipelinedRowSource implements RowSource {
+
+    /**
+     * Number of rows passed between the parser and the loader at once.
+     */
+    public static final int BLOCK_ROWS = 256;
+
+    /**
+     * Number of row blocks, parser waits when all of them are waiting for
+     * the loader.
+     */
+    public static final int BLOCK_COUNT = 4;
+
+    /**
+     * Parsed rows passed between the threads.
+     */
+    private static class Block {
+        private LoadRow[] rows;
+        private int count;
+        private long bytesRead;
+
+        private Block(LoadRow prototype) {
+            rows = new LoadRow[BLOCK_ROWS];
+
+            for (int i = 0; i < rows.length; i++)
+                rows[i] = new LoadRow(prototype);
+        }
+
+        private Block() {
+            // end marker
+        }
+    }
+
+    /**
+     * Marker of the end of data.
+     */
+    private static final Block END = new Block();
+
+    private RowSource source;
+    private String name;
+
+    // one more slot for the end marker
+    private BlockingQueue full = new ArrayBlockingQueue(BLOCK_COUNT + 1);
+    private BlockingQueue free = new ArrayBlockingQueue(BLOCK_COUNT);
+
+    private Thread parser;
+    private volatile boolean closed;
+    private volatile Throwable error;
+
+    private StageStatistics parserStatistics = new StageStatistics("parser");
+    private StageStatistics writerStatistics = new StageStatistics("writer");
+
+    private Block current;
+    private int index;
+    private boolean endOfData;
+
+    private long bytesRead;
+
+    /**
+     * Create pipelined source and start parsing.
+     *
+     * @param source source of the rows, it is read by the parser thread
+     * only.
+     * @param prototype row buffer with the column types of the rows.
+     * @param name name of the data for the thread name and statistics.
+     */
+    public PipelinedRowSource(RowSource source, LoadRow prototype, String name) {
+        this.source = source;
+        this.name = name;
+
+        for (int i = 0; i < BLOCK_COUNT; i++)
+            free.add(new Block(prototype));
+
+        parser = new Thread("parser-" + name) {
+            public void run() {
+                parserStatistics.start();
+                try {
+                    parse();
+                } catch(InterruptedException ex) {
+                    // source was closed
+                } catch(Throwable ex) {
+                    error = ex;
+                } finally {
+                    parserStatistics.finish();
+
+                    // loader may wait for the rows
+                    full.offer(END);
+                }
+            }
+        };
+
+        parser.setDaemon(true);
+
+        writerStatistics.start();
+        parser.start();
+    }
+
+    /**
+     * Get time the parser waited for the reader stage of the source.
+     */
+    private long getSourceWait() {
+        if (source instanceof StreamCsvReader)
+            return ((StreamCsvReader)source).getWaitNanos();
+        else
+            return 0;
+    }
+
+    /**
+     * Read rows of the source into the blocks.
+     */
+    private void parse() throws IOException, InterruptedException {
+        long sourceWait = getSourceWait();
+
+        while (!closed) {
+            long time = System.nanoTime();
+
+            Block block = (Block)free.take();
+
+            long now = System.nanoTime();
+            parserStatistics.addOutputWait(now - time);
+            time = now;
+
+            block.count = 0;
+            while (block.count < block.rows.length && source.next())
+                source.read(block.rows[block.count++]);
+
+            block.bytesRead = source.getBytesRead();
+
+            now = System.nanoTime();
+            long wait = getSourceWait();
+
+            parserStatistics.addInputWait(wait - sourceWait);
+            parserStatistics.addBusy(now - time - (wait - sourceWait));
+
+            sourceWait = wait;
+            time = now;
+
+            if (block.count > 0) {
+                full.put(block);
+                parserStatistics.addOutputWait(System.nanoTime() - time);
+            }
+
+            if (block.count < block.rows.length)
+                return;
+        }
+    }
+
+    public boolean next() throws IOException {
+        if (current != null) {
+            index++;
+
+            if (index < current.count)
+                return true;
+
+            free.offer(current);
+            current = null;
+        }
+
+        if (endOfData)
+            return false;
+
+        Block block;
+
+        long time = System.nanoTime();
+        try {
+            block = (Block)full.take();
+        } catch(InterruptedException ex) {
+            throw new IOException("Interrupted while reading " + name + ".");
+        } finally {
+            writerStatistics.addInputWait(System.nanoTime() - time);
+        }
+
+        if (block == END) {
+            endOfData = true;
+            rethrowError();
+            return false;
+        }
+
+        current = block;
+        index = 0;
+        bytesRead = block.bytesRead;
+
+        return true;
+    }
+
+    private void rethrowError() throws IOException {
+        Throwable ex = error;
+
+        if (ex == null)
+            return;
+
+        if (ex instanceof IOException)
+            throw (IOException)ex;
+        else
+        if (ex instanceof RuntimeException)
+            throw (RuntimeException)ex;
+        else
+        if (ex instanceof Error)
+            throw (Error)ex;
+        else
+            throw new IOException("Cannot parse " + name + ": " + ex);
+    }
+
+    public void read(LoadRow row) {
+        row.copyFrom(current.rows[index]);
+    }
+
+    /**
+     * Get number of bytes read by the source up to the end of the current
+     * block of rows.
+     *
+     * @return number of bytes.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Get statistics of the reader stage.
+     *
+     * @return statistics or <code>null</code> if source is not read by a
+     * separate thread.
+     */
+    public StageStatistics getReaderStatistics() {
+        if (source instanceof StreamCsvReader)
+            return ((StreamCsvReader)source).getReaderStatistics();
+        else
+            return null;
+    }
+
+    public StageStatistics getParserStatistics() {
+        return parserStatistics;
+    }
+
+    /**
+     * Get statistics of the loading thread. Loader is considered busy
+     * whenever it does not wait for the parsed rows.
+     *
+     * @return statistics of the writer stage.
+     */
+    public StageStatistics getWriterStatistics() {
+        return writerStatistics;
+    }
+
+    /**
+     * Print utilization of the stages.
+     *
+     * @param out stream to print to.
+     */
+    public void printStatistics(PrintStream out) {
+        StringBuffer msg = new StringBuffer();
+        msg.append("Pipeline ").append(name).append(": ");
+
+        StageStatistics reader = getReaderStatistics();
+        if (reader != null)
+            msg.append(reader).append("; ");
+
+        msg.append(parserStatistics).append("; ");
+        msg.append(writerStatistics).append(".");
+
+        out.println(msg.toString());
+    }
+
+    /**
+     * Stop parsing, close the source and print the statistics.
+     *
+     * @throws IOException if source cannot be closed.
+     */
+    public void close() throws IOException {
+        if (!writerStatistics.isFinished()) {
+            writerStatistics.finish();
+            writerStatistics.addBusy(writerStatistics.getElapsedNanos() -
+                writerStatistics.getInputWaitNanos());
+        }
+
+        closed = true;
+        parser.interrupt();
+
+        try {
+            parser.join();
+        } catch(InterruptedException ex) {
+            throw new IOException("Interrupted while closing " + name + ".");
+        }
+
+        try {
+            source.close();
+        } finally {
+            printStatistics(System.out);
+        }
+    }
+}
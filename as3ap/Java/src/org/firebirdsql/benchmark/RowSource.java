@@ -0,0 +1,60 @@
+/*
+ * Firebird Open Source AS3AP Benchmark suite
+ *
+ * Distributable under LGPL license.
+ * You may obtain a copy of the License at http://www.gnu.org/copyleft/lgpl.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * LGPL License for more details.
+ *
+ * This file was created by members of the firebird development team.
+ * All individual contributions remain the Copyright (C) of those
+ * individuals.  Contributors to this file are either listed here or
+ * can be obtained from a CVS history command.
+ *
+ * All rights reserved.
+ */
+package org.firebirdsql.benchmark;
+
+import java.io.IOException;
+
+/**
+ * Source of the rows for the data load, for example data file or data
+ * generator.
+ */
+public interface RowSource {
+
+    /**
+     * Move to the next row.
+     *
+     * @return <code>true</code> if row is available, <code>false</code> if
+     * there are no more rows.
+     *
+     * @throws IOException if row cannot be read.
+     */
+    boolean next() throws IOException;
+
+    /**
+     * Copy values of the current row into the buffer.
+     *
+     * @param row buffer to fill.
+     */
+    void read(LoadRow row);
+
+    /**
+     * Get number of bytes read from the underlying storage so far.
+     *
+     * @return number of bytes, <code>0</code> if rows are not read from a
+     * storage.
+     */
+    long getBytesRead();
+
+    /**
+     * Release resources used by this source.
+     *
+     * @throws IOException if source cannot be closed.
+     */
+    void close() throws IOException;
+}
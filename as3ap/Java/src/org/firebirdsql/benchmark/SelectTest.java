@@ -72,7 +72,7 @@ public class SelectTest extends BenchmarkTest {
     }
     
     public void testSelect1Clustered() throws Exception {
-        executeSelect(UPDATES_TABLE, KEY_COL + " = 1000");
+        executeSelect(UPDATES_TABLE, KEY_COL + " = " + getDataScale().scale(1000));
     }
     
     public void testSelect1NonClustered() throws Exception {
@@ -80,15 +80,16 @@ public class SelectTest extends BenchmarkTest {
     }
     
     public void testSelect10TenPctClustered() throws Exception {
-        executeSelect(TEN_PCT_TABLE, KEY_COL + " <= 10000000");
+        executeSelect(TEN_PCT_TABLE, 
+            KEY_COL + " <= " + getDataScale().scale(10000000));
     }
     
     public void testSelect100Clustered() throws Exception {
-        executeSelect(UPDATES_TABLE, KEY_COL + " <= 100");
+        executeSelect(UPDATES_TABLE, KEY_COL + " <= " + getDataScale().scale(100));
     }
 
     public void testSelect100NonClustered() throws Exception {
-        executeSelect(UPDATES_TABLE, INT_COL + " <= 100");
+        executeSelect(UPDATES_TABLE, INT_COL + " <= " + getDataScale().scale(100));
     }
     
     public void testSelect10TenPctNonClustered() throws Exception {
@@ -0,0 +1,121 @@
+/*
+ * Firebird Open Source AS3AP Benchmark suite
+ *
+ * Distributable under LGPL license.
+ * You may obtain a copy of the License at http://www.gnu.org/copyleft/lgpl.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * LGPL License for more details.
+ *
+ * This file was created by members of the firebird development team.
+ * All individual contributions remain the Copyright (C) of those
+ * individuals.  Contributors to this file are either listed here or
+ * can be obtained from a CVS history command.
+ *
+ * All rights reserved.
+ */
+package org.firebirdsql.benchmark;
+
+/**
+ * Utilization of one stage of the load pipeline. Stage is either busy, 
+ * waits for the input from the previous stage or waits until the next 
+ * stage takes its output. Stage that is busy most of the time is the
+ * bottleneck of the pipeline. Counters are updated by the thread running
+ * the stage only.
+ */
+public class StageStatistics {
+
+    private String name;
+
+    private volatile long busyNanos;
+    private volatile long inputWaitNanos;
+    private volatile long outputWaitNanos;
+
+    private volatile long startNanos;
+    private volatile long endNanos;
+
+    /**
+     * Create statistics of the stage.
+     *
+     * @param name name of the stage.
+     */
+    public StageStatistics(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Mark start of the stage, called by the thread running the stage.
+     */
+    public void start() {
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Mark end of the stage.
+     */
+    public void finish() {
+        if (endNanos == 0)
+            endNanos = System.nanoTime();
+    }
+
+    public boolean isFinished() {
+        return endNanos != 0;
+    }
+
+    public void addBusy(long nanos) {
+        busyNanos += nanos;
+    }
+
+    public void addInputWait(long nanos) {
+        inputWaitNanos += nanos;
+    }
+
+    public void addOutputWait(long nanos) {
+        outputWaitNanos += nanos;
+    }
+
+    public long getBusyNanos() {
+        return busyNanos;
+    }
+
+    public long getInputWaitNanos() {
+        return inputWaitNanos;
+    }
+
+    public long getOutputWaitNanos() {
+        return outputWaitNanos;
+    }
+
+    /**
+     * Get time between start and end of the stage.
+     *
+     * @return elapsed time in nanoseconds, time till now if stage is still
+     * running.
+     */
+    public long getElapsedNanos() {
+        if (startNanos == 0)
+            return 0;
+
+        long end = endNanos != 0 ? endNanos : System.nanoTime();
+
+        return end - startNanos;
+    }
+
+    private static long percent(long value, long total) {
+        return total > 0 ? value * 100 / total : 0;
+    }
+
+    public String toString() {
+        long elapsed = getElapsedNanos();
+
+        return name + " " + percent(busyNanos, elapsed) + "% busy, " +
+            percent(inputWaitNanos, elapsed) + "% waiting for input, " +
+            percent(outputWaitNanos, elapsed) + "% waiting for output";
+    }
+}
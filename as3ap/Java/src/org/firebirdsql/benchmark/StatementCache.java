@@ -0,0 +1,119 @@
+/*
+ * Firebird Open Source AS3AP Benchmark suite
+ *
+ * Distributable under LGPL license.
+ * You may obtain a copy of the License at http://www.gnu.org/copyleft/lgpl.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * LGPL License for more details.
+ *
+ * This file was created by members of the firebird development team.
+ * All individual contributions remain the Copyright (C) of those
+ * individuals.  Contributors to this file are either listed here or
+ * can be obtained from a CVS history command.
+ *
+ * All rights reserved.
+ */
+package org.firebirdsql.benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Prepared statements of one connection kept open between the executions.
+ * Statements are looked up by SQL text, when the cache is full the least
+ * recently used statement is closed. Unlike statement pooling of the
+ * driver, cache lives in the benchmark and works with any driver.
+ * <p>
+ * Cache belongs to one connection and is not thread-safe.
+ */
+public class StatementCache {
+
+    private Connection connection;
+    private int maxSize;
+
+    private LinkedHashMap statements;
+
+    /**
+     * Create cache for the connection.
+     *
+     * @param connection connection which prepares the statements.
+     * @param maxSize maximum number of open statements.
+     */
+    public StatementCache(Connection connection, int maxSize) {
+        this.connection = connection;
+        this.maxSize = maxSize;
+
+        statements = new LinkedHashMap(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                if (size() <= StatementCache.this.maxSize)
+                    return false;
+
+                close((PreparedStatement)eldest.getValue());
+
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Get prepared statement for the SQL text. Statement is prepared only
+     * when it is not in the cache, otherwise its parameters are cleared.
+     * Statement must not be closed by the caller.
+     *
+     * @param sql SQL statement.
+     *
+     * @return prepared statement.
+     *
+     * @throws SQLException if statement cannot be prepared.
+     */
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        PreparedStatement stmt = (PreparedStatement)statements.get(sql);
+
+        if (stmt != null) {
+            stmt.clearParameters();
+            return stmt;
+        }
+
+        stmt = connection.prepareStatement(sql);
+        statements.put(sql, stmt);
+
+        return stmt;
+    }
+
+    /**
+     * Get number of the statements in the cache.
+     *
+     * @return number of open statements.
+     */
+    public int size() {
+        return statements.size();
+    }
+
+    private static void close(PreparedStatement stmt) {
+        try {
+            stmt.close();
+        } catch(SQLException ex) {
+            ex.printStackTrace();
+            // bad luck
+        }
+    }
+
+    /**
+     * Close all statements in the cache, must be called before the
+     * connection is released.
+     */
+    public void close() {
+        Iterator iter = statements.values().iterator();
+        while (iter.hasNext())
+            close((PreparedStatement)iter.next());
+
+        statements.clear();
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Firebird Open Source AS3AP Benchmark suite
+ *
+ * Distributable under LGPL license.
+ * You may obtain a copy of the License at http://www.gnu.org/copyleft/lgpl.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * LGPL License for more details.
+ *
+ * This file was created by members of the firebird development team.
+ * All individual contributions remain the Copyright (C) of those
+ * individuals.  Contributors to this file are either listed here or
+ * can be obtained from a CVS history command.
+ *
+ * All rights reserved.
+ */
+package org.firebirdsql.benchmark;
+
+/**
+ * Decides when the workload of the multi-user test reached steady state.
+ * Throughput and median latency of the watched operations are sampled in
+ * regular intervals, workload is steady when coefficient of variation
+ * (standard deviation divided by mean) of both over the last samples is
+ * below the threshold. Minimum and maximum duration of the phase limit the
+ * waiting: phase never ends before the minimum, even when steady, and ends
+ * at the maximum, even when not steady.
+ */
+public class SteadyStateDetector {
+
+    private long interval;
+    private double maxVariation;
+
+    private double[] throughputs;
+    private double[] latencies;
+    private int sampleCount;
+
+    private double throughputVariation = Double.NaN;
+    private double latencyVariation = Double.NaN;
+
+    /**
+     * Create detector.
+     *
+     * @param interval sampling interval in milliseconds.
+     * @param windowSize number of the last samples that must be steady.
+     * @param maxVariation highest coefficient of variation of a steady
+     * workload, for example <code>0.05</code>.
+     */
+    public SteadyStateDetector(long interval, int windowSize, double maxVariation) {
+        if (windowSize < 2)
+            throw new IllegalArgumentException(
+                "At least two samples are needed: " + windowSize);
+
+        this.interval = interval;
+        this.maxVariation = maxVariation;
+
+        throughputs = new double[windowSize];
+        latencies = new double[windowSize];
+    }
+
+    /**
+     * Create detector with the settings from the configuration.
+     *
+     * @param config configuration of the benchmark.
+     */
+    public SteadyStateDetector(BenchmarkConfiguration config) {
+        this(config.getSteadyStateInterval(), config.getSteadyStateWindow(),
+            config.getSteadyStateVariation());
+    }
+
+    /**
+     * Add sample of the workload.
+     *
+     * @param throughput operations per second in the interval.
+     * @param latency latency of the operations in the interval.
+     */
+    public void addSample(double throughput, double latency) {
+        int index = sampleCount % throughputs.length;
+
+        throughputs[index] = throughput;
+        latencies[index] = latency;
+
+        sampleCount++;
+
+        if (sampleCount >= throughputs.length) {
+            throughputVariation = getVariation(throughputs);
+            latencyVariation = getVariation(latencies);
+        }
+    }
+
+    /**
+     * Get coefficient of variation of the values.
+     *
+     * @return coefficient or {@link Double#NaN} when mean is zero.
+     */
+    private static double getVariation(double[] values) {
+        double sum = 0;
+        for (int i = 0; i < values.length; i++)
+            sum += values[i];
+
+        double mean = sum / values.length;
+        if (mean <= 0)
+            return Double.NaN;
+
+        double squares = 0;
+        for (int i = 0; i < values.length; i++)
+            squares += (values[i] - mean) * (values[i] - mean);
+
+        return Math.sqrt(squares / (values.length - 1)) / mean;
+    }
+
+    /**
+     * Check if the last samples are steady.
+     *
+     * @return <code>true</code> if both throughput and latency vary less
+     * than the threshold.
+     */
+    public boolean isSteady() {
+        // comparisons with NaN are false
+        return throughputVariation < maxVariation &&
+            latencyVariation < maxVariation;
+    }
+
+    public double getThroughputVariation() {
+        return throughputVariation;
+    }
+
+    public double getLatencyVariation() {
+        return latencyVariation;
+    }
+
+    /**
+     * Wait until the operations reach steady state. Samples of the previous
+     * waiting are discarded.
+     *
+     * @param statistics statistics into which operations are recorded.
+     * @param operations names of the watched operations.
+     * @param minDuration minimum time to wait in milliseconds.
+     * @param maxDuration maximum time to wait in milliseconds.
+     *
+     * @return <code>true</code> if steady state was reached,
+     * <code>false</code> if maximum duration passed first.
+     *
+     * @throws InterruptedException if waiting thread was interrupted.
+     */
+    public boolean awaitSteadyState(LatencyStatistics statistics,
+        String[] operations, long minDuration, long maxDuration)
+        throws InterruptedException
+    {
+        sampleCount = 0;
+        throughputVariation = Double.NaN;
+        latencyVariation = Double.NaN;
+
+        long start = System.currentTimeMillis();
+        long sampleTime = start;
+
+        LatencyHistogram previous = merge(statistics, operations);
+
+        while (true) {
+            long now = System.currentTimeMillis();
+            long elapsed = now - start;
+
+            if (elapsed >= maxDuration)
+                return false;
+
+            if (elapsed >= minDuration && isSteady())
+                return true;
+
+            Thread.sleep(Math.min(interval, maxDuration - elapsed));
+
+            LatencyHistogram current = merge(statistics, operations);
+            LatencyHistogram sample = current.getDifference(previous);
+
+            now = System.currentTimeMillis();
+            if (now > sampleTime) {
+                addSample(sample.getTotalCount() * 1000.0 / (now - sampleTime),
+                    sample.getValueAtPercentile(50));
+            }
+
+            previous = current;
+            sampleTime = now;
+        }
+    }
+
+    private static LatencyHistogram merge(LatencyStatistics statistics,
+        String[] operations)
+    {
+        LatencyHistogram result = new LatencyHistogram();
+
+        for (int i = 0; i < operations.length; i++)
+            result.add(statistics.merge(operations[i]));
+
+        return result;
+    }
+
+    private static String format(double value) {
+        return Double.isNaN(value) ? "n/a" :
+            String.valueOf(Math.round(value * 1000) / 1000.0);
+    }
+
+    public String toString() {
+        return "throughput variation " + format(throughputVariation) +
+            ", latency variation " + format(latencyVariation) +
+            " (threshold " + maxVariation + ", " + throughputs.length +
+            " samples of " + interval + " ms)";
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Firebird Open Source AS3AP Benchmark suite
+ *
+ * Distributable under LGPL license.
+ * You may obtain a copy of the License at http://www.gnu.org/copyleft/lgpl.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * LGPL License for more details.
+ *
+ * This file was created by members of the firebird development team.
+ * All individual contributions remain the Copyright (C) of those
+ * individuals.  Contributors to this file are either listed here or
+ * can be obtained from a CVS history command.
+ *
+ * All rights reserved.
+ */
+package org.firebirdsql.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reader of the comma-separated data from a stream. Stream is read by a
+ * separate thread into a fixed number of chunks which are passed to the
+ * parser through a bounded queue, so reading overlaps with parsing and
+ * inserting and memory use does not depend on the data size. Reading thread
+ * is the reader stage of the load pipeline, its utilization is available
+ * from {@link #getReaderStatistics()}.
+ */
+public class StreamCsvReader extends CsvReader {
+
+    /**
+     * Size of one chunk of data.
+     */
+    public static final int CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * Number of chunks, reading thread waits when all of them are waiting
+     * for the parser.
+     */
+    public static final int CHUNK_COUNT = 4;
+
+    /**
+     * Data passed between the threads.
+     */
+    private static class Chunk {
+        private byte[] data = new byte[CHUNK_SIZE];
+        private int length;
+    }
+
+    /**
+     * Marker of the end of data.
+     */
+    private static final Chunk END = new Chunk();
+
+    private String name;
+
+    // one more slot for the end marker
+    private BlockingQueue full = new ArrayBlockingQueue(CHUNK_COUNT + 1);
+    private BlockingQueue free = new ArrayBlockingQueue(CHUNK_COUNT);
+
+    private Thread readerThread;
+    private volatile boolean closed;
+    private volatile Throwable error;
+
+    private volatile long bytesRead;
+    private long limit;
+
+    private StageStatistics readerStatistics = new StageStatistics("reader");
+    private volatile long waitNanos;
+
+    private boolean endOfData;
+
+    private byte[] data = new byte[2 * CHUNK_SIZE];
+
+    /**
+     * Create reader for the part of the file and start reading.
+     *
+     * @param file file to read.
+     * @param start offset of the first byte to read, must be at the
+     * beginning of the line.
+     * @param end offset after the last byte to read.
+     *
+     * @throws IOException if file cannot be opened.
+     */
+    public StreamCsvReader(File file, long start, long end) throws IOException {
+        this(open(file, start), end - start, file.getName());
+    }
+
+    /**
+     * Create reader for the stream and start reading. Stream is closed
+     * when all data are read or reader is closed.
+     *
+     * @param in stream to read.
+     * @param limit maximum number of bytes to read.
+     * @param name name of the data for the thread name and error messages.
+     */
+    public StreamCsvReader(final InputStream in, long limit, String name) {
+        this.name = name;
+        this.limit = limit;
+
+        for (int i = 0; i < CHUNK_COUNT; i++)
+            free.add(new Chunk());
+
+        readerThread = new Thread("reader-" + name) {
+            public void run() {
+                readerStatistics.start();
+                try {
+                    try {
+                        readStream(in);
+                    } finally {
+                        in.close();
+                    }
+                } catch(InterruptedException ex) {
+                    // reader was closed
+                } catch(Throwable ex) {
+                    error = ex;
+                } finally {
+                    readerStatistics.finish();
+
+                    // parser may wait for the data
+                    full.offer(END);
+                }
+            }
+        };
+
+        readerThread.setDaemon(true);
+        readerThread.start();
+
+        buffer = ByteBuffer.wrap(data);
+    }
+
+    private static InputStream open(File file, long start) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+
+        try {
+            in.getChannel().position(start);
+        } catch(IOException ex) {
+            in.close();
+            throw ex;
+        }
+
+        return in;
+    }
+
+    /**
+     * Read the stream into the chunks.
+     */
+    private void readStream(InputStream in)
+        throws IOException, InterruptedException
+    {
+        while (!closed) {
+            long time = System.nanoTime();
+
+            Chunk chunk = (Chunk)free.take();
+
+            long now = System.nanoTime();
+            readerStatistics.addOutputWait(now - time);
+            time = now;
+
+            chunk.length = 0;
+            while (chunk.length < CHUNK_SIZE && bytesRead < limit) {
+                int count = in.read(chunk.data, chunk.length,
+                    (int)Math.min(CHUNK_SIZE - chunk.length, limit - bytesRead));
+
+                if (count == -1)
+                    break;
+
+                chunk.length += count;
+                bytesRead += count;
+            }
+
+            now = System.nanoTime();
+            readerStatistics.addBusy(now - time);
+            time = now;
+
+            if (chunk.length > 0) {
+                full.put(chunk);
+                readerStatistics.addOutputWait(System.nanoTime() - time);
+            }
+
+            if (chunk.length < CHUNK_SIZE)
+                return;
+        }
+    }
+
+    private void rethrowError() throws IOException {
+        Throwable ex = error;
+
+        if (ex == null)
+            return;
+
+        if (ex instanceof IOException)
+            throw (IOException)ex;
+        else
+        if (ex instanceof RuntimeException)
+            throw (RuntimeException)ex;
+        else
+        if (ex instanceof Error)
+            throw (Error)ex;
+        else
+            throw new IOException("Cannot read " + name + ": " + ex);
+    }
+
+    protected boolean fill() throws IOException {
+        if (endOfData)
+            return false;
+
+        Chunk chunk;
+
+        long time = System.nanoTime();
+        try {
+            chunk = (Chunk)full.take();
+        } catch(InterruptedException ex) {
+            throw new IOException("Interrupted while reading " + name + ".");
+        } finally {
+            waitNanos += System.nanoTime() - time;
+        }
+
+        if (chunk == END) {
+            endOfData = true;
+
+            rethrowError();
+
+            return false;
+        }
+
+        // keep the incomplete line and append the chunk after it
+        int remaining = bufferLimit - position;
+
+        if (remaining + chunk.length > data.length) {
+            byte[] newData = new byte[2 * (remaining + chunk.length)];
+            System.arraycopy(data, position, newData, 0, remaining);
+            data = newData;
+            buffer = ByteBuffer.wrap(data);
+        } else
+            System.arraycopy(data, position, data, 0, remaining);
+
+        System.arraycopy(chunk.data, 0, data, remaining, chunk.length);
+
+        bufferLimit = remaining + chunk.length;
+        position = 0;
+
+        free.offer(chunk);
+
+        return true;
+    }
+
+    /**
+     * Get number of bytes read from the stream so far. Reading runs ahead
+     * of the parser by up to {@link #CHUNK_COUNT} chunks.
+     *
+     * @return number of bytes.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Get utilization of the reading thread.
+     *
+     * @return statistics of the reader stage.
+     */
+    public StageStatistics getReaderStatistics() {
+        return readerStatistics;
+    }
+
+    /**
+     * Get time parser spent waiting for the data from the reading thread.
+     *
+     * @return time in nanoseconds.
+     */
+    public long getWaitNanos() {
+        return waitNanos;
+    }
+
+    /**
+     * Stop reading and close the stream.
+     *
+     * @throws IOException if interrupted while waiting for the reading
+     * thread.
+     */
+    public void close() throws IOException {
+        closed = true;
+        readerThread.interrupt();
+
+        try {
+            readerThread.join();
+        } catch(InterruptedException ex) {
+            throw new IOException("Interrupted while closing " + name + ".");
+        }
+
+        buffer = null;
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Firebird Open Source AS3AP Benchmark suite
+ *
+ * Distributable under LGPL license.
+ * You may obtain a copy of the License at http://www.gnu.org/copyleft/lgpl.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * LGPL License for more details.
+ *
+ * This file was created by members of the firebird development team.
+ * All individual contributions remain the Copyright (C) of those
+ * individuals.  Contributors to this file are either listed here or
+ * can be obtained from a CVS history command.
+ *
+ * All rights reserved.
+ */
+package org.firebirdsql.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+
+/**
+ * Writes throughput and latency of the multi-user operations in regular
+ * intervals into a comma-separated file, so that warm-up, checkpoints,
+ * garbage collection and stalls during the long background phases can be
+ * plotted. Each row contains one operation in one interval: operations per
+ * second, errors, lock conflicts and latency percentiles of the operations
+ * finished in the interval. Steps of the test are written as rows with
+ * <code>mark</code> event.
+ * <p>
+ * Latencies are taken from the {@link LatencyStatistics} of the current
+ * phase, nothing is sampled between the phases.
+ */
+public class TimeSeriesSampler {
+
+    private static final String HEADER = "time_ms,event,phase,operation," +
+        "ops,ops_per_sec,errors,lock_conflicts," +
+        "p50_ms,p90_ms,p99_ms,p99.9_ms,max_ms";
+
+    private File file;
+    private PrintWriter out;
+    private long interval;
+
+    private long startTime;
+    private long lastSampleTime;
+
+    private String phase = "";
+    private LatencyStatistics statistics;
+
+    /**
+     * Cumulative values of the previous sample, by operation name.
+     */
+    private HashMap previousLatencies = new HashMap();
+    private HashMap previousErrors = new HashMap();
+    private HashMap previousLockConflicts = new HashMap();
+
+    private Thread sampler;
+    private volatile boolean stopped;
+
+    /**
+     * Create sampler writing into a new file.
+     *
+     * @param directory directory of the file, file name contains the time
+     * the sampler was created.
+     * @param interval sampling interval in milliseconds.
+     *
+     * @throws IOException if file cannot be created.
+     */
+    public TimeSeriesSampler(File directory, long interval) throws IOException {
+        this.interval = interval;
+
+        String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        file = new File(directory, "multiuser-" + timestamp + ".csv");
+
+        out = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+        out.println(HEADER);
+    }
+
+    /**
+     * Create sampler with the settings from the configuration.
+     *
+     * @param config configuration of the benchmark.
+     *
+     * @throws IOException if file cannot be created.
+     */
+    public TimeSeriesSampler(BenchmarkConfiguration config) throws IOException {
+        this(new File(config.getSamplePath()), config.getSampleInterval());
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Start sampling.
+     */
+    public synchronized void start() {
+        startTime = System.currentTimeMillis();
+        lastSampleTime = startTime;
+
+        sampler = new Thread("time-series-sampler") {
+            public void run() {
+                while (!stopped) {
+                    try {
+                        Thread.sleep(interval);
+                    } catch(InterruptedException ex) {
+                        return;
+                    }
+
+                    sample();
+                }
+            }
+        };
+
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    /**
+     * Mark the boundary of the test steps, following samples belong to the
+     * new phase.
+     *
+     * @param phase name of the phase that starts.
+     */
+    public synchronized void mark(String phase) {
+        this.phase = phase;
+
+        out.println(getElapsedTime() + ",mark," + phase);
+        out.flush();
+    }
+
+    /**
+     * Set statistics from which latencies are sampled.
+     *
+     * @param statistics statistics of the current phase or
+     * <code>null</code> if no operations are recorded.
+     */
+    public synchronized void setStatistics(LatencyStatistics statistics) {
+        // last interval of the previous statistics
+        if (this.statistics != null)
+            sample();
+
+        this.statistics = statistics;
+        lastSampleTime = System.currentTimeMillis();
+
+        previousLatencies.clear();
+        previousErrors.clear();
+        previousLockConflicts.clear();
+    }
+
+    private long getElapsedTime() {
+        return System.currentTimeMillis() - startTime;
+    }
+
+    /**
+     * Write values of the interval since the previous sample.
+     */
+    private synchronized void sample() {
+        long now = System.currentTimeMillis();
+        long elapsed = now - lastSampleTime;
+
+        lastSampleTime = now;
+
+        if (statistics == null || elapsed <= 0)
+            return;
+
+        String[] operations = statistics.getOperations();
+        for (int i = 0; i < operations.length; i++) {
+            String operation = operations[i];
+
+            LatencyHistogram latency = statistics.merge(operation);
+            long errors = statistics.getErrorCount(operation);
+            long lockConflicts = statistics.getLockConflictCount(operation);
+
+            LatencyHistogram interval = latency;
+
+            LatencyHistogram previous =
+                (LatencyHistogram)previousLatencies.get(operation);
+            if (previous != null)
+                interval = latency.getDifference(previous);
+
+            long count = interval.getTotalCount();
+
+            StringBuffer row = new StringBuffer();
+            row.append(now - startTime).append(",sample,");
+            row.append(phase).append(',').append(operation).append(',');
+            row.append(count).append(',');
+            row.append(Math.round(count * 10000.0 / elapsed) / 10.0).append(',');
+            row.append(errors - getPrevious(previousErrors, operation)).append(',');
+            row.append(lockConflicts - getPrevious(previousLockConflicts, operation));
+
+            row.append(',').append(toMillis(interval.getValueAtPercentile(50)));
+            row.append(',').append(toMillis(interval.getValueAtPercentile(90)));
+            row.append(',').append(toMillis(interval.getValueAtPercentile(99)));
+            row.append(',').append(toMillis(interval.getValueAtPercentile(99.9)));
+            row.append(',').append(toMillis(interval.getMaxValue()));
+
+            out.println(row.toString());
+
+            previousLatencies.put(operation, latency);
+            previousErrors.put(operation, Long.valueOf(errors));
+            previousLockConflicts.put(operation, Long.valueOf(lockConflicts));
+        }
+
+        out.flush();
+    }
+
+    private static long getPrevious(HashMap values, String operation) {
+        Long value = (Long)values.get(operation);
+
+        return value != null ? value.longValue() : 0;
+    }
+
+    private static double toMillis(long micros) {
+        return Math.round(micros / 10.0) / 100.0;
+    }
+
+    /**
+     * Stop sampling and close the file.
+     */
+    public void stop() {
+        stopped = true;
+
+        if (sampler != null) {
+            sampler.interrupt();
+
+            try {
+                sampler.join();
+            } catch(InterruptedException ex) {
+                // ignore
+            }
+        }
+
+        synchronized(this) {
+            sample();
+            out.close();
+        }
+    }
+}
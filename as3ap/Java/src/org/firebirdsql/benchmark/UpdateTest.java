@@ -88,7 +88,7 @@ public class UpdateTest extends BenchmarkTest {
     public void testAppendMiddle() throws Exception {
         executeUpdate(""
             + "INSERT INTO " + UPDATES_TABLE + " VALUES ("
-            + "5005, 5005, 50005, 50005.00, 50005.00, "
+            + getDataScale().scale(5005) + ", 5005, 50005, 50005.00, 50005.00, "
             + "500005.00, '1-01-1988', 'CONTROLLER', "
             + "'ALICE IN WONDERLAND', 'UNIVERSITY OF ILLINOIS IN CHICAGO'"
             + ")"
@@ -99,7 +99,7 @@ public class UpdateTest extends BenchmarkTest {
         executeUpdate(""
             + "UPDATE " + UPDATES_TABLE + " "
             + "SET " + KEY_COL + " = -5000 "
-            + "WHERE " + KEY_COL + " = 5005"
+            + "WHERE " + KEY_COL + " = " + getDataScale().scale(5005)
         );
     }
     
@@ -142,7 +142,7 @@ public class UpdateTest extends BenchmarkTest {
         executeUpdate(""
             + "UPDATE " + UPDATES_TABLE + " "
             + "SET " + INT_COL + " = 50015, " + KEY_COL + " = -5000 "
-            + "WHERE " + KEY_COL + " = 5005"
+            + "WHERE " + KEY_COL + " = " + getDataScale().scale(5005)
         );
     }
     
@@ -150,7 +150,7 @@ public class UpdateTest extends BenchmarkTest {
         executeUpdate(""
             + "UPDATE " + UPDATES_TABLE + " "
             + "SET " + CODE_COL + " = 'SQL+GROUPS', " + KEY_COL + " = -5000 "
-            + "WHERE " + KEY_COL + " = 5005"
+            + "WHERE " + KEY_COL + " = " + getDataScale().scale(5005)
         );
     }
     
@@ -158,7 +158,7 @@ public class UpdateTest extends BenchmarkTest {
         executeUpdate(""
             + "INSERT INTO " + SAVE_UPDATES_TABLE + " "
             + "SELECT * FROM " + UPDATES_TABLE + " "
-            + "WHERE " + KEY_COL + " BETWEEN 5000 AND 5999" 
+            + "WHERE " + KEY_COL + " " + getDataScale().between(5000, 5999)
         );
     }
     
@@ -172,8 +172,9 @@ public class UpdateTest extends BenchmarkTest {
     public void testBulkModify() throws Exception {
         executeUpdate(""
             + "UPDATE " + UPDATES_TABLE + " "
-            + "SET " + KEY_COL + " = " + KEY_COL + " - 100000 "
-            + "WHERE " + KEY_COL + " BETWEEN 5000 AND 5999"
+            + "SET " + KEY_COL + " = " + KEY_COL + " - "
+            + getDataScale().scale(100000) + " "
+            + "WHERE " + KEY_COL + " " + getDataScale().between(5000, 5999)
         );
     }
     
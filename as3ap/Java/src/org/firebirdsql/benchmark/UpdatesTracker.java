@@ -0,0 +1,185 @@
+/*
+ * Firebird Open Source AS3AP Benchmark suite
+ *
+ * Distributable under LGPL license.
+ * You may obtain a copy of the License at http://www.gnu.org/copyleft/lgpl.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * LGPL License for more details.
+ *
+ * This file was created by members of the firebird development team.
+ * All individual contributions remain the Copyright (C) of those
+ * individuals.  Contributors to this file are either listed here or
+ * can be obtained from a CVS history command.
+ *
+ * All rights reserved.
+ */
+package org.firebirdsql.benchmark;
+
+import java.util.ArrayList;
+
+/**
+ * Remembers rows of the <code>updates</code> table modified by the 
+ * multi-user test, so that only these rows have to be restored. Rows 
+ * selected by key are kept in a bit set indexed by the key, rows selected
+ * by a range of the <code>int</code> column are kept as ranges, since their
+ * keys are not known on the client. Instance is shared by all users and is
+ * thread-safe.
+ */
+public class UpdatesTracker {
+
+    private long[] keys = new long[1024];
+    private int minKey = Integer.MAX_VALUE;
+    private int maxKey = -1;
+    
+    private ArrayList intRanges = new ArrayList();
+    
+    /**
+     * Remember that row with the specified key was modified.
+     * 
+     * @param key value of the key column, negative keys are ignored.
+     */
+    public synchronized void markKey(int key) {
+        if (key < 0)
+            return;
+        
+        int word = key >>> 6;
+        if (word >= keys.length) {
+            long[] newKeys = new long[Math.max(word + 1, keys.length * 2)];
+            System.arraycopy(keys, 0, newKeys, 0, keys.length);
+            keys = newKeys;
+        }
+        
+        keys[word] |= 1L << (key & 63);
+        
+        if (key < minKey)
+            minKey = key;
+        
+        if (key > maxKey)
+            maxKey = key;
+    }
+    
+    /**
+     * Remember that rows with keys in the specified range were modified.
+     * 
+     * @param low lowest key, inclusive.
+     * @param high highest key, inclusive.
+     */
+    public synchronized void markKeyRange(int low, int high) {
+        for (int key = low; key <= high; key++)
+            markKey(key);
+    }
+    
+    /**
+     * Remember that rows with the value of <code>int</code> column in the
+     * specified range were modified. Column must not be modified itself.
+     * 
+     * @param low lowest value, inclusive.
+     * @param high highest value, inclusive.
+     */
+    public synchronized void markIntRange(int low, int high) {
+        int[] range = new int[] {low, high};
+        
+        for (int i = 0; i < intRanges.size(); i++) {
+            int[] other = (int[])intRanges.get(i);
+            
+            if (other[0] == low && other[1] == high)
+                return;
+        }
+        
+        intRanges.add(range);
+    }
+    
+    /**
+     * Get ranges of consecutive modified keys.
+     * 
+     * @return array of <code>{low, high}</code> pairs in ascending order.
+     */
+    public synchronized int[][] getKeyRanges() {
+        ArrayList result = new ArrayList();
+        
+        int key = nextKey(minKey);
+        while (key != -1) {
+            int low = key;
+            
+            while (key < maxKey && isMarked(key + 1))
+                key++;
+            
+            result.add(new int[] {low, key});
+            
+            key = nextKey(key + 1);
+        }
+        
+        return (int[][])result.toArray(new int[result.size()][]);
+    }
+    
+    /**
+     * Get ranges of the <code>int</code> column of the modified rows.
+     * 
+     * @return array of <code>{low, high}</code> pairs.
+     */
+    public synchronized int[][] getIntRanges() {
+        return (int[][])intRanges.toArray(new int[intRanges.size()][]);
+    }
+    
+    /**
+     * Get number of modified keys.
+     * 
+     * @return number of keys marked by {@link #markKey(int)} and 
+     * {@link #markKeyRange(int, int)}.
+     */
+    public synchronized int getKeyCount() {
+        int count = 0;
+        
+        for (int i = 0; i <= maxKey >> 6; i++)
+            count += Long.bitCount(keys[i]);
+        
+        return count;
+    }
+    
+    /**
+     * Forget all modifications, called after tables were restored.
+     */
+    public synchronized void clear() {
+        for (int i = 0; i <= maxKey >> 6; i++)
+            keys[i] = 0;
+        
+        minKey = Integer.MAX_VALUE;
+        maxKey = -1;
+        
+        intRanges.clear();
+    }
+    
+    private boolean isMarked(int key) {
+        return (keys[key >>> 6] & (1L << (key & 63))) != 0;
+    }
+    
+    /**
+     * Find first marked key starting with the specified one.
+     * 
+     * @return marked key or <code>-1</code> if there is none.
+     */
+    private int nextKey(int key) {
+        for (; key <= maxKey; key++) {
+            long word = keys[key >>> 6] >>> (key & 63);
+            
+            if (word == 0) {
+                // skip the rest of the word
+                key |= 63;
+                continue;
+            }
+            
+            if ((word & 1) != 0)
+                return key;
+        }
+        
+        return -1;
+    }
+    
+    public synchronized String toString() {
+        return getKeyCount() + " key(s), " + intRanges.size() + 
+            " int range(s)";
+    }
+}
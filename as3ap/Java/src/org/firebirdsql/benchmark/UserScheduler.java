@@ -0,0 +1,384 @@
+/*
+ * Firebird Open Source AS3AP Benchmark suite
+ *
+ * Distributable under LGPL license.
+ * You may obtain a copy of the License at http://www.gnu.org/copyleft/lgpl.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * LGPL License for more details.
+ *
+ * This file was created by members of the firebird development team.
+ * All individual contributions remain the Copyright (C) of those
+ * individuals.  Contributors to this file are either listed here or
+ * can be obtained from a CVS history command.
+ *
+ * All rights reserved.
+ */
+package org.firebirdsql.benchmark;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.AssertionFailedError;
+import junit.framework.Test;
+import junit.framework.TestListener;
+import junit.framework.TestResult;
+
+/**
+ * Runs simulated users of the multi-user test, each user is a {@link Test}
+ * executed by its own thread of an executor. Users are started with a
+ * fixed delay between them, so that the connections are not opened all at
+ * once, and can be drained with a deadline after which remaining users are
+ * interrupted.
+ * <p>
+ * First error or failure of the users is kept and rethrown by
+ * {@link #drain(long)}, users are also reported to the {@link TestResult}
+ * as before.
+ */
+public class UserScheduler {
+
+    private String name;
+    private long rampUpInterval;
+
+    private ExecutorService executor;
+
+    private AtomicInteger userCount = new AtomicInteger();
+    private AtomicInteger liveCount = new AtomicInteger();
+
+    private Map users = Collections.synchronizedMap(new IdentityHashMap());
+
+    private CountDownLatch drainSignal = new CountDownLatch(1);
+    private volatile boolean interrupted;
+
+    private Throwable failure;
+    private Test failedUser;
+
+    private long startTime;
+    private TestResult result;
+
+    /**
+     * Listener that records the first failure of the scheduled users.
+     */
+    private TestListener failureListener = new TestListener() {
+        public void addError(Test test, Throwable ex) {
+            userFailed(test, ex);
+        }
+
+        public void addFailure(Test test, AssertionFailedError ex) {
+            userFailed(test, ex);
+        }
+
+        public void startTest(Test test) {
+            // empty
+        }
+
+        public void endTest(Test test) {
+            // empty
+        }
+    };
+
+    /**
+     * Create scheduler.
+     *
+     * @param name name of the users, used as the thread name prefix.
+     * @param rampUpInterval delay in milliseconds between the starts of
+     * two subsequent users, <code>0</code> starts all users at once.
+     * @param stackSize stack size of the user threads, <code>0</code>
+     * uses the default size of the VM.
+     * @param priority priority of the user threads.
+     */
+    public UserScheduler(String name, long rampUpInterval, long stackSize,
+        int priority)
+    {
+        this(name, rampUpInterval,
+            createPlatformThreadFactory(name, stackSize, priority));
+    }
+
+    /**
+     * Create scheduler with the specified threads.
+     *
+     * @param name name of the users.
+     * @param rampUpInterval delay in milliseconds between the starts of
+     * two subsequent users.
+     * @param threadFactory factory of the user threads.
+     */
+    public UserScheduler(String name, long rampUpInterval,
+        ThreadFactory threadFactory)
+    {
+        this.name = name;
+        this.rampUpInterval = rampUpInterval;
+
+        // no queue, each user gets its own thread
+        executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+            60, TimeUnit.SECONDS, new SynchronousQueue(), threadFactory);
+    }
+
+    /**
+     * Create scheduler with the settings from the configuration. In the
+     * virtual thread mode stack size and priority do not apply.
+     *
+     * @param name name of the users.
+     * @param config configuration of the benchmark.
+     */
+    public UserScheduler(String name, BenchmarkConfiguration config) {
+        this(name, config.getUserRampUpInterval(),
+            createThreadFactory(name, config));
+    }
+
+    private static ThreadFactory createThreadFactory(String name,
+        BenchmarkConfiguration config)
+    {
+        if (config.getUserThreadMode() == BenchmarkConfiguration.VIRTUAL_USER_THREADS)
+            return createVirtualThreadFactory(name);
+        else
+            return createPlatformThreadFactory(name, config.getUserStackSize(),
+                config.getUserThreadPriority());
+    }
+
+    private static ThreadFactory createPlatformThreadFactory(final String name,
+        final long stackSize, final int priority)
+    {
+        return new ThreadFactory() {
+            private int counter;
+
+            public synchronized Thread newThread(Runnable task) {
+                Thread thread = new Thread(null, task,
+                    name + "-" + (++counter), stackSize);
+
+                thread.setDaemon(true);
+                thread.setPriority(priority);
+
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Check if the VM supports virtual threads.
+     *
+     * @return <code>true</code> if virtual threads are available.
+     */
+    public static boolean isVirtualThreadSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual", new Class[0]);
+            return true;
+        } catch(NoSuchMethodException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Create factory of the virtual threads through reflection, the same
+     * as <code>Thread.ofVirtual().name(name + "-", 1).factory()</code>.
+     *
+     * @param name thread name prefix.
+     *
+     * @return thread factory.
+     *
+     * @throws IllegalStateException if VM does not support virtual
+     * threads.
+     */
+    public static ThreadFactory createVirtualThreadFactory(String name) {
+        if (!isVirtualThreadSupported())
+            throw new IllegalStateException("Virtual threads are not " +
+                "supported by Java " + System.getProperty("java.version") + ".");
+
+        try {
+            Class builderClass = Class.forName("java.lang.Thread$Builder");
+
+            Object builder = Thread.class.getMethod("ofVirtual", new Class[0])
+                .invoke(null, new Object[0]);
+
+            builder = builderClass.getMethod("name",
+                new Class[] {String.class, Long.TYPE}).invoke(builder,
+                new Object[] {name + "-", Long.valueOf(1)});
+
+            return (ThreadFactory)builderClass.getMethod("factory",
+                new Class[0]).invoke(builder, new Object[0]);
+
+        } catch(Exception ex) {
+            throw new IllegalStateException(
+                "Cannot create virtual threads: " + ex);
+        }
+    }
+
+    /**
+     * Start the user. User waits for its turn of the ramp-up in its own
+     * thread, so this method does not block.
+     *
+     * @param user test that is executed by the user.
+     * @param result result to which test is reported, must be the same for
+     * all users.
+     */
+    public void start(final Test user, final TestResult result) {
+        if (drainSignal.getCount() == 0)
+            throw new IllegalStateException(
+                "Users " + name + " are already draining.");
+
+        int index = userCount.getAndIncrement();
+
+        if (index == 0) {
+            startTime = System.currentTimeMillis();
+
+            this.result = result;
+            result.addListener(failureListener);
+        }
+
+        users.put(user, user);
+
+        final long userStart = startTime + index * rampUpInterval;
+
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    if (!waitForStart(userStart))
+                        return;
+                } catch(InterruptedException ex) {
+                    return;
+                }
+
+                liveCount.incrementAndGet();
+                try {
+                    user.run(result);
+                } catch(Throwable ex) {
+                    userFailed(user, ex);
+                } finally {
+                    liveCount.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    /**
+     * Wait for the start time of the user. Latch is used instead of a
+     * monitor, which would pin the carrier thread of a virtual user.
+     *
+     * @return <code>false</code> if users are drained before the start
+     * time of the user.
+     */
+    private boolean waitForStart(long time) throws InterruptedException {
+        while (true) {
+            long delay = time - System.currentTimeMillis();
+
+            if (delay <= 0)
+                return true;
+
+            if (drainSignal.await(delay, TimeUnit.MILLISECONDS))
+                return false;
+        }
+    }
+
+    private synchronized void userFailed(Test test, Throwable ex) {
+        if (!users.containsKey(test))
+            return;
+
+        // errors caused by interrupting the users after the deadline
+        if (interrupted)
+            return;
+
+        if (failure == null) {
+            failure = ex;
+            failedUser = test;
+        }
+    }
+
+    /**
+     * Get number of started users.
+     *
+     * @return number of users.
+     */
+    public int getUserCount() {
+        return userCount.get();
+    }
+
+    /**
+     * Get number of users that are running their test right now.
+     *
+     * @return number of live users.
+     */
+    public int getLiveCount() {
+        return liveCount.get();
+    }
+
+    /**
+     * Wait until all users finish. Users must be asked to stop before, users
+     * still waiting for their start are not started. When users do not finish
+     * before the deadline, they are interrupted.
+     *
+     * @param timeout deadline in milliseconds, <code>0</code> waits without
+     * limit.
+     *
+     * @return <code>true</code> if all users finished in time.
+     *
+     * @throws Exception first error or failure of the users.
+     */
+    public boolean drain(long timeout) throws Exception {
+        drainSignal.countDown();
+
+        executor.shutdown();
+
+        long deadline = timeout > 0 ?
+            System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+
+        boolean finished = false;
+        int lastLive = -1;
+
+        while (!finished) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0)
+                break;
+
+            finished = executor.awaitTermination(
+                Math.min(remaining, 1000), TimeUnit.MILLISECONDS);
+
+            int live = getLiveCount();
+            if (!finished && live != lastLive) {
+                System.out.println("" + live + " users " + name +
+                    " are still running.");
+                lastLive = live;
+            }
+        }
+
+        if (!finished) {
+            System.out.println("" + getLiveCount() + " users " + name +
+                " did not finish in " + timeout + " ms, interrupting them.");
+
+            interrupted = true;
+            executor.shutdownNow();
+            executor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+        }
+
+        if (result != null)
+            result.removeListener(failureListener);
+
+        rethrowFailure();
+
+        return finished;
+    }
+
+    private synchronized void rethrowFailure() throws Exception {
+        if (failure == null)
+            return;
+
+        System.out.println("User " + failedUser + " of " + name +
+            " failed: " + failure);
+
+        if (failure instanceof Exception)
+            throw (Exception)failure;
+        else
+        if (failure instanceof Error)
+            throw (Error)failure;
+        else
+            throw new Exception("User " + failedUser + " failed: " + failure);
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Firebird Open Source AS3AP Benchmark suite
+ *
+ * Distributable under LGPL license.
+ * You may obtain a copy of the License at http://www.gnu.org/copyleft/lgpl.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * LGPL License for more details.
+ *
+ * This file was created by members of the firebird development team.
+ * All individual contributions remain the Copyright (C) of those
+ * individuals.  Contributors to this file are either listed here or
+ * can be obtained from a CVS history command.
+ *
+ * All rights reserved.
+ */
+package org.firebirdsql.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Observes carrier threads of the virtual users. Carrier utilization is
+ * CPU time of the carrier threads divided by the elapsed time of all
+ * carriers, low utilization with many users means users mostly wait for
+ * the database. Pinning events are virtual threads blocked while holding
+ * their carrier, for example in a <code>synchronized</code> block of the
+ * driver, they are taken from the <code>jdk.VirtualThreadPinned</code>
+ * event of the flight recorder, which reports pins longer than 20 ms.
+ * <p>
+ * Virtual threads and flight recorder streaming are accessed through
+ * reflection, so that benchmark runs on the older VMs too.
+ */
+public class VirtualThreadMonitor {
+
+    private static final String CARRIER_THREAD_CLASS =
+        "jdk.internal.misc.CarrierThread";
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private static final long SAMPLE_INTERVAL = 1000;
+
+    private ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    private int parallelism = Integer.getInteger(
+        "jdk.virtualThreadScheduler.parallelism",
+        Runtime.getRuntime().availableProcessors()).intValue();
+
+    /**
+     * Last seen CPU time of the carrier threads, by thread id.
+     */
+    private Map carrierTimes = new HashMap();
+    private long carrierNanos;
+
+    private long startTime;
+    private Thread sampler;
+    private volatile boolean stopped;
+
+    private Object recordingStream;
+    private int pinnedCount;
+    private long pinnedNanos;
+
+    /**
+     * Start sampling the carrier threads and recording the pinning events.
+     */
+    public void start() {
+        startTime = System.nanoTime();
+
+        sample();
+
+        sampler = new Thread("carrier-monitor") {
+            public void run() {
+                while (!stopped) {
+                    try {
+                        Thread.sleep(SAMPLE_INTERVAL);
+                    } catch(InterruptedException ex) {
+                        return;
+                    }
+
+                    sample();
+                }
+            }
+        };
+
+        sampler.setDaemon(true);
+        sampler.start();
+
+        try {
+            startRecording();
+        } catch(Exception ex) {
+            System.out.println("Pinning events are not recorded: " + ex);
+        }
+    }
+
+    /**
+     * Stream the pinning events of the flight recorder.
+     */
+    private void startRecording() throws Exception {
+        Class streamClass = Class.forName("jdk.jfr.consumer.RecordingStream");
+        Class consumerClass = Class.forName("java.util.function.Consumer");
+
+        final Method getDuration = Class.forName(
+            "jdk.jfr.consumer.RecordedEvent").getMethod("getDuration", new Class[0]);
+        final Method toNanos = Class.forName(
+            "java.time.Duration").getMethod("toNanos", new Class[0]);
+
+        Object consumer = Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class[] {consumerClass}, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args)
+                    throws Throwable
+                {
+                    if (method.getDeclaringClass() == Object.class)
+                        return method.invoke(this, args);
+
+                    Object duration = getDuration.invoke(args[0], new Object[0]);
+                    long nanos = ((Long)toNanos.invoke(duration, new Object[0]))
+                        .longValue();
+
+                    pinned(nanos);
+
+                    return null;
+                }
+            });
+
+        Object stream = streamClass.getConstructor(new Class[0])
+            .newInstance(new Object[0]);
+
+        streamClass.getMethod("enable", new Class[] {String.class})
+            .invoke(stream, new Object[] {PINNED_EVENT});
+        streamClass.getMethod("onEvent", new Class[] {String.class, consumerClass})
+            .invoke(stream, new Object[] {PINNED_EVENT, consumer});
+        streamClass.getMethod("startAsync", new Class[0])
+            .invoke(stream, new Object[0]);
+
+        recordingStream = stream;
+    }
+
+    private synchronized void pinned(long nanos) {
+        pinnedCount++;
+        pinnedNanos += nanos;
+    }
+
+    /**
+     * Add CPU time the carrier threads used since the last sample.
+     */
+    private synchronized void sample() {
+        if (!threadBean.isThreadCpuTimeSupported())
+            return;
+
+        Iterator iter = Thread.getAllStackTraces().keySet().iterator();
+        while (iter.hasNext()) {
+            Thread thread = (Thread)iter.next();
+
+            if (!CARRIER_THREAD_CLASS.equals(thread.getClass().getName()))
+                continue;
+
+            long cpuTime = threadBean.getThreadCpuTime(thread.getId());
+            if (cpuTime == -1)
+                continue;
+
+            Long id = Long.valueOf(thread.getId());
+            Long lastTime = (Long)carrierTimes.get(id);
+
+            carrierNanos += cpuTime - (lastTime != null ? lastTime.longValue() : 0);
+            carrierTimes.put(id, Long.valueOf(cpuTime));
+        }
+    }
+
+    /**
+     * Get utilization of the carrier threads since the start.
+     *
+     * @return utilization in percent.
+     */
+    public synchronized double getCarrierUtilization() {
+        sample();
+
+        long elapsed = System.nanoTime() - startTime;
+        if (elapsed <= 0)
+            return 0;
+
+        return 100.0 * carrierNanos / elapsed / parallelism;
+    }
+
+    public synchronized int getPinnedCount() {
+        return pinnedCount;
+    }
+
+    /**
+     * Get time virtual threads spent pinned to their carriers.
+     *
+     * @return time in milliseconds.
+     */
+    public synchronized long getPinnedTime() {
+        return pinnedNanos / 1000000;
+    }
+
+    /**
+     * Stop sampling and recording.
+     */
+    public void stop() {
+        stopped = true;
+        sampler.interrupt();
+
+        if (recordingStream != null) {
+            try {
+                recordingStream.getClass().getMethod("close", new Class[0])
+                    .invoke(recordingStream, new Object[0]);
+            } catch(Exception ex) {
+                ex.printStackTrace();
+                // bad luck
+            }
+
+            recordingStream = null;
+        }
+    }
+
+    public String toString() {
+        return "carriers " + Math.round(getCarrierUtilization() * 10) / 10.0 +
+            "% busy (" + parallelism + " carriers), " + getPinnedCount() +
+            " pinning events (" + getPinnedTime() + " ms)";
+    }
+}